@@ -0,0 +1,57 @@
+package com.openclassrooms.rentals.dto;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.LongStream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.openclassrooms.rentals.services.map.RentalMapper;
+import com.openclassrooms.rentals.services.map.RentalMapperBenchmark;
+
+/**
+ * JSON serialization of the body of {@code GET /api/rentals}, with the object mapper
+ * defaults of Spring Boot.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RentalListSerializationBenchmark {
+
+    @Param({ "10", "100", "1000" })
+    private int rentals;
+
+    private ObjectWriter writer;
+    private RentalListDto list;
+
+    @Setup
+    public void setUp() {
+        writer = Jackson2ObjectMapperBuilder.json().build().writerFor(RentalListDto.class);
+        RentalMapper mapper = new RentalMapper(null, null);
+        List<RentalDto> dtos = LongStream.rangeClosed(1, rentals)
+                .mapToObj(id -> mapper.toDto(RentalMapperBenchmark.rental(id)))
+                .toList();
+        list = new RentalListDto(dtos);
+    }
+
+    @Benchmark
+    public byte[] serialize() throws JsonProcessingException {
+        return writer.writeValueAsBytes(list);
+    }
+}
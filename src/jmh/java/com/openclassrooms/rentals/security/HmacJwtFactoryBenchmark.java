@@ -0,0 +1,51 @@
+package com.openclassrooms.rentals.security;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+
+/**
+ * Signature of a token at login, and its verification on every authenticated request.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HmacJwtFactoryBenchmark {
+
+    static final String SECRET = "0123456789abcdef0123456789abcdef0123456789abcdef";
+
+    private HmacJwtFactory factory;
+    private Authentication authentication;
+    private String token;
+
+    @Setup
+    public void setUp() {
+        factory = new HmacJwtFactory(SECRET);
+        authentication = UsernamePasswordAuthenticationToken.authenticated("user@example.com", null, null);
+        token = factory.generateToken(authentication);
+    }
+
+    @Benchmark
+    public String generateToken() {
+        return factory.generateToken(authentication);
+    }
+
+    @Benchmark
+    public String extractUsername() {
+        return factory.extractUsername(token);
+    }
+}
@@ -0,0 +1,73 @@
+package com.openclassrooms.rentals.security;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.core.userdetails.UserDetails;
+
+import com.openclassrooms.rentals.models.AppUserDetails;
+import com.openclassrooms.rentals.models.UserEntity;
+
+import jakarta.servlet.ServletException;
+
+/**
+ * Authentication of a request carrying a valid token, with the user lookup replaced by
+ * a fixed user: what remains is the token verification, the security context set-up
+ * and the logging of the filter.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JwtAuthenticationFilterBenchmark {
+
+    private JwtAuthenticationFilter filter;
+    private String authorization;
+
+    @Setup
+    public void setUp() {
+        UserEntity user = new UserEntity();
+        user.setId(1L);
+        user.setEmail("user@example.com");
+        user.setPassword("{noop}password");
+        UserDetails details = new AppUserDetails(user);
+        UserDetailsServiceImplementation userDetailsService = new UserDetailsServiceImplementation() {
+            @Override
+            public UserDetails loadUserByUsername(String email) {
+                return details;
+            }
+        };
+        JwtService jwtService = new JwtService(new HmacJwtFactory(HmacJwtFactoryBenchmark.SECRET));
+        filter = new JwtAuthenticationFilter(jwtService, userDetailsService);
+        authorization = "Bearer " + jwtService.generateToken(
+                UsernamePasswordAuthenticationToken.authenticated(user.getEmail(), null, null));
+    }
+
+    @Benchmark
+    public MockHttpServletResponse doFilterInternal() throws ServletException, IOException {
+        // The filter only authenticates a request whose thread is not authenticated yet.
+        SecurityContextHolder.clearContext();
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/rentals");
+        request.addHeader("Authorization", authorization);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilterInternal(request, response, new MockFilterChain());
+        return response;
+    }
+}
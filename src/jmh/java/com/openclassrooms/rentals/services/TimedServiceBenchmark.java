@@ -0,0 +1,84 @@
+package com.openclassrooms.rentals.services;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+
+import com.openclassrooms.rentals.security.HmacJwtFactory;
+import com.openclassrooms.rentals.security.JwtService;
+
+import io.micrometer.core.aop.TimedAspect;
+import io.micrometer.prometheusmetrics.PrometheusConfig;
+import io.micrometer.prometheusmetrics.PrometheusMeterRegistry;
+
+/**
+ * Cost of the {@code pages.service} timers, each service being called directly and through
+ * the {@link TimedAspect} proxy recording a percentile histogram in a Prometheus registry.
+ * {@code extractUsername} runs on every authenticated request; {@code pictureUrl}, which only
+ * concatenates strings, shows the fixed cost of the proxy and of the timer.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TimedServiceBenchmark {
+
+    private static final String SECRET = "0123456789abcdef0123456789abcdef0123456789abcdef";
+
+    private JwtService jwtService;
+    private JwtService timedJwtService;
+    private StorageService storageService;
+    private StorageService timedStorageService;
+    private String token;
+
+    @Setup
+    public void setUp() {
+        PrometheusMeterRegistry registry = new PrometheusMeterRegistry(PrometheusConfig.DEFAULT);
+        jwtService = new JwtService(new HmacJwtFactory(SECRET));
+        timedJwtService = timed(jwtService, registry);
+        storageService = new StorageService(null, null, "target/jmh-staging", 0, registry);
+        timedStorageService = timed(storageService, registry);
+        token = jwtService.generateToken(
+                UsernamePasswordAuthenticationToken.authenticated("user@example.com", null, null));
+    }
+
+    @Benchmark
+    public String extractUsername() {
+        return jwtService.extractUsername(token);
+    }
+
+    @Benchmark
+    public String extractUsernameTimed() {
+        return timedJwtService.extractUsername(token);
+    }
+
+    @Benchmark
+    public String pictureUrl() {
+        return storageService.pictureUrl(42L, "house.3fa2c1d90b4e.jpg");
+    }
+
+    @Benchmark
+    public String pictureUrlTimed() {
+        return timedStorageService.pictureUrl(42L, "house.3fa2c1d90b4e.jpg");
+    }
+
+    private static <T> T timed(T service, PrometheusMeterRegistry registry) {
+        AspectJProxyFactory factory = new AspectJProxyFactory(service);
+        factory.setProxyTargetClass(true);
+        factory.addAspect(new TimedAspect(registry));
+        return factory.getProxy();
+    }
+}
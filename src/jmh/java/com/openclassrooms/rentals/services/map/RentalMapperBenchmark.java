@@ -0,0 +1,68 @@
+package com.openclassrooms.rentals.services.map;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.openclassrooms.rentals.dto.RentalDto;
+import com.openclassrooms.rentals.models.RentalEntity;
+import com.openclassrooms.rentals.models.UserEntity;
+
+/**
+ * Mapping of a rental entity to its DTO, done for every rental of the rental list.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RentalMapperBenchmark {
+
+    private RentalMapper mapper;
+    private RentalEntity rental;
+
+    @Setup
+    public void setUp() {
+        // toDto uses neither the storage nor the user service.
+        mapper = new RentalMapper(null, null);
+        rental = rental(1L);
+    }
+
+    @Benchmark
+    public RentalDto toDto() {
+        return mapper.toDto(rental);
+    }
+
+    /**
+     * @param id the rental id
+     * @return a rental with every field set, as read from the database
+     */
+    public static RentalEntity rental(long id) {
+        UserEntity owner = new UserEntity();
+        owner.setId(id % 100);
+        RentalEntity rental = new RentalEntity();
+        rental.setId(id);
+        rental.setName("Rental " + id);
+        rental.setSurface(BigDecimal.valueOf(42));
+        rental.setPrice(BigDecimal.valueOf(1250, 2));
+        rental.setPicture("http://localhost:8080/api/files/" + id + "/picture-0123456789abcdef.jpg");
+        rental.setDescription("A charming tiny house with 2 cozy bedrooms, a fully equipped kitchen and a garden.");
+        rental.setOwner(owner);
+        rental.setCreatedAt(LocalDateTime.of(2024, 1, 1, 12, 0));
+        rental.setUpdatedAt(LocalDateTime.of(2024, 6, 1, 12, 0));
+        rental.setVersion(3L);
+        return rental;
+    }
+}
@@ -0,0 +1,62 @@
+package com.openclassrooms.rentals.loadtest;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.openclassrooms.rentals.Projet3Application;
+import com.openclassrooms.rentals.services.StorageService;
+import com.openclassrooms.rentals.services.storage.PictureStore;
+
+/**
+ * The application, started in this JVM with the {@code embedded} profile and seeded by
+ * {@link LoadTestSeeder}.
+ *
+ * @param context the context of the application
+ * @param base the URL of the application
+ * @param pictureUrls the paths of the seeded pictures
+ * @param mapper the JSON mapper of the application
+ */
+public record EmbeddedApplication(ConfigurableApplicationContext context, URI base, List<String> pictureUrls,
+                                  ObjectMapper mapper) implements AutoCloseable {
+
+    /**
+     * Starts and seeds the application.
+     *
+     * @param options the scale of the seed, and the arguments of the application
+     * @param sources the configuration classes added to the application
+     * @return the started application
+     * @throws IOException if a picture cannot be seeded
+     */
+    public static EmbeddedApplication start(LoadTestOptions options, Class<?>... sources) throws IOException {
+        // devtools would start the application again in a new class loader, through the main method.
+        System.setProperty("spring.devtools.restart.enabled", "false");
+
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(Projet3Application.class)
+                .sources(sources)
+                .profiles("embedded")
+                .run(options.appArgs());
+        try {
+            List<String> pictureUrls = new LoadTestSeeder(context.getBean(DataSource.class),
+                    context.getBean(PictureStore.class), context.getBean(StorageService.class)).seed(options);
+            int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+            return new EmbeddedApplication(context, URI.create("http://localhost:" + port), pictureUrls,
+                    context.getBean(ObjectMapper.class));
+        } catch (IOException | RuntimeException e) {
+            context.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public void close() {
+        context.close();
+    }
+}
@@ -0,0 +1,57 @@
+package com.openclassrooms.rentals.loadtest;
+
+/**
+ * Endpoints driven by the load test, each one with its own latency histogram.
+ */
+public enum Endpoint {
+
+    /** {@code POST /api/auth/register}, a new user, hashing its password. */
+    REGISTER("register"),
+
+    /** {@code POST /api/auth/login}, as a seeded user, checking its password. */
+    LOGIN("login"),
+
+    /** {@code GET /api/auth/me}, the identifier of a registered user. */
+    ME("me"),
+
+    /** {@code GET /api/rentals}, every rental: the list is not paginated. */
+    LIST("list"),
+
+    /** {@code GET /api/rentals/{id}}. */
+    GET("get"),
+
+    /** {@code GET /api/files/rentalpicture/{id}/{filename}}, a seeded picture. */
+    PICTURE("picture"),
+
+    /** {@code POST /api/messages}, about a random rental. */
+    MESSAGE("message");
+
+    private final String label;
+
+    Endpoint(String label) {
+        this.label = label;
+    }
+
+    /**
+     * @return the name of the endpoint in the options and in the report
+     */
+    public String label() {
+        return label;
+    }
+
+    /**
+     * Finds an endpoint by its label.
+     *
+     * @param label the label, e.g. {@code get}
+     * @return the endpoint
+     * @throws IllegalArgumentException if no endpoint has this label
+     */
+    public static Endpoint of(String label) {
+        for (Endpoint endpoint : values()) {
+            if (endpoint.label.equals(label)) {
+                return endpoint;
+            }
+        }
+        throw new IllegalArgumentException("Unknown endpoint: " + label);
+    }
+}
@@ -0,0 +1,78 @@
+package com.openclassrooms.rentals.loadtest;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+/**
+ * Latencies and errors of one endpoint, recorded by all the clients.
+ * <p>
+ * Every response is recorded, in nanoseconds, whatever its status. The responses with an
+ * unexpected status are also counted by status, and the requests failing without a response
+ * by exception, under the status {@code 0}. {@link #interval()} hands out what was recorded
+ * since its previous call, so that the warmup can be dropped.
+ * </p>
+ */
+public class EndpointStats {
+
+    private final Recorder recorder = new Recorder(3);
+    private final Map<Integer, LongAdder> errors = new ConcurrentHashMap<>();
+
+    /**
+     * Records a response.
+     *
+     * @param nanos the time from the request to the last byte of the response
+     * @param expected whether the status is the expected one
+     * @param status the status of the response
+     */
+    public void record(long nanos, boolean expected, int status) {
+        recorder.recordValue(nanos);
+        if (!expected) {
+            errors.computeIfAbsent(status, s -> new LongAdder()).increment();
+        }
+    }
+
+    /**
+     * Records a request that got no response.
+     */
+    public void failed() {
+        errors.computeIfAbsent(0, s -> new LongAdder()).increment();
+    }
+
+    /**
+     * Hands out the latencies and the errors recorded since the previous call, and starts over.
+     *
+     * @return the interval
+     */
+    public Interval interval() {
+        Histogram histogram = recorder.getIntervalHistogram();
+        Map<Integer, Long> counts = new TreeMap<>();
+        errors.forEach((status, count) -> {
+            long sum = count.sumThenReset();
+            if (sum > 0) {
+                counts.put(status, sum);
+            }
+        });
+        return new Interval(histogram, counts);
+    }
+
+    /**
+     * Latencies and errors of an interval.
+     *
+     * @param histogram the latencies, in nanoseconds
+     * @param errors the number of errors by status, {@code 0} for the requests without response
+     */
+    public record Interval(Histogram histogram, Map<Integer, Long> errors) {
+
+        /**
+         * @return the number of errors, whatever their status
+         */
+        public long errorCount() {
+            return errors.values().stream().mapToLong(Long::longValue).sum();
+        }
+    }
+}
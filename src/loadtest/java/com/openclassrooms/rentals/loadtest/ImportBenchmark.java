@@ -0,0 +1,231 @@
+package com.openclassrooms.rentals.loadtest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntFunction;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Throughput of the bulk imports against the single-row endpoints, through the real HTTP stack.
+ * <p>
+ * The application is started and seeded as for the {@link LoadTest}. One client, logged in as
+ * the first seeded user, sends its requests one after the other on one keep-alive connection:
+ * </p>
+ * <ul>
+ *   <li>{@code single} rentals, one {@code POST /api/rentals} each, without a picture, and
+ *       {@code single} messages, one {@code POST /api/messages} each;</li>
+ *   <li>{@code rows} rentals, then {@code rows} messages, in one NDJSON import and in one CSV
+ *       import each.</li>
+ * </ul>
+ * <p>
+ * A smaller round of each, a tenth of the size, warms the JVM up first and is not measured.
+ * The rows per second of each are printed, with the ratio of each import to its single-row
+ * endpoint. The other arguments are the options of the load test, with smaller defaults
+ * ({@code users=10 rentals=100 pictures=0}); {@code rows=200000 single=3000} by default.
+ * </p>
+ * <p>
+ * With {@code --spring.datasource.url=...} (and its username, password and
+ * {@code --spring.jpa.properties.hibernate.dialect}), the application runs on another
+ * database than the embedded H2, e.g. a MySQL server: the seeder needs an empty schema,
+ * created by the Flyway migrations.
+ * </p>
+ */
+@Slf4j
+public final class ImportBenchmark {
+
+    private static final String[] DEFAULTS = { "users=10", "rentals=100", "pictures=0" };
+    private static final String NDJSON = "application/x-ndjson";
+    private static final String CSV = "text/csv";
+    private static final String BOUNDARY = "import-benchmark-boundary";
+    private static final Duration IMPORT_TIMEOUT = Duration.ofMinutes(30);
+
+    /**
+     * The throughput of a scenario.
+     *
+     * @param name the scenario
+     * @param rows the rows created
+     * @param seconds the duration of the scenario
+     */
+    private record Result(String name, long rows, double seconds) {
+
+        double rowsPerSecond() {
+            return rows / seconds;
+        }
+    }
+
+    /** The request of a single-row endpoint creating the row {@code i}. */
+    private interface Request {
+        void send(int i) throws IOException, InterruptedException;
+    }
+
+    private final HttpClient http;
+    private final URI base;
+    private final ObjectMapper mapper;
+    private final int seededRentals;
+    private String token;
+
+    private ImportBenchmark(HttpClient http, URI base, ObjectMapper mapper, int seededRentals) {
+        this.http = http;
+        this.base = base;
+        this.mapper = mapper;
+        this.seededRentals = seededRentals;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int rows = 200_000;
+        int single = 3000;
+        List<String> loadTestArgs = new ArrayList<>(List.of(DEFAULTS));
+        for (String arg : args) {
+            if (arg.startsWith("rows=")) {
+                rows = Integer.parseInt(arg.substring("rows=".length()).replace("_", ""));
+            } else if (arg.startsWith("single=")) {
+                single = Integer.parseInt(arg.substring("single=".length()).replace("_", ""));
+            } else {
+                loadTestArgs.add(arg);
+            }
+        }
+        LoadTestOptions options = LoadTestOptions.parse(loadTestArgs.toArray(String[]::new));
+
+        try (EmbeddedApplication application = EmbeddedApplication.start(options);
+             HttpClient http = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build()) {
+            ImportBenchmark benchmark = new ImportBenchmark(http, application.base(), application.mapper(),
+                    options.rentals());
+            benchmark.login();
+            log.info("Warming up");
+            benchmark.run(Math.max(1, rows / 10), Math.max(1, single / 10));
+            log.info("Measuring {} rows per import, {} single-row requests per endpoint", rows, single);
+            report(benchmark.run(rows, single));
+        }
+    }
+
+    private List<Result> run(int rows, int single) throws IOException, InterruptedException {
+        List<Result> results = new ArrayList<>();
+        results.add(single("POST /api/rentals", single, this::createRental));
+        results.add(importRows("import rentals, NDJSON", "/api/import/rentals", NDJSON, rows, i ->
+                json(Map.of("name", "Imported rental " + i, "surface", 20 + i % 200, "price", 300 + i % 3000,
+                        "description", "Imported by the benchmark"))));
+        results.add(importRows("import rentals, CSV", "/api/import/rentals", CSV, rows, i -> i < 0
+                ? "name,surface,price,description"
+                : "Imported rental " + i + "," + (20 + i % 200) + "," + (300 + i % 3000) + ",Imported by the benchmark"));
+        results.add(single("POST /api/messages", single, this::createMessage));
+        results.add(importRows("import messages, NDJSON", "/api/import/messages", NDJSON, rows, i ->
+                json(Map.of("message", "Imported message " + i, "user_id", 1, "rental_id", rentalId(i)))));
+        results.add(importRows("import messages, CSV", "/api/import/messages", CSV, rows, i -> i < 0
+                ? "message,user_id,rental_id"
+                : "Imported message " + i + ",1," + rentalId(i)));
+        return results;
+    }
+
+    private static Result single(String name, int count, Request request) throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            request.send(i);
+        }
+        return new Result(name, count, (System.nanoTime() - start) / 1e9);
+    }
+
+    /**
+     * Sends one import of {@code rows} rows, written by {@code row}; {@code row.apply(-1)} gives
+     * the header line of a CSV body.
+     */
+    private Result importRows(String name, String path, String contentType, int rows, IntFunction<String> row)
+            throws IOException, InterruptedException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream(rows * 64);
+        if (contentType.equals(CSV)) {
+            body.writeBytes((row.apply(-1) + "\n").getBytes(StandardCharsets.UTF_8));
+        }
+        for (int i = 0; i < rows; i++) {
+            body.writeBytes((row.apply(i) + "\n").getBytes(StandardCharsets.UTF_8));
+        }
+        long start = System.nanoTime();
+        JsonNode report = mapper.readTree(send(request(path).timeout(IMPORT_TIMEOUT)
+                .header("Content-Type", contentType)
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body.toByteArray()))));
+        double seconds = (System.nanoTime() - start) / 1e9;
+        if (report.path("rejected").asLong() != 0) {
+            throw new IllegalStateException(name + " rejected rows: " + report);
+        }
+        return new Result(name, report.path("imported").asLong(), seconds);
+    }
+
+    private void createRental(int i) throws IOException, InterruptedException {
+        StringBuilder body = new StringBuilder();
+        Map.of("name", "Created rental " + i, "surface", String.valueOf(20 + i % 200),
+                "price", String.valueOf(300 + i % 3000), "description", "Created by the benchmark")
+                .forEach((field, value) -> body.append("--").append(BOUNDARY).append("\r\n")
+                        .append("Content-Disposition: form-data; name=\"").append(field).append("\"\r\n\r\n")
+                        .append(value).append("\r\n"));
+        body.append("--").append(BOUNDARY).append("--\r\n");
+        send(request("/api/rentals").header("Content-Type", "multipart/form-data; boundary=" + BOUNDARY)
+                .POST(HttpRequest.BodyPublishers.ofString(body.toString())));
+    }
+
+    private void createMessage(int i) throws IOException, InterruptedException {
+        send(request("/api/messages").header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(
+                        json(Map.of("message", "Created message " + i, "user_id", 1, "rental_id", rentalId(i))))));
+    }
+
+    private void login() throws IOException, InterruptedException {
+        JsonNode body = mapper.readTree(send(request("/api/auth/login").header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(json(Map.of(
+                        "email", LoadTestSeeder.email(1), "password", LoadTestOptions.PASSWORD))))));
+        token = body.path("token").asText();
+    }
+
+    private long rentalId(int i) {
+        return i % seededRentals + 1;
+    }
+
+    private String json(Map<String, Object> value) {
+        try {
+            return mapper.writeValueAsString(value);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private HttpRequest.Builder request(String path) {
+        HttpRequest.Builder request = HttpRequest.newBuilder(base.resolve(path)).timeout(Duration.ofSeconds(60));
+        return token == null ? request : request.header("Authorization", "Bearer " + token);
+    }
+
+    private byte[] send(HttpRequest.Builder request) throws IOException, InterruptedException {
+        HttpRequest built = request.build();
+        HttpResponse<byte[]> response = http.send(built, HttpResponse.BodyHandlers.ofByteArray());
+        if (response.statusCode() != 200 && response.statusCode() != 201) {
+            throw new IllegalStateException(built.method() + " " + built.uri().getPath() + " answered "
+                    + response.statusCode() + ": " + new String(response.body(), StandardCharsets.UTF_8));
+        }
+        return response.body();
+    }
+
+    private static void report(List<Result> results) {
+        PrintStream out = System.out;
+        out.printf("%nImport benchmark, one client%n");
+        out.printf("%-26s %10s %9s %11s %9s%n", "scenario", "rows", "seconds", "rows/s", "x single");
+        double singleRate = 0;
+        for (Result result : results) {
+            if (result.name().startsWith("POST")) {
+                singleRate = result.rowsPerSecond();
+            }
+            out.printf("%-26s %10d %9.2f %11.0f %9s%n", result.name(), result.rows(), result.seconds(),
+                    result.rowsPerSecond(),
+                    result.name().startsWith("POST") ? "" : String.format("%.1f", result.rowsPerSecond() / singleRate));
+        }
+    }
+}
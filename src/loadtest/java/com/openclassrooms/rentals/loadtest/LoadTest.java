@@ -0,0 +1,173 @@
+package com.openclassrooms.rentals.loadtest;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.HdrHistogram.Histogram;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * End-to-end load test of the API, through the real HTTP stack.
+ * <p>
+ * The application is started in this JVM with the {@code embedded} profile, on an in-memory
+ * H2 database built by the Flyway migrations, and seeded by {@link LoadTestSeeder} (see
+ * {@link EmbeddedApplication}). The clients, one virtual thread each sharing one
+ * {@link HttpClient}, are started over {@code ramp} and log in, then send requests for
+ * {@code warmup} plus {@code duration}; only the requests of {@code duration} are measured.
+ * The throughput and the percentiles of each endpoint are printed, and the full percentile
+ * distributions written to {@code out/<endpoint>.hgrm}, in milliseconds.
+ * </p>
+ * <p>
+ * The server and the clients share the machine, so the results compare two versions of the
+ * code on the same hardware rather than give the capacity of a deployment. At large scales,
+ * give the JVM the heap of the seeded tables ({@code -Dloadtest.heap=8g} for a million
+ * rentals), take the {@code list} endpoint, which returns every rental, out of the mix, and
+ * raise the open files limit above twice the number of clients.
+ * </p>
+ */
+@Slf4j
+public final class LoadTest {
+
+    private static final double NANOS_PER_MILLI = 1_000_000.0;
+
+    private LoadTest() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        LoadTestOptions options = LoadTestOptions.parse(args);
+        try (EmbeddedApplication application = EmbeddedApplication.start(options)) {
+            Measures measures = run(options, application, () -> { });
+            report(options, measures);
+        }
+    }
+
+    /**
+     * Latencies and errors of the measured part of a run.
+     *
+     * @param endpoints the latencies and errors of each endpoint
+     * @param seconds the duration of the measures
+     */
+    record Measures(Map<Endpoint, EndpointStats.Interval> endpoints, double seconds) {
+    }
+
+    /**
+     * Runs the clients against the application: logs them in, warms up, then measures.
+     *
+     * @param options the clients, the mix and the durations of the run
+     * @param application the application
+     * @param measuring called when the measures start, after the warmup
+     * @return the measures
+     * @throws InterruptedException if the run is interrupted
+     */
+    static Measures run(LoadTestOptions options, EmbeddedApplication application, Runnable measuring)
+            throws InterruptedException {
+        URI base = application.base();
+        List<String> pictureUrls = application.pictureUrls();
+        ObjectMapper mapper = application.mapper();
+        Map<Endpoint, EndpointStats> stats = new EnumMap<>(Endpoint.class);
+        for (Endpoint endpoint : Endpoint.values()) {
+            stats.put(endpoint, new EndpointStats());
+        }
+        Endpoint[] picks = picks(options.mix());
+        CountDownLatch loggedIn = new CountDownLatch(options.clients());
+        AtomicBoolean running = new AtomicBoolean(true);
+
+        try (ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor();
+             HttpClient http = HttpClient.newBuilder()
+                     .version(HttpClient.Version.HTTP_1_1)
+                     .connectTimeout(Duration.ofSeconds(30))
+                     .executor(clients)
+                     .build()) {
+            log.info("Logging {} clients in", options.clients());
+            long rampStart = System.nanoTime();
+            for (int i = 0; i < options.clients(); i++) {
+                long userId = i % options.users() + 1;
+                clients.submit(new LoadTestClient(http, base, mapper, options, picks, pictureUrls, stats, loggedIn,
+                        running, userId));
+                long due = rampStart + options.ramp().toNanos() * (i + 1) / options.clients();
+                Thread.sleep(Duration.ofNanos(Math.max(0, due - System.nanoTime())));
+            }
+            loggedIn.await();
+            EndpointStats.Interval logins = stats.get(Endpoint.LOGIN).interval();
+            log.info("{} clients logged in in {} ms, {} failed", options.clients() - logins.errorCount(),
+                    (System.nanoTime() - rampStart) / 1_000_000, logins.errors());
+            log.info("Warming up for {}", options.warmup());
+            Thread.sleep(options.warmup());
+            stats.values().forEach(EndpointStats::interval);
+            measuring.run();
+
+            log.info("Measuring for {}", options.duration());
+            long start = System.nanoTime();
+            Thread.sleep(options.duration());
+            Map<Endpoint, EndpointStats.Interval> measured = new EnumMap<>(Endpoint.class);
+            stats.forEach((endpoint, endpointStats) -> measured.put(endpoint, endpointStats.interval()));
+            double seconds = (System.nanoTime() - start) / 1e9;
+            running.set(false);
+            return new Measures(measured, seconds);
+        }
+    }
+
+    /**
+     * Expands the mix into an array where each endpoint appears as many times as its weight,
+     * for the clients to pick one with a single random index.
+     */
+    private static Endpoint[] picks(Map<Endpoint, Integer> mix) {
+        List<Endpoint> picks = new ArrayList<>();
+        mix.forEach((endpoint, weight) -> picks.addAll(Collections.nCopies(weight, endpoint)));
+        return picks.toArray(Endpoint[]::new);
+    }
+
+    private static void report(LoadTestOptions options, Measures measures) throws IOException {
+        Map<Endpoint, EndpointStats.Interval> measured = measures.endpoints();
+        double seconds = measures.seconds();
+        Files.createDirectories(options.out());
+        PrintStream out = System.out;
+        out.printf("%nLoad test: %d clients, %d users, %d rentals, %d pictures, %.1f s measured%n",
+                options.clients(), options.users(), options.rentals(), options.pictures(), seconds);
+        out.printf("%-10s %10s %8s %10s %9s %9s %9s %9s %9s %9s%n", "endpoint", "requests", "errors", "req/s",
+                "mean ms", "p50", "p95", "p99", "p99.9", "max");
+        long total = 0;
+        for (Map.Entry<Endpoint, EndpointStats.Interval> entry : measured.entrySet()) {
+            Histogram histogram = entry.getValue().histogram();
+            Path distribution = options.out().resolve(entry.getKey().label() + ".hgrm");
+            if (histogram.getTotalCount() == 0 && entry.getValue().errorCount() == 0) {
+                Files.deleteIfExists(distribution);
+                continue;
+            }
+            total += histogram.getTotalCount();
+            out.printf("%-10s %10d %8d %10.1f %9.2f %9.2f %9.2f %9.2f %9.2f %9.2f%n", entry.getKey().label(),
+                    histogram.getTotalCount(), entry.getValue().errorCount(), histogram.getTotalCount() / seconds,
+                    histogram.getMean() / NANOS_PER_MILLI, millis(histogram, 50), millis(histogram, 95),
+                    millis(histogram, 99), millis(histogram, 99.9), histogram.getMaxValue() / NANOS_PER_MILLI);
+            if (!entry.getValue().errors().isEmpty()) {
+                out.printf("%-10s errors by status (0: no response): %s%n", "", entry.getValue().errors());
+            }
+            try (PrintStream file = new PrintStream(Files.newOutputStream(distribution))) {
+                histogram.outputPercentileDistribution(file, NANOS_PER_MILLI);
+            }
+        }
+        out.printf("%-10s %10d %8s %10.1f%n", "total", total, "", total / seconds);
+        out.printf("Percentile distributions (ms) written to %s%n", options.out().toAbsolutePath());
+    }
+
+    private static double millis(Histogram histogram, double percentile) {
+        return histogram.getValueAtPercentile(percentile) / NANOS_PER_MILLI;
+    }
+}
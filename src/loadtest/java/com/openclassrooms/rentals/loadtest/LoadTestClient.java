@@ -0,0 +1,170 @@
+package com.openclassrooms.rentals.loadtest;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * One user of the application, run by a virtual thread.
+ * <p>
+ * The client logs in as its seeded user, then sends requests picked at random with the
+ * weights of the mix, until the run stops; it logs in again first when its login failed. A
+ * {@code register} creates a new user and goes on
+ * as this user; a {@code login} goes back to the seeded one. The next request is only sent
+ * once the previous response is read: the clients form a closed system, whose latencies do
+ * not account for the requests a slower server delays.
+ * </p>
+ */
+public class LoadTestClient implements Runnable {
+
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(60);
+
+    private final HttpClient http;
+    private final URI base;
+    private final ObjectMapper mapper;
+    private final LoadTestOptions options;
+    private final Endpoint[] picks;
+    private final List<String> pictureUrls;
+    private final Map<Endpoint, EndpointStats> stats;
+    private final CountDownLatch loggedIn;
+    private final AtomicBoolean running;
+    private final long seededUserId;
+
+    private String token;
+    private long userId;
+
+    public LoadTestClient(HttpClient http, URI base, ObjectMapper mapper, LoadTestOptions options, Endpoint[] picks,
+                          List<String> pictureUrls, Map<Endpoint, EndpointStats> stats, CountDownLatch loggedIn,
+                          AtomicBoolean running, long seededUserId) {
+        this.http = http;
+        this.base = base;
+        this.mapper = mapper;
+        this.options = options;
+        this.picks = picks;
+        this.pictureUrls = pictureUrls;
+        this.stats = stats;
+        this.loggedIn = loggedIn;
+        this.running = running;
+        this.seededUserId = seededUserId;
+    }
+
+    @Override
+    public void run() {
+        try {
+            login();
+        } finally {
+            loggedIn.countDown();
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        while (running.get()) {
+            // A client whose login failed logs in again before anything else.
+            Endpoint endpoint = token == null ? Endpoint.LOGIN : picks[random.nextInt(picks.length)];
+            switch (endpoint) {
+                case REGISTER -> register();
+                case LOGIN -> login();
+                case LIST -> send(endpoint, get("/api/rentals"));
+                case GET -> send(endpoint, get("/api/rentals/" + (random.nextInt(options.rentals()) + 1)));
+                case PICTURE -> {
+                    if (!pictureUrls.isEmpty()) {
+                        send(endpoint, get(pictureUrls.get(random.nextInt(pictureUrls.size()))));
+                    }
+                }
+                case MESSAGE -> send(endpoint, post("/api/messages", Map.of(
+                        "message", "Is it still available?",
+                        "user_id", userId,
+                        "rental_id", random.nextInt(options.rentals()) + 1)));
+                case ME -> send(endpoint, get("/api/auth/me"));
+            }
+            if (!options.think().isZero()) {
+                try {
+                    Thread.sleep(options.think());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private void login() {
+        JsonNode body = send(Endpoint.LOGIN, post("/api/auth/login", Map.of(
+                "email", LoadTestSeeder.email(seededUserId),
+                "password", LoadTestOptions.PASSWORD)));
+        if (body != null) {
+            token = body.path("token").asText();
+            userId = seededUserId;
+        }
+    }
+
+    private void register() {
+        JsonNode body = send(Endpoint.REGISTER, post("/api/auth/register", Map.of(
+                "email", "new-" + UUID.randomUUID() + "@loadtest.local",
+                "name", "Registered by the load test",
+                "password", LoadTestOptions.PASSWORD)));
+        if (body == null) {
+            return;
+        }
+        token = body.path("token").asText();
+        JsonNode me = send(Endpoint.ME, get("/api/auth/me"));
+        if (me != null) {
+            userId = me.path("id").asLong();
+        }
+    }
+
+    private HttpRequest.Builder get(String path) {
+        return request(path).GET();
+    }
+
+    private HttpRequest.Builder post(String path, Map<String, Object> body) {
+        try {
+            return request(path).header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofByteArray(mapper.writeValueAsBytes(body)));
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private HttpRequest.Builder request(String path) {
+        HttpRequest.Builder request = HttpRequest.newBuilder(base.resolve(path)).timeout(REQUEST_TIMEOUT);
+        return token == null ? request : request.header("Authorization", "Bearer " + token);
+    }
+
+    /**
+     * Sends a request and records its latency, up to the last byte of the response.
+     *
+     * @return the JSON body of a {@code 200} response of the authentication endpoints,
+     *         {@code null} for the other endpoints and on error
+     */
+    private JsonNode send(Endpoint endpoint, HttpRequest.Builder request) {
+        boolean json = endpoint == Endpoint.LOGIN || endpoint == Endpoint.REGISTER || endpoint == Endpoint.ME;
+        EndpointStats endpointStats = stats.get(endpoint);
+        long start = System.nanoTime();
+        try {
+            // The other bodies are read to their end, then dropped: a rental list can be very large.
+            HttpResponse<byte[]> response = http.send(request.build(), json
+                    ? HttpResponse.BodyHandlers.ofByteArray()
+                    : HttpResponse.BodyHandlers.replacing(null));
+            boolean ok = response.statusCode() == 200;
+            endpointStats.record(System.nanoTime() - start, ok, response.statusCode());
+            return ok && json ? mapper.readTree(response.body()) : null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (IOException e) {
+            endpointStats.failed();
+            return null;
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.openclassrooms.rentals.loadtest;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Options of a load test, given as {@code name=value} arguments.
+ * <p>
+ * Arguments starting with {@code --} are not options of the load test: they are passed to the
+ * application, e.g. {@code --spring.threads.virtual.enabled=true}.
+ * </p>
+ *
+ * @param users the seeded users, all with the password {@link #PASSWORD}
+ * @param rentals the seeded rentals, spread over the users
+ * @param pictures the seeded rentals that have a picture
+ * @param pictureBytes the size of each seeded picture
+ * @param bcryptCost the BCrypt cost of the seeded password hashes
+ * @param clients the concurrent clients, one virtual thread each
+ * @param ramp the duration over which the clients are started, evenly
+ * @param warmup the duration of the run before the measures start
+ * @param duration the duration of the measures
+ * @param think the pause of a client between two requests
+ * @param mix the relative weight of each endpoint in the requests of a client
+ * @param out the directory of the percentile distributions
+ * @param appArgs the arguments passed to the application
+ */
+public record LoadTestOptions(int users, int rentals, int pictures, int pictureBytes, int bcryptCost, int clients,
+                              Duration ramp, Duration warmup, Duration duration, Duration think,
+                              Map<Endpoint, Integer> mix, Path out, String[] appArgs) {
+
+    /** Password of the seeded users. */
+    public static final String PASSWORD = "load-test-password";
+
+    private static final String DEFAULT_MIX = "get=60,picture=20,message=15,list=2,login=2,register=1";
+
+    /**
+     * Reads the options, with their defaults: {@code users=1000 rentals=10000 pictures=200
+     * pictureBytes=65536 bcryptCost=10 clients=100 ramp=0s warmup=10s duration=30s think=0ms
+     * mix=get=60,picture=20,message=15,list=2,login=2,register=1 out=target/loadtest}.
+     * Durations are in {@code ms}, {@code s} or {@code m}.
+     *
+     * @param args the arguments of the command line
+     * @return the options
+     * @throws IllegalArgumentException if an option is unknown or invalid
+     */
+    public static LoadTestOptions parse(String[] args) {
+        Map<String, String> values = new HashMap<>();
+        List<String> appArgs = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.startsWith("--")) {
+                appArgs.add(arg);
+                continue;
+            }
+            int equals = arg.indexOf('=');
+            if (equals < 1) {
+                throw new IllegalArgumentException("Expected name=value, got: " + arg);
+            }
+            values.put(arg.substring(0, equals), arg.substring(equals + 1));
+        }
+        LoadTestOptions options = new LoadTestOptions(
+                intValue(values.remove("users"), 1000),
+                intValue(values.remove("rentals"), 10_000),
+                intValue(values.remove("pictures"), 200),
+                intValue(values.remove("pictureBytes"), 64 * 1024),
+                intValue(values.remove("bcryptCost"), 10),
+                intValue(values.remove("clients"), 100),
+                duration(values.remove("ramp"), "0s"),
+                duration(values.remove("warmup"), "10s"),
+                duration(values.remove("duration"), "30s"),
+                duration(values.remove("think"), "0ms"),
+                mix(values.getOrDefault("mix", DEFAULT_MIX)),
+                Path.of(values.getOrDefault("out", "target/loadtest")),
+                appArgs.toArray(String[]::new));
+        values.remove("mix");
+        values.remove("out");
+        if (!values.isEmpty()) {
+            throw new IllegalArgumentException("Unknown options: " + values.keySet());
+        }
+        if (options.users < 1 || options.rentals < 1 || options.clients < 1) {
+            throw new IllegalArgumentException("users, rentals and clients must be positive");
+        }
+        if (options.pictures > options.rentals) {
+            throw new IllegalArgumentException("pictures cannot exceed rentals");
+        }
+        return options;
+    }
+
+    /**
+     * @param endpoint the only endpoint of the mix
+     * @return these options, with a mix of one endpoint
+     */
+    public LoadTestOptions only(Endpoint endpoint) {
+        return new LoadTestOptions(users, rentals, pictures, pictureBytes, bcryptCost, clients, ramp, warmup, duration,
+                think, Map.of(endpoint, 1), out, appArgs);
+    }
+
+    private static int intValue(String value, int defaultValue) {
+        return value == null ? defaultValue : Integer.parseInt(value.replace("_", ""));
+    }
+
+    private static Duration duration(String value, String defaultValue) {
+        String text = value == null ? defaultValue : value.trim();
+        if (text.endsWith("ms")) {
+            return Duration.ofMillis(Long.parseLong(text.substring(0, text.length() - 2)));
+        }
+        long amount = Long.parseLong(text.substring(0, text.length() - 1));
+        return switch (text.charAt(text.length() - 1)) {
+            case 's' -> Duration.ofSeconds(amount);
+            case 'm' -> Duration.ofMinutes(amount);
+            default -> throw new IllegalArgumentException("Expected a duration in ms, s or m, got: " + text);
+        };
+    }
+
+    private static Map<Endpoint, Integer> mix(String value) {
+        Map<Endpoint, Integer> mix = new EnumMap<>(Endpoint.class);
+        for (String entry : value.split(",")) {
+            String[] weight = entry.split("=");
+            if (weight.length != 2) {
+                throw new IllegalArgumentException("Expected endpoint=weight in the mix, got: " + entry);
+            }
+            mix.put(Endpoint.of(weight[0].trim()), Integer.parseInt(weight[1].trim()));
+        }
+        mix.remove(Endpoint.ME);
+        if (mix.values().stream().mapToInt(Integer::intValue).sum() <= 0) {
+            throw new IllegalArgumentException("The mix has no weight: " + value);
+        }
+        return mix;
+    }
+}
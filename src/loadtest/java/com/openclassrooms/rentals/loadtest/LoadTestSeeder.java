@@ -0,0 +1,123 @@
+package com.openclassrooms.rentals.loadtest;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import javax.sql.DataSource;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+import com.openclassrooms.rentals.services.StorageService;
+import com.openclassrooms.rentals.services.storage.PictureNames;
+import com.openclassrooms.rentals.services.storage.PictureStore;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Seeds the embedded database of the load test, once the migrations have created the schema.
+ * <p>
+ * Users and rentals are inserted by JDBC batches, with the identifiers {@code 1..users} and
+ * {@code 1..rentals}: the user {@code n} is {@code user-n@loadtest.local}, and owns the rentals
+ * {@code n}, {@code n + users}... All the users share one password hash, computed once. The
+ * first {@code pictures} rentals have a picture of random bytes, written through the
+ * {@link PictureStore} of the application. The identifier generators are then moved after the
+ * seeded rows, as {@code V2__id_generators.sql} does for an existing database.
+ * </p>
+ */
+@Slf4j
+public class LoadTestSeeder {
+
+    private static final int BATCH_SIZE = 10_000;
+
+    private final JdbcTemplate jdbc;
+    private final PictureStore pictureStore;
+    private final StorageService storageService;
+    private final Random random = new Random(42);
+
+    public LoadTestSeeder(DataSource dataSource, PictureStore pictureStore, StorageService storageService) {
+        this.jdbc = new JdbcTemplate(dataSource);
+        this.pictureStore = pictureStore;
+        this.storageService = storageService;
+    }
+
+    /**
+     * Seeds the users, the rentals and their pictures.
+     *
+     * @param options the scale of the seed
+     * @return the URLs of the seeded pictures
+     * @throws IOException if a picture cannot be written
+     */
+    public List<String> seed(LoadTestOptions options) throws IOException {
+        long start = System.nanoTime();
+        Timestamp now = new Timestamp(System.currentTimeMillis());
+
+        String hash = new BCryptPasswordEncoder(options.bcryptCost()).encode(LoadTestOptions.PASSWORD);
+        List<Object[]> rows = new ArrayList<>(BATCH_SIZE);
+        for (long id = 1; id <= options.users(); id++) {
+            rows.add(new Object[] { id, email(id), "Load test user " + id, hash, now, now });
+            if (rows.size() == BATCH_SIZE || id == options.users()) {
+                jdbc.batchUpdate("INSERT INTO users (id, email, name, password, created_at, updated_at)"
+                        + " VALUES (?, ?, ?, ?, ?, ?)", rows);
+                rows.clear();
+            }
+        }
+
+        List<String> pictureUrls = new ArrayList<>(options.pictures());
+        for (long id = 1; id <= options.rentals(); id++) {
+            String picture = null;
+            if (id <= options.pictures()) {
+                picture = writePicture(id, options.pictureBytes());
+                pictureUrls.add(picture);
+            }
+            long ownerId = (id - 1) % options.users() + 1;
+            rows.add(new Object[] { id, "Rental " + id, BigDecimal.valueOf(20 + id % 200),
+                    BigDecimal.valueOf(300 + id % 3000), picture, "Seeded by the load test, rental " + id,
+                    ownerId, now, now });
+            if (rows.size() == BATCH_SIZE || id == options.rentals()) {
+                jdbc.batchUpdate("INSERT INTO rentals (id, name, surface, price, picture, description, owner_id,"
+                        + " created_at, updated_at) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)", rows);
+                rows.clear();
+                if (id % (BATCH_SIZE * 10) == 0) {
+                    log.info("{} rentals seeded", id);
+                }
+            }
+        }
+
+        for (String table : List.of("users", "rentals", "messages")) {
+            jdbc.update("UPDATE id_generators SET next_val = (SELECT COALESCE(MAX(id), 0) + 49 FROM " + table
+                    + ") WHERE sequence_name = ?", table);
+        }
+        log.info("Seeded {} users, {} rentals and {} pictures in {} ms", options.users(), options.rentals(),
+                options.pictures(), (System.nanoTime() - start) / 1_000_000);
+        return pictureUrls;
+    }
+
+    /**
+     * @param id the identifier of a seeded user
+     * @return the email of the user
+     */
+    public static String email(long id) {
+        return "user-" + id + "@loadtest.local";
+    }
+
+    private String writePicture(long rentalId, int size) throws IOException {
+        byte[] content = new byte[size];
+        random.nextBytes(content);
+        String filename;
+        try {
+            filename = PictureNames.fingerprinted("picture.jpg", MessageDigest.getInstance("SHA-256").digest(content));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        pictureStore.write(rentalId, filename, new ByteArrayInputStream(content), size);
+        return storageService.pictureUrl(rentalId, filename);
+    }
+}
@@ -0,0 +1,133 @@
+package com.openclassrooms.rentals.loadtest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import org.HdrHistogram.Histogram;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Performance gate of the build: fails it when an endpoint goes over its budgets.
+ * <p>
+ * The application is started and seeded as for the {@link LoadTest}, with a
+ * {@link RequestProbe}. Each gated endpoint is then driven alone by a fixed number of clients,
+ * and measured after a warmup against the budgets of {@code performance-budgets.properties}
+ * (or of the file given by {@code budgets=}):
+ * </p>
+ * <ul>
+ *   <li>{@code <endpoint>.maxStatements}: the most SQL statements run by one request</li>
+ *   <li>{@code <endpoint>.maxAllocatedBytes}: the heap allocated per request, on average</li>
+ *   <li>{@code <endpoint>.maxP99Ms}: the 99th percentile of the latency</li>
+ * </ul>
+ * <p>
+ * Any error also fails the endpoint. The other arguments are the options of the load test,
+ * with smaller defaults ({@code users=200 rentals=2000 pictures=100 clients=8 warmup=5s
+ * duration=10s}). The latency budgets depend on the machine: they are loose enough for a
+ * developer machine or a CI runner, and catch the regressions that multiply a latency rather
+ * than those of a few percent, which are the job of the benchmarks.
+ * </p>
+ */
+@Slf4j
+public final class PerformanceGate {
+
+    private static final String[] DEFAULTS = {
+        "users=200", "rentals=2000", "pictures=100", "clients=8", "warmup=5s", "duration=10s"
+    };
+
+    private static final List<Endpoint> GATED = List.of(
+            Endpoint.LIST, Endpoint.GET, Endpoint.LOGIN, Endpoint.ME, Endpoint.MESSAGE, Endpoint.PICTURE);
+
+    private static final double NANOS_PER_MILLI = 1_000_000.0;
+
+    private PerformanceGate() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        String budgetsFile = null;
+        List<String> loadTestArgs = new ArrayList<>(List.of(DEFAULTS));
+        for (String arg : args) {
+            if (arg.startsWith("budgets=")) {
+                budgetsFile = arg.substring("budgets=".length());
+            } else {
+                loadTestArgs.add(arg);
+            }
+        }
+        Properties budgets = budgets(budgetsFile);
+        LoadTestOptions options = LoadTestOptions.parse(loadTestArgs.toArray(String[]::new));
+
+        List<String> failures = new ArrayList<>();
+        PrintStream out = System.out;
+        try (EmbeddedApplication application = EmbeddedApplication.start(options, RequestProbe.class)) {
+            RequestProbe probe = application.context().getBean(RequestProbe.class);
+            List<String> lines = new ArrayList<>();
+            for (Endpoint endpoint : GATED) {
+                log.info("Gating {}", endpoint.label());
+                LoadTest.Measures measures = LoadTest.run(options.only(endpoint), application, probe::reset);
+                RequestProbe.Totals totals = probe.totals();
+                EndpointStats.Interval interval = measures.endpoints().get(endpoint);
+                Histogram histogram = interval.histogram();
+                double p99 = histogram.getValueAtPercentile(99) / NANOS_PER_MILLI;
+
+                String label = endpoint.label();
+                double maxStatements = budget(budgets, label, "maxStatements");
+                double maxAllocatedBytes = budget(budgets, label, "maxAllocatedBytes");
+                double maxP99Ms = budget(budgets, label, "maxP99Ms");
+                check(failures, label, "statements", totals.maxStatements(), maxStatements);
+                check(failures, label, "allocated bytes", totals.meanAllocatedBytes(), maxAllocatedBytes);
+                check(failures, label, "p99 ms", p99, maxP99Ms);
+                if (interval.errorCount() > 0) {
+                    failures.add(label + ": errors by status " + interval.errors());
+                }
+                lines.add(String.format("%-10s %10d %10.1f %12d %12.0f %12d %12.0f %9.2f %9.0f", label,
+                        histogram.getTotalCount(), histogram.getTotalCount() / measures.seconds(),
+                        totals.maxStatements(), maxStatements, totals.meanAllocatedBytes(), maxAllocatedBytes,
+                        p99, maxP99Ms));
+            }
+            out.printf("%nPerformance gate: %d clients, %d users, %d rentals, %.0f s measured per endpoint%n",
+                    options.clients(), options.users(), options.rentals(), (double) options.duration().toSeconds());
+            out.printf("%-10s %10s %10s %12s %12s %12s %12s %9s %9s%n", "endpoint", "requests", "req/s",
+                    "statements", "budget", "bytes/req", "budget", "p99 ms", "budget");
+            lines.forEach(out::println);
+        }
+        if (!failures.isEmpty()) {
+            out.println("\nPerformance gate FAILED:");
+            failures.forEach(failure -> out.println("  " + failure));
+            System.exit(1);
+        }
+        out.println("\nPerformance gate passed");
+    }
+
+    private static void check(List<String> failures, String endpoint, String measure, double value, double budget) {
+        if (value > budget) {
+            failures.add(String.format("%s: %s %.2f over the budget of %.2f", endpoint, measure, value, budget));
+        }
+    }
+
+    private static double budget(Properties budgets, String endpoint, String name) {
+        String value = budgets.getProperty(endpoint + "." + name);
+        if (value == null) {
+            throw new IllegalArgumentException("No budget " + endpoint + "." + name);
+        }
+        return Double.parseDouble(value.replace("_", ""));
+    }
+
+    private static Properties budgets(String file) throws IOException {
+        Properties budgets = new Properties();
+        try (InputStream in = file != null
+                ? Files.newInputStream(Path.of(file))
+                : PerformanceGate.class.getResourceAsStream("/performance-budgets.properties")) {
+            if (in == null) {
+                throw new IllegalStateException("performance-budgets.properties is not on the classpath");
+            }
+            budgets.load(in);
+        }
+        return budgets;
+    }
+}
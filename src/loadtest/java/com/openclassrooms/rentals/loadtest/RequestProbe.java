@@ -0,0 +1,88 @@
+package com.openclassrooms.rentals.loadtest;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import com.openclassrooms.rentals.datasource.SqlAccounting;
+import com.sun.management.ThreadMXBean;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * Measures the SQL statements and the heap allocated by each request, for the
+ * {@link PerformanceGate}.
+ * <p>
+ * Added to the application by the gate only. The filter runs inside the
+ * {@link com.openclassrooms.rentals.filters.SqlAccountingFilter}, which counts the statements,
+ * inside the access log and the {@link com.openclassrooms.rentals.filters.ServerTimingFilter},
+ * and before the authentication. The bytes allocated by the thread of the request are read
+ * from the {@link ThreadMXBean}: the work of other threads, like the write-behind of the
+ * messages, is not included, nor the requests served by virtual threads.
+ * </p>
+ */
+@Order(Ordered.HIGHEST_PRECEDENCE + 3)
+public class RequestProbe extends OncePerRequestFilter {
+
+    private static final ThreadMXBean THREADS = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private final SqlAccounting accounting;
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder allocatedBytes = new LongAdder();
+    private final AtomicLong maxStatements = new AtomicLong();
+
+    public RequestProbe(SqlAccounting accounting) {
+        this.accounting = accounting;
+    }
+
+    /**
+     * Totals of the requests measured since the last {@link #reset()}.
+     *
+     * @param requests the measured requests
+     * @param meanAllocatedBytes the bytes allocated per request, on average
+     * @param maxStatements the most SQL statements run by one request
+     */
+    public record Totals(long requests, long meanAllocatedBytes, long maxStatements) {
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        long allocatedBefore = THREADS.getCurrentThreadAllocatedBytes();
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            long allocatedAfter = THREADS.getCurrentThreadAllocatedBytes();
+            if (allocatedBefore >= 0 && allocatedAfter >= 0) {
+                requests.increment();
+                allocatedBytes.add(allocatedAfter - allocatedBefore);
+                maxStatements.accumulateAndGet(accounting.statements(), Math::max);
+            }
+        }
+    }
+
+    /**
+     * Starts the measures over.
+     */
+    public void reset() {
+        requests.reset();
+        allocatedBytes.reset();
+        maxStatements.set(0);
+    }
+
+    /**
+     * @return the totals of the requests measured since the last {@link #reset()}
+     */
+    public Totals totals() {
+        long count = requests.sum();
+        return new Totals(count, count == 0 ? 0 : allocatedBytes.sum() / count, maxStatements.get());
+    }
+}
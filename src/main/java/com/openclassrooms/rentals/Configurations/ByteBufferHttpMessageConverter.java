@@ -0,0 +1,84 @@
+package com.openclassrooms.rentals.Configurations;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.http.converter.HttpMessageNotWritableException;
+
+/**
+ * HTTP message converter writing {@link ByteBuffer} response bodies.
+ *
+ * This converter lets controllers return pictures held in direct or memory-mapped
+ * buffers. The buffer content is streamed to the response through a small transfer
+ * chunk reused by each request thread, so serving a picture never materializes a
+ * full heap copy of its bytes.
+ *
+ * Only writing is supported: request bodies are never read as buffers.
+ *
+ * @author Pagès
+ */
+public class ByteBufferHttpMessageConverter extends AbstractHttpMessageConverter<ByteBuffer> {
+
+    /**
+     * Size of the per-thread transfer chunk.
+     */
+    private static final int CHUNK_SIZE = 8192;
+
+    private static final ThreadLocal<byte[]> CHUNK = ThreadLocal.withInitial(() -> new byte[CHUNK_SIZE]);
+
+    public ByteBufferHttpMessageConverter() {
+        super(MediaType.ALL);
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return ByteBuffer.class.isAssignableFrom(clazz);
+    }
+
+    @Override
+    protected boolean canRead(MediaType mediaType) {
+        return false;
+    }
+
+    @Override
+    protected Long getContentLength(ByteBuffer buffer, MediaType contentType) {
+        return (long) buffer.remaining();
+    }
+
+    @Override
+    protected ByteBuffer readInternal(Class<? extends ByteBuffer> clazz, HttpInputMessage inputMessage)
+            throws IOException, HttpMessageNotReadableException {
+        throw new HttpMessageNotReadableException("ByteBuffer request bodies are not supported", inputMessage);
+    }
+
+    @Override
+    protected void writeInternal(ByteBuffer buffer, HttpOutputMessage outputMessage)
+            throws IOException, HttpMessageNotWritableException {
+        writeTo(buffer.duplicate(), outputMessage.getBody());
+    }
+
+    /**
+     * Copies the remaining bytes of a buffer to an output stream.
+     *
+     * @param buffer the buffer to drain, its position is moved to its limit
+     * @param out the destination stream
+     * @throws IOException if writing to the stream fails
+     */
+    public static void writeTo(ByteBuffer buffer, OutputStream out) throws IOException {
+        if (buffer.hasArray()) {
+            out.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+            buffer.position(buffer.limit());
+            return;
+        }
+        byte[] chunk = CHUNK.get();
+        while (buffer.hasRemaining()) {
+            int length = Math.min(chunk.length, buffer.remaining());
+            buffer.get(chunk, 0, length);
+            out.write(chunk, 0, length);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.openclassrooms.rentals.Configurations;
+import java.net.URI;
+import java.time.Duration;
+
+import javax.cache.CacheManager;
+import javax.cache.Caching;
+
+import org.ehcache.config.builders.CacheConfigurationBuilder;
+import org.ehcache.config.builders.ExpiryPolicyBuilder;
+import org.ehcache.config.builders.ResourcePoolsBuilder;
+import org.ehcache.core.config.DefaultConfiguration;
+import org.ehcache.jsr107.Eh107Configuration;
+import org.ehcache.jsr107.EhcacheCachingProvider;
+import org.hibernate.cache.jcache.ConfigSettings;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Configuration class for the Hibernate second-level cache.
+ *
+ * Users and rentals are read on nearly every request, by id and, for the users, by
+ * email. Their entities are kept in in-process Ehcache regions, reached by Hibernate
+ * through JCache, and the users are also resolved from their email (their natural id)
+ * without a query.
+ *
+ * Key features:
+ * <ul>
+ *   <li>One region per cached entity, plus one for the email to user id resolutions</li>
+ *   <li>Each region bounded in entries and with a time to live, both configured
+ *       under <code>pages.cache.*</code></li>
+ *   <li>Region hits, misses and puts published as Micrometer meters, tagged by region</li>
+ * </ul>
+ *
+ * The entities are cached read-write: changes made through Hibernate, like
+ * <code>RentalService.update</code>, replace the cached entry once committed.
+ * Changes made with plain SQL bypass the cache until the entry expires.
+ *
+ * @author Pagès
+ */
+@Configuration
+public class HibernateCacheConfig {
+
+    /** Region of the {@link com.openclassrooms.rentals.models.UserEntity} entities. */
+    public static final String USERS = "users";
+
+    /** Region of the resolutions of user emails to user ids. */
+    public static final String USERS_BY_EMAIL = "users-by-email";
+
+    /** Region of the {@link com.openclassrooms.rentals.models.RentalEntity} entities. */
+    public static final String RENTALS = "rentals";
+
+    /**
+     * Creates the cache manager holding the second-level cache regions.
+     *
+     * @return the JCache manager, closed with the application context
+     */
+    @Bean(destroyMethod = "close")
+    public CacheManager hibernateCacheManager(
+            @Value("${pages.cache.users.maxEntries:10000}") long usersMaxEntries,
+            @Value("${pages.cache.users.ttlMs:600000}") long usersTtlMs,
+            @Value("${pages.cache.rentals.maxEntries:10000}") long rentalsMaxEntries,
+            @Value("${pages.cache.rentals.ttlMs:600000}") long rentalsTtlMs) {
+        EhcacheCachingProvider provider = (EhcacheCachingProvider) Caching.getCachingProvider(
+                EhcacheCachingProvider.class.getName());
+        CacheManager cacheManager = provider.getCacheManager(URI.create("urn:rentals:hibernate"),
+                new DefaultConfiguration(getClass().getClassLoader()));
+        cacheManager.createCache(USERS, region(usersMaxEntries, usersTtlMs));
+        cacheManager.createCache(USERS_BY_EMAIL, region(usersMaxEntries, usersTtlMs));
+        cacheManager.createCache(RENTALS, region(rentalsMaxEntries, rentalsTtlMs));
+        return cacheManager;
+    }
+
+    /**
+     * Hands the cache manager to Hibernate, which fails to start on a region it does not define.
+     *
+     * @param hibernateCacheManager the cache manager holding the regions
+     * @return the customizer of the Hibernate properties
+     */
+    @Bean
+    public HibernatePropertiesCustomizer hibernateCacheCustomizer(CacheManager hibernateCacheManager) {
+        return properties -> {
+            properties.put(ConfigSettings.CACHE_MANAGER, hibernateCacheManager);
+            properties.put(ConfigSettings.MISSING_CACHE_STRATEGY, "fail");
+        };
+    }
+
+    private static javax.cache.configuration.Configuration<Object, Object> region(long maxEntries, long ttlMs) {
+        return Eh107Configuration.fromEhcacheCacheConfiguration(
+                CacheConfigurationBuilder.newCacheConfigurationBuilder(Object.class, Object.class,
+                                ResourcePoolsBuilder.heap(maxEntries))
+                        .withExpiry(ExpiryPolicyBuilder.timeToLiveExpiration(Duration.ofMillis(ttlMs))));
+    }
+}
@@ -0,0 +1,69 @@
+package com.openclassrooms.rentals.Configurations;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.autoconfigure.endpoint.condition.ConditionalOnAvailableEndpoint;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.openclassrooms.rentals.profiling.JfrEndpoint;
+import com.openclassrooms.rentals.profiling.JfrMonitor;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Configuration class for Java Flight Recorder.
+ *
+ * The <code>jfr</code> actuator endpoint starts recordings on demand, which include the
+ * JWT verification, SQL statement and storage I/O events of the application, and downloads
+ * them as <code>.jfr</code> files. It is restricted to the users listed in
+ * <code>pages.jfr.operators</code> by {@link SecurityConfig}.
+ *
+ * Key features:
+ * <ul>
+ *   <li>Recordings with the <code>default</code> or <code>profile</code> settings of the JDK,
+ *       at most <code>pages.jfr.maxDurationSeconds</code> long</li>
+ *   <li>A continuous stream publishing the allocation rate and the GC pauses, with alerts above
+ *       <code>pages.jfr.allocationRateThreshold</code> and <code>pages.jfr.gcPauseThresholdMs</code></li>
+ * </ul>
+ *
+ * The stream is active unless <code>pages.jfr.streaming.enabled=false</code>.
+ *
+ * @author Pagès
+ */
+@Configuration
+public class JfrConfig {
+
+    /**
+     * Creates the endpoint, if it is exposed.
+     *
+     * @return the endpoint, whose recordings are closed with the application
+     */
+    @Bean(destroyMethod = "closeAll")
+    @ConditionalOnAvailableEndpoint(endpoint = JfrEndpoint.class)
+    public JfrEndpoint jfrEndpoint(@Value("${pages.jfr.dir:jfr}") Path directory,
+            @Value("${pages.jfr.maxDurationSeconds:300}") long maxDurationSeconds,
+            @Value("${pages.jfr.maxRecordings:5}") int maxRecordings) {
+        return new JfrEndpoint(directory, Duration.ofSeconds(maxDurationSeconds), maxRecordings);
+    }
+
+    /**
+     * Creates and starts the continuous stream.
+     *
+     * @return the monitor, whose stream is closed with the application
+     */
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(name = "pages.jfr.streaming.enabled", havingValue = "true", matchIfMissing = true)
+    public JfrMonitor jfrMonitor(MeterRegistry registry,
+            @Value("${pages.jfr.allocationRateThreshold:1073741824}") long allocationRateThreshold,
+            @Value("${pages.jfr.gcPauseThresholdMs:200}") long gcPauseThresholdMs,
+            @Value("${pages.jfr.allocationSampleRate:150/s}") String allocationSampleRate) {
+        JfrMonitor monitor = new JfrMonitor(registry, allocationRateThreshold, Duration.ofMillis(gcPauseThresholdMs),
+                allocationSampleRate);
+        monitor.start();
+        return monitor;
+    }
+}
@@ -0,0 +1,53 @@
+package com.openclassrooms.rentals.Configurations;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import com.openclassrooms.rentals.datasource.QueryPlanRecorder;
+import com.openclassrooms.rentals.datasource.QueryPlanVerifier;
+import com.openclassrooms.rentals.repositorys.MessageRepository;
+import com.openclassrooms.rentals.repositorys.RentalRepository;
+import com.openclassrooms.rentals.repositorys.UserRepository;
+
+import jakarta.persistence.EntityManagerFactory;
+
+/**
+ * Configuration class verifying the execution plans of the repository queries at startup.
+ *
+ * This class is only active when <code>pages.db.verifyQueryPlans=true</code>, typically
+ * on an embedded database built by the Flyway migrations, or on a copy of production.
+ * The data source is then wrapped to explain the queries; it is not when the
+ * verification is off.
+ *
+ * @author Pagès
+ */
+@Configuration
+@ConditionalOnProperty(name = "pages.db.verifyQueryPlans", havingValue = "true")
+public class QueryPlanConfig {
+
+    /**
+     * Creates the recorder of the query plans, which wraps the data source.
+     * Static, as a bean post-processor.
+     *
+     * @return the recorder
+     */
+    @Bean
+    public static QueryPlanRecorder queryPlanRecorder() {
+        return new QueryPlanRecorder();
+    }
+
+    /**
+     * Creates the verifier, run once the application is ready.
+     *
+     * @return the verifier
+     */
+    @Bean
+    public QueryPlanVerifier queryPlanVerifier(QueryPlanRecorder recorder, RentalRepository rentalRepo,
+            UserRepository userRepo, MessageRepository messageRepo, EntityManagerFactory entityManagerFactory,
+            PlatformTransactionManager transactionManager) {
+        return new QueryPlanVerifier(recorder, rentalRepo, userRepo, messageRepo, entityManagerFactory,
+                transactionManager);
+    }
+}
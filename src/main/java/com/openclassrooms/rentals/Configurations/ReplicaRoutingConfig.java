@@ -0,0 +1,109 @@
+package com.openclassrooms.rentals.Configurations;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import com.openclassrooms.rentals.datasource.ReplicaDataSource;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Configuration class routing the read-only transactions to read replicas.
+ *
+ * This class is only active when <code>pages.datasource.replicas.enabled=true</code>.
+ * It replaces the data source of Spring Boot by a {@link LazyConnectionDataSourceProxy}:
+ * the connection is only fetched on the first statement, once the transaction is known
+ * to be read-only, and then comes from the {@link ReplicaDataSource} instead of the primary.
+ * Transactions marked <code>@Transactional(readOnly = true)</code>, which include the
+ * reads of the Spring Data repositories, go to the replicas; all the others stay on
+ * the primary.
+ *
+ * Key features:
+ * <ul>
+ *   <li>One Hikari pool per replica URL of <code>pages.datasource.replicas.urls</code>,
+ *       with the settings of the primary pool</li>
+ *   <li>Round-robin or least-loaded selection of the replica</li>
+ *   <li>Fallback to the primary when no replica gives a connection</li>
+ *   <li>Read-your-writes window after the writes of a user</li>
+ * </ul>
+ *
+ * @author Pagès
+ */
+@Configuration
+@ConditionalOnProperty(name = "pages.datasource.replicas.enabled", havingValue = "true")
+public class ReplicaRoutingConfig {
+
+    /**
+     * Creates the pool of the primary, configured like the data source of Spring Boot.
+     *
+     * @param properties the <code>spring.datasource</code> properties
+     * @return the primary pool
+     */
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        return properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+    }
+
+    /**
+     * Creates the replica pools, which copy the settings of the primary pool.
+     *
+     * @return the data source of the read-only connections
+     */
+    @Bean(destroyMethod = "close")
+    public ReplicaDataSource replicaDataSource(HikariDataSource primaryDataSource, MeterRegistry registry,
+            @Value("${pages.datasource.replicas.urls}") List<String> urls,
+            @Value("${pages.datasource.replicas.username:}") String username,
+            @Value("${pages.datasource.replicas.password:}") String password,
+            @Value("${pages.datasource.replicas.selection:round-robin}") String selection,
+            @Value("${pages.datasource.replicas.connectionTimeoutMs:1000}") long connectionTimeoutMs,
+            @Value("${pages.datasource.replicas.retryAfterMs:30000}") long retryAfterMs,
+            @Value("${pages.datasource.replicas.readYourWritesMs:5000}") long readYourWritesMs) {
+        List<HikariDataSource> pools = new ArrayList<>();
+        for (String url : urls) {
+            HikariDataSource pool = new HikariDataSource();
+            primaryDataSource.copyStateTo(pool);
+            pool.setPoolName("replica-" + pools.size());
+            pool.setJdbcUrl(url.trim());
+            if (!username.isBlank()) {
+                pool.setUsername(username);
+                pool.setPassword(password);
+            }
+            // A replica must be skipped quickly when down, and must not prevent the startup.
+            pool.setConnectionTimeout(connectionTimeoutMs);
+            pool.setInitializationFailTimeout(-1);
+            pool.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(registry));
+            pools.add(pool);
+        }
+        return new ReplicaDataSource(pools, primaryDataSource,
+                ReplicaDataSource.Selection.valueOf(selection.trim().toUpperCase(Locale.ROOT).replace('-', '_')),
+                retryAfterMs, readYourWritesMs, registry);
+    }
+
+    /**
+     * Creates the data source used by JPA and JDBC, routing the read-only connections.
+     *
+     * @return the routing data source
+     */
+    @Bean
+    @Primary
+    public DataSource dataSource(HikariDataSource primaryDataSource, ReplicaDataSource replicaDataSource) {
+        LazyConnectionDataSourceProxy routing = new LazyConnectionDataSourceProxy(
+                replicaDataSource.recordingWrites(primaryDataSource));
+        routing.setReadOnlyDataSource(replicaDataSource);
+        return routing;
+    }
+}
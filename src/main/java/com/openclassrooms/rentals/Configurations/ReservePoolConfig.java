@@ -0,0 +1,32 @@
+package com.openclassrooms.rentals.Configurations;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.openclassrooms.rentals.datasource.ReservePool;
+
+/**
+ * Configuration class of the reserve pool of the nested connections.
+ *
+ * The identifiers of the users, rentals and messages are allocated by blocks, in a
+ * transaction of their own (see the <code>@TableGenerator</code> of the entities). Its
+ * connection is taken from a {@link ReservePool} of <code>pages.datasource.reservePoolSize</code>
+ * connections, so that the requests holding all the connections of the main pool cannot
+ * block the allocation they are waiting for.
+ *
+ * @author Pagès
+ */
+@Configuration
+public class ReservePoolConfig {
+
+    /**
+     * Creates the reserve pool, which wraps the data source. Static, as a bean post-processor.
+     *
+     * @return the reserve pool
+     */
+    @Bean
+    public static ReservePool reservePool(@Value("${pages.datasource.reservePoolSize:2}") int size) {
+        return new ReservePool(size);
+    }
+}
@@ -0,0 +1,70 @@
+package com.openclassrooms.rentals.Configurations;
+import java.net.URI;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.AwsCredentialsProvider;
+import software.amazon.awssdk.auth.credentials.DefaultCredentialsProvider;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.core.checksums.RequestChecksumCalculation;
+import software.amazon.awssdk.core.checksums.ResponseChecksumValidation;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.S3ClientBuilder;
+
+/**
+ * Configuration class for the S3-compatible picture storage.
+ *
+ * This class is only active when <code>pages.storage.type=s3</code>. It provides the
+ * {@link S3Client} used by the S3 picture store, pointed either at AWS or, through
+ * <code>pages.storage.s3.endpoint</code>, at any S3-compatible object store such as
+ * MinIO or a local in-process stand-in.
+ *
+ * Key features:
+ * <ul>
+ *   <li>Optional endpoint override and path-style addressing for S3-compatible stores</li>
+ *   <li>Static credentials from the configuration, or the default AWS credentials chain</li>
+ *   <li>Checksums only sent when an operation requires them, as many S3-compatible stores
+ *       do not support the newer optional ones</li>
+ * </ul>
+ *
+ * @author Pagès
+ */
+@Configuration
+@ConditionalOnProperty(name = "pages.storage.type", havingValue = "s3")
+public class S3StorageConfig {
+
+    /**
+     * Creates the S3 client used for picture storage.
+     *
+     * @param endpoint the endpoint of the object store, empty to use AWS
+     * @param region the region of the bucket
+     * @param accessKey the access key, empty to use the default AWS credentials chain
+     * @param secretKey the secret key matching {@code accessKey}
+     * @param pathStyle whether to address the bucket in the path rather than the host name
+     * @return the configured {@code S3Client}
+     */
+    @Bean(destroyMethod = "close")
+    public S3Client s3Client(@Value("${pages.storage.s3.endpoint:}") String endpoint,
+                             @Value("${pages.storage.s3.region:us-east-1}") String region,
+                             @Value("${pages.storage.s3.accessKey:}") String accessKey,
+                             @Value("${pages.storage.s3.secretKey:}") String secretKey,
+                             @Value("${pages.storage.s3.pathStyle:true}") boolean pathStyle) {
+        AwsCredentialsProvider credentials = accessKey.isBlank()
+                ? DefaultCredentialsProvider.builder().build()
+                : StaticCredentialsProvider.create(AwsBasicCredentials.create(accessKey, secretKey));
+
+        S3ClientBuilder builder = S3Client.builder()
+                .region(Region.of(region))
+                .credentialsProvider(credentials)
+                .forcePathStyle(pathStyle)
+                .requestChecksumCalculation(RequestChecksumCalculation.WHEN_REQUIRED)
+                .responseChecksumValidation(ResponseChecksumValidation.WHEN_REQUIRED);
+        if (!endpoint.isBlank()) {
+            builder.endpointOverride(URI.create(endpoint));
+        }
+        return builder.build();
+    }
+}
@@ -0,0 +1,17 @@
+package com.openclassrooms.rentals.Configurations;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+/**
+ * Configuration class enabling scheduled background jobs.
+ *
+ * Background maintenance tasks, such as the compaction of the picture segment store,
+ * are declared with {@link org.springframework.scheduling.annotation.Scheduled} on
+ * their own components and run on the Spring task scheduler.
+ *
+ * @author Pagès
+ */
+@Configuration
+@EnableScheduling
+public class SchedulingConfig {
+}
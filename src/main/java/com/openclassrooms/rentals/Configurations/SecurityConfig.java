@@ -1,10 +1,16 @@
 package com.openclassrooms.rentals.Configurations;
+import java.util.List;
+
+import jakarta.servlet.DispatcherType;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.autoconfigure.security.servlet.EndpointRequest;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Lazy;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.AuthenticationProvider;
 import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
+import org.springframework.security.authorization.AuthorizationDecision;
 import org.springframework.security.config.Customizer;
 import org.springframework.security.config.annotation.authentication.builders.AuthenticationManagerBuilder;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
@@ -17,6 +23,7 @@ import org.springframework.security.oauth2.jwt.JwtDecoder;
 import org.springframework.security.oauth2.jwt.JwtEncoder;
 import org.springframework.security.web.SecurityFilterChain;
 import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
+import com.openclassrooms.rentals.profiling.JfrEndpoint;
 import com.openclassrooms.rentals.security.HmacJwtFactory;
 import com.openclassrooms.rentals.security.JwtAuthenticationFilter;
 
@@ -36,6 +43,9 @@ import com.openclassrooms.rentals.security.JwtAuthenticationFilter;
  *   <li>CORS configuration to allow requests from the Angular frontend</li>
  *   <li>Integration of a DAO-based AuthenticationProvider using UserDetailsService</li>
  *   <li>Activation of Swagger UI and API documentation endpoints</li>
+ *   <li>The Flight Recorder endpoint restricted to the emails of <code>pages.jfr.operators</code></li>
+ *   <li>Async and error dispatches let through, as their request was already authorized
+ *       (e.g. the completion of a Server-Sent Events stream)</li>
  * </ul>
  *
  * @author Pagès
@@ -86,17 +96,23 @@ public class SecurityConfig {
      * Configures the security filter chain for HTTP requests.
      *
      * @param http the HttpSecurity object to configure
+     * @param jfrOperators the emails of the users allowed to record the JVM, none by default
      * @return the configured SecurityFilterChain
      * @throws Exception if an error occurs during configuration
      */
     @Bean
-    public SecurityFilterChain filterChain(HttpSecurity http) throws Exception {
+    public SecurityFilterChain filterChain(HttpSecurity http,
+                                           @Value("${pages.jfr.operators:}") List<String> jfrOperators)
+            throws Exception {
         http.csrf(csrf -> csrf.disable());
         http.cors();
 
         http.sessionManagement(session -> session.sessionCreationPolicy(SessionCreationPolicy.STATELESS))
             .authorizeHttpRequests(auth -> auth
+                .dispatcherTypeMatchers(DispatcherType.ASYNC, DispatcherType.ERROR).permitAll()
                 .requestMatchers(AUTH_WHITELIST).permitAll()
+                .requestMatchers(EndpointRequest.to(JfrEndpoint.class)).access((authentication, context) ->
+                    new AuthorizationDecision(jfrOperators.contains(authentication.get().getName())))
                 .anyRequest().authenticated())
             .httpBasic(Customizer.withDefaults())
             .addFilterBefore(jwtAuthFilter, UsernamePasswordAuthenticationFilter.class)
@@ -0,0 +1,54 @@
+package com.openclassrooms.rentals.Configurations;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Type;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.converter.HttpMessageNotWritableException;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.lang.Nullable;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.openclassrooms.rentals.profiling.ServerTiming;
+
+/**
+ * JSON message converter timing the serialization of the bodies for the
+ * <code>Server-Timing</code> header.
+ *
+ * For a request timed by {@link com.openclassrooms.rentals.filters.ServerTimingFilter}, the
+ * body is serialized into a buffer, then written: the header, added when the body starts, then
+ * holds the <code>json</code> phase. The other bodies are written directly, as by the Jackson
+ * converter it replaces.
+ *
+ * @author Pagès
+ */
+public class ServerTimingJsonHttpMessageConverter extends MappingJackson2HttpMessageConverter {
+
+    public ServerTimingJsonHttpMessageConverter(ObjectMapper objectMapper) {
+        super(objectMapper);
+    }
+
+    @Override
+    protected void writeInternal(Object object, @Nullable Type type, HttpOutputMessage outputMessage)
+            throws IOException, HttpMessageNotWritableException {
+        if (ServerTiming.current() == null) {
+            super.writeInternal(object, type, outputMessage);
+            return;
+        }
+        long timing = ServerTiming.start();
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(8192);
+        super.writeInternal(object, type, new HttpOutputMessage() {
+            @Override
+            public OutputStream getBody() {
+                return buffer;
+            }
+
+            @Override
+            public HttpHeaders getHeaders() {
+                return outputMessage.getHeaders();
+            }
+        });
+        ServerTiming.stop(ServerTiming.Phase.SERIALIZATION, timing);
+        buffer.writeTo(outputMessage.getBody());
+    }
+}
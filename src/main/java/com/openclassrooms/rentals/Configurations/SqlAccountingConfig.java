@@ -0,0 +1,68 @@
+package com.openclassrooms.rentals.Configurations;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.openclassrooms.rentals.datasource.SqlAccounting;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Configuration class for the accounting of the SQL statements.
+ *
+ * The <code>dataSource</code> bean is wrapped by {@link SqlAccounting}, which times and
+ * counts its statements, logs the slow ones and, with the
+ * {@link com.openclassrooms.rentals.filters.SqlAccountingFilter}, adds them up per HTTP
+ * request. It replaces <code>spring.jpa.show-sql</code>, which printed every statement.
+ *
+ * Key features:
+ * <ul>
+ *   <li>Statement, row and database time histograms per controller method</li>
+ *   <li>Slow statements logged above <code>pages.sql.slowQueryMs</code>, without their parameters</li>
+ *   <li>Requests over <code>pages.sql.statementBudget</code> statements flagged as N+1 suspects</li>
+ * </ul>
+ *
+ * Active unless <code>pages.sql.accounting.enabled=false</code>.
+ *
+ * @author Pagès
+ */
+@Configuration
+@ConditionalOnProperty(name = "pages.sql.accounting.enabled", havingValue = "true", matchIfMissing = true)
+public class SqlAccountingConfig {
+
+    /**
+     * Creates the SQL accounting.
+     *
+     * @return the accounting, shared by the data source and the request filter
+     */
+    @Bean
+    public SqlAccounting sqlAccounting(MeterRegistry registry,
+            @Value("${pages.sql.slowQueryMs:200}") long slowQueryMs,
+            @Value("${pages.sql.statementBudget:25}") int statementBudget) {
+        return new SqlAccounting(registry, slowQueryMs, statementBudget);
+    }
+
+    /**
+     * Wraps the <code>dataSource</code> bean. Static, as a bean post-processor; the
+     * accounting is only created when the data source is.
+     *
+     * @return the post-processor wrapping the data source
+     */
+    @Bean
+    public static BeanPostProcessor sqlAccountingDataSourcePostProcessor(ObjectProvider<SqlAccounting> accounting) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                return bean instanceof DataSource dataSource && "dataSource".equals(beanName)
+                        ? accounting.getObject().wrap(dataSource)
+                        : bean;
+            }
+        };
+    }
+}
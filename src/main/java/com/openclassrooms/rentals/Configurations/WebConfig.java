@@ -1,21 +1,26 @@
 package com.openclassrooms.rentals.Configurations;
+import java.util.List;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
 import org.springframework.web.servlet.config.annotation.CorsRegistry;
-import org.springframework.web.servlet.config.annotation.ResourceHandlerRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
 /**
- * Web configuration class for resource handling and CORS setup.
+ * Web configuration class for message conversion and CORS setup.
  *
  * This class customizes Spring MVC behavior by:
  * <ul>
- *   <li>Mapping URL paths to local file system directories for serving static resources</li>
  *   <li>Configuring Cross-Origin Resource Sharing (CORS) to allow frontend access from Angular</li>
+ *   <li>Registering the converter used to stream off-heap picture buffers</li>
+ *   <li>Replacing the JSON converter by one timing the serialization for the <code>Server-Timing</code> header</li>
  * </ul>
  *
- * It ensures that uploaded rental pictures can be accessed via HTTP,
- * and that the frontend application running on <code>http://localhost:4200</code>
+ * Uploaded rental pictures are not mapped to a local directory here: they are served
+ * by {@link com.openclassrooms.rentals.controllers.FilesController} through the configured
+ * storage backend, so that every API node serves the same pictures.
+ * The frontend application running on <code>http://localhost:4200</code>
  * can interact with the backend without CORS restrictions.
  *
  * @author Pagès
@@ -24,17 +29,20 @@ import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 public class WebConfig implements WebMvcConfigurer {
 
     /**
-     * Maps HTTP requests to local file system paths.
+     * Registers the {@link ByteBufferHttpMessageConverter} ahead of the default converters.
      * <p>
-     * This method allows files stored in the <code>uploads/</code> directory
-     * to be served via the endpoint <code>/api/files/rentalpicture/**</code>.
+     * This allows controllers to return cached pictures as {@link java.nio.ByteBuffer}
+     * bodies without copying them onto the heap first. The Jackson converter is replaced by a
+     * {@link ServerTimingJsonHttpMessageConverter} sharing its object mapper.
      *
-     * @param registry the resource handler registry used to define mappings
+     * @param converters the list of configured message converters
      */
     @Override
-    public void addResourceHandlers(ResourceHandlerRegistry registry) {
-        registry.addResourceHandler("/api/files/rentalpicture/**")
-                .addResourceLocations("file:uploads/");
+    public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+        converters.add(0, new ByteBufferHttpMessageConverter());
+        converters.replaceAll(converter -> converter.getClass() == MappingJackson2HttpMessageConverter.class
+                ? new ServerTimingJsonHttpMessageConverter(((MappingJackson2HttpMessageConverter) converter).getObjectMapper())
+                : converter);
     }
 
     /**
@@ -1,10 +1,18 @@
 package com.openclassrooms.rentals.controllers;
-import java.nio.file.Files;
-import org.springframework.core.io.FileSystemResource;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import com.openclassrooms.rentals.services.StorageService;
+import com.openclassrooms.rentals.services.storage.PictureNames;
 import io.swagger.v3.oas.annotations.Operation;
 import lombok.extern.slf4j.Slf4j;
 
@@ -16,9 +24,11 @@ import lombok.extern.slf4j.Slf4j;
  *
  * Key responsibilities:
  * <ul>
- *   <li>Serve rental pictures via HTTP</li>
+ *   <li>Serve rental pictures via HTTP, from the off-heap picture cache when possible</li>
+ *   <li>Serve single byte ranges, only reading the requested bytes from the storage</li>
  *   <li>Determine and set appropriate content types for file responses</li>
- *   <li>Log errors during file access operations</li>
+ *   <li>Let fingerprinted pictures be cached as immutable, and answer their revalidations
+ *       with {@code 304 Not Modified} without touching the storage</li>
  * </ul>
  *
  * The controller is mapped to <code>/api/files</code> and is designed to be consumed
@@ -31,6 +41,17 @@ import lombok.extern.slf4j.Slf4j;
 @Slf4j
 public class FilesController extends AbstractController {
 
+    /**
+     * Supported form of the <code>Range</code> header: a single range with a start offset.
+     * The offsets are bounded to 18 digits, so that they always fit a <code>long</code>.
+     */
+    private static final Pattern BYTE_RANGE = Pattern.compile("^bytes=(\\d{1,18})-(\\d{0,18})$");
+
+    /**
+     * Caching of a fingerprinted picture: its content never changes for a given URL.
+     */
+    private static final CacheControl IMMUTABLE = CacheControl.maxAge(Duration.ofDays(365)).cachePublic().immutable();
+
     private final StorageService storageSrvc;
 
     /**
@@ -47,28 +68,83 @@ public class FilesController extends AbstractController {
      *
      * @param id the ID of the rental associated with the image
      * @param filename the exact name of the image file to retrieve
-     * @return a {@link ResponseEntity} containing the image file as a {@link FileSystemResource},
-     *         or an appropriate error response if the file is not found or unreadable
+     * @param range the optional <code>Range</code> header; only <code>bytes=start-</code> and
+     *        <code>bytes=start-end</code> with offsets of at most 18 digits are honored, any other
+     *        form gets the whole picture
+     * @param ifNoneMatch the optional <code>If-None-Match</code> header of a revalidation
+     * @return a {@link ResponseEntity} containing the image bytes as an off-heap {@link ByteBuffer},
+     *         {@code 206 Partial Content} for a range request,
+     *         {@code 304 Not Modified} when the client already holds the fingerprinted picture,
+     *         or {@code 404 Not Found} if the file is not found or unreadable
      */
     @Operation(summary = "Get the picture linked to a rental.")
     @GetMapping("/rentalpicture/{id}/{filename:.+}")
-    public ResponseEntity<?> getRentalPicture(@PathVariable Long id, @PathVariable String filename) {
+    public ResponseEntity<ByteBuffer> getRentalPicture(@PathVariable Long id, @PathVariable String filename,
+            @RequestHeader(value = HttpHeaders.RANGE, required = false) String range,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        Optional<String> fingerprint = PictureNames.fingerprint(filename);
+        HttpHeaders caching = cacheHeaders(fingerprint);
+        if (ifNoneMatch != null && fingerprint.isPresent()
+                && (ifNoneMatch.trim().equals("*") || ifNoneMatch.contains(caching.getETag()))) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).headers(caching).build();
+        }
+
+        MediaType contentType = MediaTypeFactory.getMediaType(filename)
+                .orElse(MediaType.APPLICATION_OCTET_STREAM);
+
+        Matcher byteRange = range == null ? null : BYTE_RANGE.matcher(range);
+        if (byteRange != null && byteRange.matches()) {
+            long start = Long.parseLong(byteRange.group(1));
+            long length = byteRange.group(2).isEmpty()
+                    ? Long.MAX_VALUE
+                    : Long.parseLong(byteRange.group(2)) - start + 1;
+            if (length > 0) {
+                return responseFromOptional(
+                    storageSrvc.loadRange(id, filename, start, length),
+                    part -> part.offset() >= part.totalSize()
+                        ? ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE)
+                                .header(HttpHeaders.CONTENT_RANGE, "bytes */" + part.totalSize())
+                                .build()
+                        : ResponseEntity.status(HttpStatus.PARTIAL_CONTENT)
+                                .headers(caching)
+                                .contentType(contentType)
+                                .header(HttpHeaders.CONTENT_RANGE, "bytes " + part.offset() + "-"
+                                        + (part.offset() + part.content().remaining() - 1) + "/" + part.totalSize())
+                                .contentLength(part.content().remaining())
+                                .body(part.content())
+                );
+            }
+        }
+
         return responseFromOptional(
             storageSrvc.load(id, filename),
-            file -> {
-                try {
-                    String contentType = Files.probeContentType(file.toPath());
-                    if (contentType == null) {
-                        contentType = MediaType.APPLICATION_OCTET_STREAM_VALUE;
-                    }
-                    return ResponseEntity.ok()
-                            .contentType(MediaType.parseMediaType(contentType))
-                            .body(new FileSystemResource(file));
-                } catch (Exception e) {
-                    log.error("Erreur lecture fichier {}: {}", file.getName(), e.getMessage());
-                    return ResponseEntity.internalServerError().build();
-                }
-            }
+            content -> ResponseEntity.ok()
+                    .headers(caching)
+                    .contentType(contentType)
+                    .header(HttpHeaders.ACCEPT_RANGES, "bytes")
+                    .contentLength(content.remaining())
+                    .body(content)
+        );
+    }
+
+    /**
+     * Builds the caching headers of a picture response. Fingerprinted pictures are
+     * cached for a year and identified by their fingerprint; pictures stored before
+     * fingerprinting keep being revalidated on every use, as their URL is reused
+     * when they are replaced.
+     *
+     * @param fingerprint the fingerprint found in the picture name, if any
+     * @return the headers to add to the response
+     */
+    private static HttpHeaders cacheHeaders(Optional<String> fingerprint) {
+        HttpHeaders headers = new HttpHeaders();
+        fingerprint.ifPresentOrElse(
+            value -> {
+                headers.setCacheControl(IMMUTABLE);
+                headers.setETag("\"" + value + "\"");
+            },
+            () -> headers.setCacheControl(CacheControl.noCache())
         );
+        return headers;
     }
 }
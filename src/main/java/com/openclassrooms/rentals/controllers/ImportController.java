@@ -0,0 +1,113 @@
+package com.openclassrooms.rentals.controllers;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import com.openclassrooms.rentals.dto.ImportReportDto;
+import com.openclassrooms.rentals.services.UserService;
+import com.openclassrooms.rentals.services.imports.BulkImportService;
+import com.openclassrooms.rentals.services.imports.BulkImportService.Format;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * <b>ImportController</b>
+ * <p>
+ * This controller manages the bulk imports, used to onboard a partner agency:
+ * </p>
+ * <ul>
+ *   <li>Importing rentals owned by the authenticated user</li>
+ *   <li>Importing messages</li>
+ * </ul>
+ *
+ * <p>
+ * Bodies are sent as NDJSON ({@code application/x-ndjson}, one object per line) or as
+ * CSV ({@code text/csv}, with a header line naming the columns). They are read as a
+ * stream by the {@link BulkImportService}, so their size is not limited.
+ * </p>
+ *
+ * <p><b>Logging</b>: Uses Lombok {@code @Slf4j} for debug and error tracking.</p>
+ */
+@Tag(name = "ImportController", description = "Bulk import of rentals and messages")
+@RestController
+@RequestMapping("/api/import")
+@Slf4j
+public class ImportController extends AbstractController {
+
+    private static final String NDJSON = "application/x-ndjson";
+
+    private final BulkImportService importSrvc;
+
+    private final UserService userSrvc;
+
+    /**
+     * Constructor for ImportController.
+     *
+     * @param importSrvc the service importing the rows
+     * @param userSrvc the service used to identify the authenticated user
+     */
+    public ImportController(BulkImportService importSrvc, UserService userSrvc) {
+        this.importSrvc = importSrvc;
+        this.userSrvc = userSrvc;
+        log.debug("ImportController initialized.");
+    }
+
+    /**
+     * Import rentals owned by the authenticated user.
+     *
+     * @param contentType the media type of the body
+     * @param body the rows, with the fields {@code name}, {@code surface}, {@code price} and {@code description}
+     * @return an {@link ImportReportDto} with the number of imported and rejected rows
+     */
+    @Operation(summary = "Import rentals", description = "Create the rentals of an NDJSON or CSV body, owned by the authenticated user. Invalid rows are reported and skipped.",
+        responses = {
+            @ApiResponse(responseCode = "200", description = "Import done, see the report for the rejected rows"),
+            @ApiResponse(responseCode = "415", description = "Body is neither NDJSON nor CSV")
+    })
+    @PostMapping(value = "/rentals", consumes = { NDJSON, "text/csv" })
+    public ResponseEntity<ImportReportDto> importRentals(@RequestHeader(HttpHeaders.CONTENT_TYPE) MediaType contentType,
+            InputStream body) {
+        log.debug("POST /api/import/rentals - Importing rentals as {}", contentType);
+        return userSrvc.getCurrentUserEntity()
+                .map(owner -> ResponseEntity.ok(
+                        importSrvc.importRentals(body, charset(contentType), format(contentType), owner)))
+                .orElse(ResponseEntity.status(HttpStatus.UNAUTHORIZED).build());
+    }
+
+    /**
+     * Import messages.
+     *
+     * @param contentType the media type of the body
+     * @param body the rows, with the fields {@code message}, {@code user_id} and {@code rental_id}
+     * @return an {@link ImportReportDto} with the number of imported and rejected rows
+     */
+    @Operation(summary = "Import messages", description = "Create the messages of an NDJSON or CSV body. Invalid rows, or rows whose user or rental does not exist, are reported and skipped.",
+        responses = {
+            @ApiResponse(responseCode = "200", description = "Import done, see the report for the rejected rows"),
+            @ApiResponse(responseCode = "415", description = "Body is neither NDJSON nor CSV")
+    })
+    @PostMapping(value = "/messages", consumes = { NDJSON, "text/csv" })
+    public ResponseEntity<ImportReportDto> importMessages(@RequestHeader(HttpHeaders.CONTENT_TYPE) MediaType contentType,
+            InputStream body) {
+        log.debug("POST /api/import/messages - Importing messages as {}", contentType);
+        return ResponseEntity.ok(importSrvc.importMessages(body, charset(contentType), format(contentType)));
+    }
+
+    private static Format format(MediaType contentType) {
+        return contentType.isCompatibleWith(MediaType.parseMediaType(NDJSON)) ? Format.NDJSON : Format.CSV;
+    }
+
+    private static Charset charset(MediaType contentType) {
+        return contentType.getCharset() == null ? StandardCharsets.UTF_8 : contentType.getCharset();
+    }
+}
@@ -1,13 +1,23 @@
 package com.openclassrooms.rentals.controllers;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.AccessDeniedException;
+import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import com.openclassrooms.rentals.dto.MessagePageDto;
 import com.openclassrooms.rentals.dto.MessageRequestDto;
 import com.openclassrooms.rentals.dto.MessageResponseDto;
+import com.openclassrooms.rentals.exceptions.MessageIngestionException;
 import com.openclassrooms.rentals.services.MessageService;
+import com.openclassrooms.rentals.services.UserService;
+import com.openclassrooms.rentals.services.notification.MessageStreamHub;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.tags.Tag;
@@ -22,10 +32,13 @@ import lombok.extern.slf4j.Slf4j;
  * 
  * <ul>
  *   <li>Sending a new message</li>
+ *   <li>Reading the messages sent by the authenticated user, page by page</li>
+ *   <li>Streaming the new messages about the rentals of the authenticated user</li>
  * </ul>
  *
  * <p>
- * It relies on the {@link MessageService} to handle message persistence.
+ * It relies on the {@link MessageService} to handle message persistence, and on the
+ * {@link MessageStreamHub} to push the new messages as Server-Sent Events.
  * </p>
  *
  * <p><b>Logging</b>: Uses Lombok {@code @Slf4j} for debug and error tracking.</p>
@@ -38,13 +51,21 @@ public class MessageController extends AbstractController {
 
     private final MessageService messageSrvc;
 
+    private final UserService userSrvc;
+
+    private final MessageStreamHub streamHub;
+
     /**
      * Constructor for MessageController.
      *
      * @param messageSrvc the service used to manage message-related logic
+     * @param userSrvc the service used to identify the authenticated user
+     * @param streamHub the hub pushing the new messages to the rental owners
      */
-    public MessageController(MessageService messageSrvc) {
+    public MessageController(MessageService messageSrvc, UserService userSrvc, MessageStreamHub streamHub) {
         this.messageSrvc = messageSrvc;
+        this.userSrvc = userSrvc;
+        this.streamHub = streamHub;
         log.debug("MessageController initialized.");
     }
 
@@ -59,18 +80,27 @@ public class MessageController extends AbstractController {
         description = "Create and send a new message based on the provided request body.",
         responses = {
             @ApiResponse(responseCode = "200", description = "Message successfully sent"),
-            @ApiResponse(responseCode = "400", description = "Invalid message request payload")
+            @ApiResponse(responseCode = "400", description = "Invalid message request payload"),
+            @ApiResponse(responseCode = "503", description = "Message ingestion overloaded, retry later")
         }
     )
     @PostMapping
     public ResponseEntity<MessageResponseDto> create(@RequestBody MessageRequestDto messageReq) {
         log.debug("POST /api/messages - Sending new message: {}", messageReq);
 
-        ResponseEntity<MessageResponseDto> response = responseFromOptional(
-            messageSrvc.save(messageReq)
-                .map(m -> new MessageResponseDto("Message sent successfully")),
-            HttpStatus.BAD_REQUEST
-        );
+        ResponseEntity<MessageResponseDto> response;
+        try {
+            response = responseFromOptional(
+                messageSrvc.save(messageReq)
+                    .map(m -> new MessageResponseDto("Message sent successfully")),
+                HttpStatus.BAD_REQUEST
+            );
+        } catch (MessageIngestionException e) {
+            log.warn("Message not accepted: {}", e.getMessage());
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, "1")
+                    .body(new MessageResponseDto("Message could not be sent, please retry"));
+        }
 
         if (response.getStatusCode() == HttpStatus.OK) {
             log.debug("Message sent successfully: {}", messageReq);
@@ -80,4 +110,64 @@ public class MessageController extends AbstractController {
 
         return response;
     }
+
+    /**
+     * Read the messages sent by a user, newest first.
+     *
+     * @param userId the sender identifier, which must be the authenticated user
+     * @param cursor the {@code next_cursor} of the previous page, absent for the first page
+     * @param limit the maximum number of messages of the page, between 1 and 100
+     * @return a {@link MessagePageDto} with the messages and the cursor of the next page
+     */
+    @Operation(
+        summary = "Get the messages of a user",
+        description = "Read the messages sent by the authenticated user, newest first, page by page.",
+        responses = {
+            @ApiResponse(responseCode = "200", description = "Page of messages returned"),
+            @ApiResponse(responseCode = "400", description = "Invalid cursor"),
+            @ApiResponse(responseCode = "403", description = "The user is not the authenticated user")
+        }
+    )
+    @GetMapping
+    public ResponseEntity<MessagePageDto> getByUser(@RequestParam Long userId,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") int limit) {
+        log.debug("GET /api/messages?userId={} - Reading messages", userId);
+        try {
+            return ResponseEntity.ok(messageSrvc.findByUser(userId, cursor, Math.clamp(limit, 1, 100)));
+        } catch (IllegalArgumentException e) {
+            log.error("Invalid message cursor: {}", cursor);
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
+        } catch (AccessDeniedException e) {
+            log.error("Messages of user {} denied: {}", userId, e.getMessage());
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+    }
+
+    /**
+     * Stream the messages sent about the rentals of the authenticated user, as they are saved.
+     * <p>
+     * Each message is sent as a {@code message} event holding a {@link com.openclassrooms.rentals.dto.MessageDto}.
+     * Messages sent while the stream was closed are read with {@code GET /api/rentals/{id}/messages}.
+     * </p>
+     *
+     * @return the event stream, or {@code 503 Service Unavailable} when too many streams are open
+     */
+    @Operation(
+        summary = "Stream new messages",
+        description = "Server-Sent Events stream of the messages sent about the rentals of the authenticated user.",
+        responses = {
+            @ApiResponse(responseCode = "200", description = "Event stream opened"),
+            @ApiResponse(responseCode = "503", description = "Too many streams open, retry later")
+        }
+    )
+    @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> stream() {
+        return userSrvc.getCurrentUserId()
+                .map(ownerId -> {
+                    log.debug("GET /api/messages/stream - Opening message stream for owner {}", ownerId);
+                    return responseFromOptional(streamHub.subscribe(ownerId), HttpStatus.SERVICE_UNAVAILABLE);
+                })
+                .orElse(ResponseEntity.status(HttpStatus.UNAUTHORIZED).build());
+    }
 }
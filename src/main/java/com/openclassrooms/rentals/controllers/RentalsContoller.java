@@ -1,25 +1,33 @@
 package com.openclassrooms.rentals.controllers;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
+import com.openclassrooms.rentals.dto.MessagePageDto;
 import com.openclassrooms.rentals.dto.RentalCreationDto;
 import com.openclassrooms.rentals.dto.RentalDto;
 import com.openclassrooms.rentals.dto.RentalListDto;
 import com.openclassrooms.rentals.dto.RentalResponseDto;
+import com.openclassrooms.rentals.dto.RentalStatsDto;
 import com.openclassrooms.rentals.dto.RentalUpdateDto;
 import com.openclassrooms.rentals.services.AuthenticationService;
+import com.openclassrooms.rentals.services.MessageService;
 import com.openclassrooms.rentals.services.RentalService;
 import com.openclassrooms.rentals.services.StorageService;
+import com.openclassrooms.rentals.services.stats.RentalStatsService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.AccessDeniedException;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.ModelAttribute;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestParam;
 
 /**
  * <b>RentalsController</b>
@@ -31,6 +39,8 @@ import org.springframework.web.bind.annotation.PutMapping;
  *   <li>Fetching a rental by its ID</li>
  *   <li>Creating a new rental</li>
  *   <li>Updating an existing rental</li>
+ *   <li>Reading the messages sent about a rental, for its owner</li>
+ *   <li>Reading the statistics of a rental, for its owner</li>
  * </ul>
  *
  * <p>
@@ -40,6 +50,8 @@ import org.springframework.web.bind.annotation.PutMapping;
  *   <li>{@link RentalService} - to handle rental business logic</li>
  *   <li>{@link AuthenticationService} - to ensure authenticated access</li>
  *   <li>{@link StorageService} - to handle file storage (e.g., rental pictures)</li>
+ *   <li>{@link MessageService} - to read the messages of a rental</li>
+ *   <li>{@link RentalStatsService} - to count the views of a rental and read its statistics</li>
  * </ul>
  *
  * <p><b>Logging</b>: Uses Lombok {@code @Slf4j} for debug and error logging.</p>
@@ -52,14 +64,23 @@ public class RentalsContoller extends AbstractController {
 
     private final RentalService rentalService;
 
+    private final MessageService messageSrvc;
+
+    private final RentalStatsService rentalStats;
+
     /**
      * Constructor for RentalsController.
      *
      * @param rentalService the service used to manage rental logic
      * @param storageSrvc the service used to manage file storage
+     * @param messageSrvc the service used to read the messages of a rental
+     * @param rentalStats the service counting the views of the rentals
      */
-    public RentalsContoller(RentalService rentalService, StorageService storageSrvc) {
+    public RentalsContoller(RentalService rentalService, StorageService storageSrvc, MessageService messageSrvc,
+            RentalStatsService rentalStats) {
         this.rentalService = rentalService;
+        this.messageSrvc = messageSrvc;
+        this.rentalStats = rentalStats;
         log.debug("RentalsController initialized.");
     }
 
@@ -94,11 +115,13 @@ public class RentalsContoller extends AbstractController {
     @GetMapping("/{id}")
     public ResponseEntity<RentalDto> getById(@PathVariable Long id) {
         log.debug("GET /api/rentals/{} - Retrieving rental by ID", id);
-        ResponseEntity<RentalDto> response = responseFromOptional(rentalService.findById(id));
+        ResponseEntity<RentalDto> response = responseFromOptional(rentalService.findById(id),
+                dto -> ResponseEntity.ok().eTag(eTag(dto.getVersion())).body(dto));
 
         if (response.getBody() == null) {
             log.error("Rental with ID {} not found.", id);
         } else {
+            rentalStats.recordView(id);
             log.debug("Rental with ID {} retrieved successfully.", id);
         }
 
@@ -137,23 +160,135 @@ public class RentalsContoller extends AbstractController {
 
     /**
      * Update an existing rental by its ID.
+     * <p>
+     * With an {@code If-Match} header holding the ETag of the rental (its version), the
+     * update only applies if nobody changed the rental since the client read it. The new
+     * ETag is then returned.
+     * </p>
      *
      * @param id the rental ID
      * @param rental the DTO containing updated rental information
+     * @param ifMatch the ETag read by the client, optional
      * @return a {@link RentalResponseDto} indicating the update result
      */
-    @Operation(summary = "Update a rental", description = "Update an existing rental with new details.",
+    @Operation(summary = "Update a rental", description = "Update an existing rental with new details. Send its ETag in If-Match to only update the version you read.",
         responses = {
             @ApiResponse(responseCode = "200", description = "Rental updated successfully"),
-            @ApiResponse(responseCode = "404", description = "Rental not found")
+            @ApiResponse(responseCode = "403", description = "The authenticated user does not own the rental"),
+            @ApiResponse(responseCode = "404", description = "Rental not found"),
+            @ApiResponse(responseCode = "412", description = "The rental was changed since the ETag of If-Match was read, or If-Match is a weak ETag")
     })
     @PutMapping("/{id}")
-    public ResponseEntity<RentalResponseDto> update(@PathVariable Long id, @ModelAttribute RentalUpdateDto rental) {
+    public ResponseEntity<RentalResponseDto> update(@PathVariable Long id, @ModelAttribute RentalUpdateDto rental,
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
         log.debug("PUT /api/rentals/{} - Updating rental with data: {}", id, rental);
 
-        rentalService.update(id, rental, rental.getPictureUrl());
+        Long version;
+        try {
+            version = version(ifMatch);
+        } catch (NumberFormatException e) {
+            log.error("Rental {} not updated, If-Match {} is not one of its strong ETags", id, ifMatch);
+            return ResponseEntity.status(HttpStatus.PRECONDITION_FAILED).build();
+        }
 
-        log.debug("Rental with ID {} updated successfully.", id);
-        return ResponseEntity.ok(new RentalResponseDto("Rental updated"));
+        RentalService.UpdateResult result = rentalService.update(id, rental, rental.getPictureUrl(), version);
+        return switch (result.status()) {
+            case UPDATED -> {
+                log.debug("Rental with ID {} updated successfully.", id);
+                ResponseEntity.BodyBuilder ok = ResponseEntity.ok();
+                if (result.version() != null) {
+                    ok.eTag(eTag(result.version()));
+                }
+                yield ok.body(new RentalResponseDto("Rental updated"));
+            }
+            case NOT_FOUND -> {
+                log.error("Rental with ID {} not found.", id);
+                yield ResponseEntity.notFound().build();
+            }
+            case NOT_OWNER -> {
+                log.error("Rental {} not updated, the authenticated user does not own it", id);
+                yield ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+            }
+            case VERSION_MISMATCH -> {
+                log.debug("Rental {} not updated, it changed since version {}", id, version);
+                yield ResponseEntity.status(HttpStatus.PRECONDITION_FAILED).build();
+            }
+        };
+    }
+
+    /**
+     * Read the messages sent about a rental, newest first.
+     *
+     * @param id the rental ID
+     * @param cursor the {@code next_cursor} of the previous page, absent for the first page
+     * @param limit the maximum number of messages of the page, between 1 and 100
+     * @return a {@link MessagePageDto} with the messages and the cursor of the next page
+     */
+    @Operation(summary = "Get the messages of a rental", description = "Read the messages sent about a rental, newest first, page by page. Only the owner of the rental can read them.",
+        responses = {
+            @ApiResponse(responseCode = "200", description = "Page of messages returned"),
+            @ApiResponse(responseCode = "400", description = "Invalid cursor"),
+            @ApiResponse(responseCode = "403", description = "The authenticated user does not own the rental"),
+            @ApiResponse(responseCode = "404", description = "Rental not found")
+    })
+    @GetMapping("/{id}/messages")
+    public ResponseEntity<MessagePageDto> getMessages(@PathVariable Long id,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "20") int limit) {
+        log.debug("GET /api/rentals/{}/messages - Reading messages", id);
+        try {
+            return responseFromOptional(messageSrvc.findByRental(id, cursor, Math.clamp(limit, 1, 100)));
+        } catch (IllegalArgumentException e) {
+            log.error("Invalid message cursor: {}", cursor);
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
+        } catch (AccessDeniedException e) {
+            log.error("Messages of rental {} denied: {}", id, e.getMessage());
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+    }
+
+    /**
+     * Read the statistics of a rental.
+     *
+     * @param id the rental ID
+     * @return a {@link RentalStatsDto} with the number of messages received and of detail views
+     */
+    @Operation(summary = "Get the statistics of a rental", description = "Read the number of messages received and of detail views of a rental. Only the owner of the rental can read them.",
+        responses = {
+            @ApiResponse(responseCode = "200", description = "Statistics returned"),
+            @ApiResponse(responseCode = "403", description = "The authenticated user does not own the rental"),
+            @ApiResponse(responseCode = "404", description = "Rental not found")
+    })
+    @GetMapping("/{id}/stats")
+    public ResponseEntity<RentalStatsDto> getStats(@PathVariable Long id) {
+        log.debug("GET /api/rentals/{}/stats - Reading rental statistics", id);
+        try {
+            return responseFromOptional(rentalStats.findByRental(id));
+        } catch (AccessDeniedException e) {
+            log.error("Statistics of rental {} denied: {}", id, e.getMessage());
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+    }
+
+    private static String eTag(Long version) {
+        return "\"" + version + "\"";
+    }
+
+    /**
+     * Reads the version of an {@code If-Match} header. {@code If-Match} uses the strong
+     * comparison (RFC 9110, section 13.1.1): a weak ETag never matches.
+     *
+     * @return the version of an {@code If-Match} header, {@code null} when absent or {@code *}
+     * @throws NumberFormatException when the header is not the strong ETag of a version
+     */
+    private static Long version(String ifMatch) {
+        if (ifMatch == null || ifMatch.isBlank() || ifMatch.strip().equals("*")) {
+            return null;
+        }
+        String tag = ifMatch.strip();
+        if (tag.length() < 2 || !tag.startsWith("\"") || !tag.endsWith("\"")) {
+            throw new NumberFormatException(ifMatch);
+        }
+        return Long.valueOf(tag.substring(1, tag.length() - 1));
     }
 }
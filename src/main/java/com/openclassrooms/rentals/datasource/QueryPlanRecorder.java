@@ -0,0 +1,151 @@
+package com.openclassrooms.rentals.datasource;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+/**
+ * Records the execution plan of the queries run by the current thread.
+ * <p>
+ * As a {@link BeanPostProcessor}, it wraps the {@code dataSource} bean. While
+ * {@link #record(Runnable)} runs, every prepared {@code SELECT} is first explained on the
+ * same connection, with the same parameters, before being executed. Outside of
+ * {@link #record(Runnable)} the statements go straight to the wrapped data source.
+ * </p>
+ * <p>
+ * Plans are read from MySQL ({@code EXPLAIN}, one row per table, a full scan being of type
+ * {@code ALL}) and from H2 (one plan text, a full scan being a {@code tableScan}).
+ * </p>
+ */
+public class QueryPlanRecorder implements BeanPostProcessor {
+
+    /**
+     * Plan of a statement.
+     *
+     * @param sql the explained statement
+     * @param rows the rows of the plan, as {@code column=value} lists
+     * @param fullScan whether a table is read in full
+     */
+    public record Plan(String sql, List<String> rows, boolean fullScan) {
+    }
+
+    /** A parameter bound to a statement, replayed on its {@code EXPLAIN}. */
+    private record Parameter(Method setter, Object[] args) {
+    }
+
+    private final ThreadLocal<List<Plan>> recording = new ThreadLocal<>();
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if (bean instanceof DataSource dataSource && "dataSource".equals(beanName)) {
+            return new DelegatingDataSource(dataSource) {
+                @Override
+                public Connection getConnection() throws SQLException {
+                    return explaining(super.getConnection());
+                }
+            };
+        }
+        return bean;
+    }
+
+    /**
+     * Runs an action, explaining the queries it sends.
+     *
+     * @param action the action to run
+     * @return the plans of its queries, in their order
+     */
+    public List<Plan> record(Runnable action) {
+        List<Plan> plans = new ArrayList<>();
+        recording.set(plans);
+        try {
+            action.run();
+        } finally {
+            recording.remove();
+        }
+        return plans;
+    }
+
+    private Connection explaining(Connection connection) {
+        return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { Connection.class },
+                (proxy, method, args) -> {
+                    Object result = invoke(connection, method, args);
+                    List<Plan> plans = recording.get();
+                    if (plans != null && result instanceof PreparedStatement statement
+                            && method.getName().equals("prepareStatement") && isSelect((String) args[0])) {
+                        return explaining(statement, connection, (String) args[0], plans);
+                    }
+                    return result;
+                });
+    }
+
+    private PreparedStatement explaining(PreparedStatement statement, Connection connection, String sql,
+                                         List<Plan> plans) {
+        Map<Integer, Parameter> parameters = new TreeMap<>();
+        InvocationHandler handler = (proxy, method, args) -> {
+            if (method.getName().startsWith("set") && args != null && args.length >= 2
+                    && args[0] instanceof Integer index) {
+                parameters.put(index, new Parameter(method, args));
+            } else if (method.getName().equals("executeQuery")) {
+                plans.add(explain(connection, sql, parameters.values()));
+            }
+            return invoke(statement, method, args);
+        };
+        return (PreparedStatement) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] { PreparedStatement.class }, handler);
+    }
+
+    private static Plan explain(Connection connection, String sql, Collection<Parameter> parameters)
+            throws Throwable {
+        List<String> rows = new ArrayList<>();
+        boolean fullScan = false;
+        try (PreparedStatement explain = connection.prepareStatement("EXPLAIN " + sql)) {
+            for (Parameter parameter : parameters) {
+                invoke(explain, parameter.setter(), parameter.args());
+            }
+            try (ResultSet rs = explain.executeQuery()) {
+                ResultSetMetaData meta = rs.getMetaData();
+                while (rs.next()) {
+                    StringBuilder row = new StringBuilder();
+                    for (int i = 1; i <= meta.getColumnCount(); i++) {
+                        String column = meta.getColumnLabel(i).toLowerCase(Locale.ROOT);
+                        String value = rs.getString(i);
+                        row.append(i > 1 ? ", " : "").append(column).append('=').append(value);
+                        fullScan |= column.equals("type") && "ALL".equalsIgnoreCase(value)
+                                || column.equals("plan") && value != null && value.contains(".tableScan");
+                    }
+                    rows.add(row.toString());
+                }
+            }
+        }
+        return new Plan(sql, rows, fullScan);
+    }
+
+    private static boolean isSelect(String sql) {
+        return sql.stripLeading().regionMatches(true, 0, "select", 0, 6);
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+}
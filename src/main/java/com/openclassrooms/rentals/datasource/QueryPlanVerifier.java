@@ -0,0 +1,99 @@
+package com.openclassrooms.rentals.datasource;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Limit;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.openclassrooms.rentals.repositorys.MessageRepository;
+import com.openclassrooms.rentals.repositorys.RentalRepository;
+import com.openclassrooms.rentals.repositorys.UserRepository;
+
+import jakarta.persistence.EntityManagerFactory;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Checks, once the application is started, that no repository query reads a whole table.
+ * <p>
+ * Each query of {@link RentalRepository}, {@link UserRepository} and {@link MessageRepository}
+ * is run once through the {@link QueryPlanRecorder}, with the second-level cache emptied so
+ * that it reaches the database. The startup fails with the offending plans if one of them
+ * is a full table scan, which happens when the schema misses the index the query needs.
+ * </p>
+ * <p>
+ * {@code RentalRepository.findAll}, which backs the unpaginated rental list, reads every
+ * rental by design and is not checked.
+ * </p>
+ */
+@Slf4j
+public class QueryPlanVerifier {
+
+    private static final long SAMPLE_ID = 1L;
+
+    private final QueryPlanRecorder recorder;
+    private final RentalRepository rentalRepo;
+    private final UserRepository userRepo;
+    private final MessageRepository messageRepo;
+    private final EntityManagerFactory entityManagerFactory;
+    private final TransactionTemplate readOnly;
+
+    public QueryPlanVerifier(QueryPlanRecorder recorder, RentalRepository rentalRepo, UserRepository userRepo,
+                             MessageRepository messageRepo, EntityManagerFactory entityManagerFactory,
+                             PlatformTransactionManager transactionManager) {
+        this.recorder = recorder;
+        this.rentalRepo = rentalRepo;
+        this.userRepo = userRepo;
+        this.messageRepo = messageRepo;
+        this.entityManagerFactory = entityManagerFactory;
+        this.readOnly = new TransactionTemplate(transactionManager);
+        this.readOnly.setReadOnly(true);
+    }
+
+    /**
+     * Explains every repository query.
+     *
+     * @throws IllegalStateException if a query reads a whole table
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void verify() {
+        LocalDateTime now = LocalDateTime.now();
+        Limit page = Limit.of(20);
+        Map<String, Runnable> queries = new LinkedHashMap<>();
+        queries.put("RentalRepository.findById", () -> rentalRepo.findById(SAMPLE_ID));
+        queries.put("RentalRepository.findOwnerId", () -> rentalRepo.findOwnerId(SAMPLE_ID));
+        queries.put("UserRepository.findById", () -> userRepo.findById(SAMPLE_ID));
+        queries.put("UserRepository.findByEmail", () -> userRepo.findByEmail("plan@example.com"));
+        queries.put("MessageRepository.findPageByRental", () -> messageRepo.findPageByRental(SAMPLE_ID, page));
+        queries.put("MessageRepository.findPageByRentalAfter",
+                () -> messageRepo.findPageByRentalAfter(SAMPLE_ID, now, SAMPLE_ID, page));
+        queries.put("MessageRepository.findPageByUser", () -> messageRepo.findPageByUser(SAMPLE_ID, page));
+        queries.put("MessageRepository.findPageByUserAfter",
+                () -> messageRepo.findPageByUserAfter(SAMPLE_ID, now, SAMPLE_ID, page));
+
+        List<String> fullScans = new ArrayList<>();
+        queries.forEach((name, query) -> {
+            entityManagerFactory.getCache().evictAll();
+            List<QueryPlanRecorder.Plan> plans = recorder.record(() -> readOnly.executeWithoutResult(status -> query.run()));
+            if (plans.isEmpty()) {
+                log.warn("{} sent no query to explain", name);
+            }
+            for (QueryPlanRecorder.Plan plan : plans) {
+                log.info("{}: {} -> {}", name, plan.sql(), plan.rows());
+                if (plan.fullScan()) {
+                    fullScans.add(name + ": " + plan.sql() + " -> " + plan.rows());
+                }
+            }
+        });
+        if (!fullScans.isEmpty()) {
+            throw new IllegalStateException("Repository queries reading a whole table:\n" + String.join("\n", fullScans));
+        }
+        log.info("Query plans verified, {} repository queries use an index", queries.size());
+    }
+}
@@ -0,0 +1,197 @@
+package com.openclassrooms.rentals.datasource;
+
+import java.io.Closeable;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sql.DataSource;
+
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import com.openclassrooms.rentals.models.AppUserDetails;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Connections for the read-only transactions, taken from a pool of replicas.
+ * <p>
+ * Replicas are picked in turn ({@link Selection#ROUND_ROBIN}) or by their number of
+ * connections in use ({@link Selection#LEAST_LOADED}). A replica that fails to give
+ * a connection is skipped for {@code retryAfterMs}; when no replica is available the
+ * connection comes from the primary. A user who wrote to the primary less than
+ * {@code readYourWritesMs} ago also reads from the primary, so that the replication
+ * lag never hides their own changes from them.
+ * </p>
+ * <p>
+ * Writes are seen through {@link #recordingWrites(DataSource)}, which wraps the primary.
+ * They are remembered by the node that made them only.
+ * </p>
+ */
+@Slf4j
+public class ReplicaDataSource extends AbstractDataSource implements Closeable {
+
+    /** How a replica is picked. */
+    public enum Selection { ROUND_ROBIN, LEAST_LOADED }
+
+    private static final int MAX_TRACKED_WRITERS = 100_000;
+
+    private static final class Replica {
+        private final HikariDataSource pool;
+        private final Counter served;
+        private volatile long downUntil;
+
+        private Replica(HikariDataSource pool, Counter served) {
+            this.pool = pool;
+            this.served = served;
+        }
+
+        private int activeConnections() {
+            HikariPoolMXBean bean = pool.getHikariPoolMXBean();
+            return bean == null ? 0 : bean.getActiveConnections();
+        }
+    }
+
+    private final List<Replica> replicas = new ArrayList<>();
+    private final DataSource primary;
+    private final Selection selection;
+    private final long retryAfterMs;
+    private final long readYourWritesMs;
+    private final Map<Long, Long> lastWrites = new ConcurrentHashMap<>();
+    private final AtomicInteger next = new AtomicInteger();
+    private final Counter primaryAfterWrite;
+    private final Counter primaryFallback;
+
+    /**
+     * @param pools the connection pools of the replicas, closed with this data source
+     * @param primary the primary, used when no replica can be
+     * @param selection how a replica is picked
+     * @param retryAfterMs how long a failing replica is skipped
+     * @param readYourWritesMs how long a user reads from the primary after a write
+     * @param registry the registry of the routing counters
+     */
+    public ReplicaDataSource(List<HikariDataSource> pools, DataSource primary, Selection selection,
+                             long retryAfterMs, long readYourWritesMs, MeterRegistry registry) {
+        pools.forEach(pool -> replicas.add(new Replica(pool, Counter.builder("pages.datasource.read.connections")
+                .tag("target", pool.getPoolName()).tag("reason", "replica").register(registry))));
+        this.primary = primary;
+        this.selection = selection;
+        this.retryAfterMs = retryAfterMs;
+        this.readYourWritesMs = readYourWritesMs;
+        this.primaryAfterWrite = Counter.builder("pages.datasource.read.connections")
+                .tag("target", "primary").tag("reason", "read-your-writes").register(registry);
+        this.primaryFallback = Counter.builder("pages.datasource.read.connections")
+                .tag("target", "primary").tag("reason", "no-replica").register(registry);
+    }
+
+    /**
+     * Wraps the primary so that the connections it gives to an authenticated user mark
+     * that user as a recent writer.
+     *
+     * @param primary the primary data source
+     * @return the primary, recording its users
+     */
+    public DataSource recordingWrites(DataSource primary) {
+        return new DelegatingDataSource(primary) {
+            @Override
+            public Connection getConnection() throws SQLException {
+                Long userId = currentUserId();
+                if (userId != null) {
+                    recordWrite(userId);
+                }
+                return super.getConnection();
+            }
+        };
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        Long userId = currentUserId();
+        if (userId != null && wroteRecently(userId)) {
+            primaryAfterWrite.increment();
+            return primary.getConnection();
+        }
+        long now = System.currentTimeMillis();
+        for (Replica replica : candidates()) {
+            if (replica.downUntil > now) {
+                continue;
+            }
+            try {
+                Connection connection = replica.pool.getConnection();
+                replica.served.increment();
+                return connection;
+            } catch (SQLException e) {
+                replica.downUntil = System.currentTimeMillis() + retryAfterMs;
+                log.warn("Replica {} unavailable, skipped for {} ms: {}", replica.pool.getPoolName(), retryAfterMs,
+                        e.getMessage());
+            }
+        }
+        primaryFallback.increment();
+        return primary.getConnection();
+    }
+
+    /**
+     * Not supported: the replicas and the primary are reached with their configured credentials.
+     *
+     * @throws SQLFeatureNotSupportedException always
+     */
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        throw new SQLFeatureNotSupportedException("Replica connections use the configured credentials");
+    }
+
+    @Override
+    public void close() {
+        replicas.forEach(replica -> replica.pool.close());
+    }
+
+    /**
+     * @return the replicas in the order they should be tried
+     */
+    private List<Replica> candidates() {
+        List<Replica> ordered = new ArrayList<>(replicas.size());
+        if (selection == Selection.LEAST_LOADED) {
+            ordered.addAll(replicas);
+            ordered.sort(Comparator.comparingInt(Replica::activeConnections));
+        } else {
+            int first = Math.floorMod(next.getAndIncrement(), replicas.size());
+            for (int i = 0; i < replicas.size(); i++) {
+                ordered.add(replicas.get((first + i) % replicas.size()));
+            }
+        }
+        return ordered;
+    }
+
+    private void recordWrite(Long userId) {
+        long now = System.currentTimeMillis();
+        if (lastWrites.size() >= MAX_TRACKED_WRITERS) {
+            lastWrites.values().removeIf(at -> at + readYourWritesMs < now);
+        }
+        lastWrites.put(userId, now);
+    }
+
+    private boolean wroteRecently(Long userId) {
+        Long at = lastWrites.get(userId);
+        return at != null && at + readYourWritesMs >= System.currentTimeMillis();
+    }
+
+    private static Long currentUserId() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        return authentication != null && authentication.getPrincipal() instanceof AppUserDetails user
+                ? user.getId()
+                : null;
+    }
+}
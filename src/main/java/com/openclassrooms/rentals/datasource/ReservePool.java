@@ -0,0 +1,110 @@
+package com.openclassrooms.rentals.datasource;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.core.Ordered;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Small pool serving the connections a thread opens while it already holds one.
+ * <p>
+ * The identifier generators of the entities reserve their blocks in a separate transaction,
+ * on a second connection, while the transaction of the request keeps its own. Taken from the
+ * same pool, this second connection cannot be had once every connection is held by a request
+ * waiting for the generator, itself waiting for a connection: the requests stall until the
+ * pool times out. As a {@link BeanPostProcessor}, this class wraps the {@code dataSource} bean
+ * so that such nested connections come from a reserve pool instead, which the requests never
+ * hold.
+ * </p>
+ * <p>
+ * The reserve pool copies the settings of the Hikari pool found behind the data source. It
+ * wraps the data source before the other post-processors, so that the statements of its
+ * connections are seen by them too.
+ * </p>
+ */
+@Slf4j
+public class ReservePool implements BeanPostProcessor, Ordered, DisposableBean {
+
+    private final ThreadLocal<int[]> held = ThreadLocal.withInitial(() -> new int[1]);
+    private final int size;
+    private HikariDataSource reserve;
+
+    /**
+     * @param size the maximum number of connections of the reserve pool
+     */
+    public ReservePool(int size) {
+        this.size = size;
+    }
+
+    @Override
+    public int getOrder() {
+        return Ordered.HIGHEST_PRECEDENCE;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if (!(bean instanceof DataSource dataSource) || !"dataSource".equals(beanName)) {
+            return bean;
+        }
+        HikariDataSource primary;
+        try {
+            primary = dataSource.unwrap(HikariDataSource.class);
+        } catch (SQLException e) {
+            log.warn("No Hikari pool behind the data source, nested connections are not reserved");
+            return bean;
+        }
+        reserve = new HikariDataSource();
+        primary.copyStateTo(reserve);
+        reserve.setPoolName(primary.getPoolName() + "-reserve");
+        reserve.setMaximumPoolSize(size);
+        reserve.setMinimumIdle(0);
+        return new DelegatingDataSource(dataSource) {
+            @Override
+            public Connection getConnection() throws SQLException {
+                int[] count = held.get();
+                Connection connection = count[0] > 0 ? reserve.getConnection() : super.getConnection();
+                count[0]++;
+                return released(connection, count);
+            }
+        };
+    }
+
+    @Override
+    public void destroy() {
+        if (reserve != null) {
+            reserve.close();
+        }
+    }
+
+    private Connection released(Connection connection, int[] count) {
+        boolean[] closed = new boolean[1];
+        return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { Connection.class },
+                (proxy, method, args) -> {
+                    if (method.getName().equals("close") && !closed[0]) {
+                        closed[0] = true;
+                        count[0]--;
+                    }
+                    return invoke(connection, method, args);
+                });
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+}
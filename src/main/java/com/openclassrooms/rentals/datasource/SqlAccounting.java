@@ -0,0 +1,283 @@
+package com.openclassrooms.rentals.datasource;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+import javax.sql.DataSource;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import com.openclassrooms.rentals.profiling.SqlStatementEvent;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Accounting of the SQL statements, per statement and per HTTP request.
+ * <p>
+ * The data source given to {@link #wrap(DataSource)} times every statement it executes, and
+ * counts the rows read or written. Each statement is recorded by the
+ * {@code pages.sql.statements} timer, tagged by its kind ({@code select}, {@code insert}...),
+ * and is logged when it takes more than {@code slowQueryMs}. Only the SQL text is logged:
+ * the bound parameters never are, and the literals of unprepared statements are replaced
+ * by {@code ?}.
+ * </p>
+ * <p>
+ * Between {@link #begin()} and {@link #end(String)}, called by the request filter, the
+ * statements of the thread are also added up. The totals are published per handler by
+ * {@code pages.sql.request.statements}, {@code pages.sql.request.rows} and
+ * {@code pages.sql.request.time}. A request running more than {@code statementBudget}
+ * statements is logged with its most repeated statement, the usual sign of an N+1, and
+ * counted by {@code pages.sql.request.overBudget}.
+ * </p>
+ * <p>
+ * Each statement is also a {@link SqlStatementEvent} of the Flight Recorder recordings that
+ * enable it.
+ * </p>
+ */
+@Slf4j
+public class SqlAccounting {
+
+    private static final Set<String> EXECUTE = Set.of("execute", "executeQuery", "executeUpdate",
+            "executeLargeUpdate", "executeBatch", "executeLargeBatch");
+
+    private static final Set<String> KINDS = Set.of("select", "insert", "update", "delete");
+
+    private static final Pattern STRING_LITERAL = Pattern.compile("'(?:[^']|'')*'");
+
+    private static final Pattern NUMBER_LITERAL = Pattern.compile("\\b\\d+(?:\\.\\d+)?\\b");
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private static final int MAX_LOGGED_SQL = 2000;
+
+    /** Statements of a request in progress. */
+    private static final class RequestStats {
+        private int statements;
+        private long rows;
+        private long nanos;
+        private final Map<String, Integer> bySql = new HashMap<>();
+    }
+
+    private final ThreadLocal<RequestStats> current = new ThreadLocal<>();
+    private final Map<String, Timer> statementTimers = new ConcurrentHashMap<>();
+    private final MeterRegistry registry;
+    private final long slowQueryNanos;
+    private final int statementBudget;
+
+    /**
+     * @param registry the registry of the SQL meters
+     * @param slowQueryMs the duration above which a statement is logged
+     * @param statementBudget the number of statements above which a request is flagged
+     */
+    public SqlAccounting(MeterRegistry registry, long slowQueryMs, int statementBudget) {
+        this.registry = registry;
+        this.slowQueryNanos = Duration.ofMillis(slowQueryMs).toNanos();
+        this.statementBudget = statementBudget;
+    }
+
+    /**
+     * Wraps a data source so that its statements are accounted.
+     *
+     * @param dataSource the data source
+     * @return the accounted data source
+     */
+    public DataSource wrap(DataSource dataSource) {
+        return new DelegatingDataSource(dataSource) {
+            @Override
+            public Connection getConnection() throws SQLException {
+                return accounted(super.getConnection());
+            }
+
+            @Override
+            public Connection getConnection(String username, String password) throws SQLException {
+                return accounted(super.getConnection(username, password));
+            }
+        };
+    }
+
+    /**
+     * Starts adding up the statements of the current thread, for an HTTP request.
+     */
+    public void begin() {
+        current.set(new RequestStats());
+    }
+
+    /**
+     * Publishes the totals of the request started by {@link #begin()} on the current thread.
+     *
+     * @param handler the controller method that handled the request, {@code none} if there is none
+     */
+    public void end(String handler) {
+        RequestStats stats = current.get();
+        current.remove();
+        if (stats == null) {
+            return;
+        }
+        DistributionSummary.builder("pages.sql.request.statements").tag("handler", handler)
+                .publishPercentileHistogram().register(registry).record(stats.statements);
+        DistributionSummary.builder("pages.sql.request.rows").tag("handler", handler)
+                .publishPercentileHistogram().register(registry).record(stats.rows);
+        Timer.builder("pages.sql.request.time").tag("handler", handler)
+                .publishPercentileHistogram().register(registry).record(Duration.ofNanos(stats.nanos));
+        if (stats.statements > statementBudget) {
+            registry.counter("pages.sql.request.overBudget", "handler", handler).increment();
+            Map.Entry<String, Integer> repeated = stats.bySql.entrySet().stream()
+                    .max(Comparator.comparingInt(Map.Entry::getValue))
+                    .orElseThrow();
+            log.warn("{} ran {} SQL statements (budget {}), the most repeated one {} times: {}", handler, stats.statements,
+                    statementBudget, repeated.getValue(), redact(repeated.getKey()));
+        }
+    }
+
+    /**
+     * @return the statements run so far by the request of the current thread, 0 outside of a request
+     */
+    public int statements() {
+        RequestStats stats = current.get();
+        return stats == null ? 0 : stats.statements;
+    }
+
+    /**
+     * @return the time of the statements run so far by the request of the current thread, in
+     *         nanoseconds, 0 outside of a request
+     */
+    public long nanos() {
+        RequestStats stats = current.get();
+        return stats == null ? 0 : stats.nanos;
+    }
+
+    private Connection accounted(Connection connection) {
+        return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { Connection.class },
+                (proxy, method, args) -> {
+                    Object result = invoke(connection, method, args);
+                    if (result instanceof Statement statement) {
+                        String sql = args != null && args.length > 0 && args[0] instanceof String text ? text : null;
+                        return accounted(statement, method.getReturnType(), sql);
+                    }
+                    return result;
+                });
+    }
+
+    private Object accounted(Statement statement, Class<?> type, String preparedSql) {
+        Class<?> api = type == CallableStatement.class ? CallableStatement.class
+                : type == PreparedStatement.class ? PreparedStatement.class
+                : Statement.class;
+        return Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { api }, (proxy, method, args) -> {
+            if (!EXECUTE.contains(method.getName())) {
+                Object result = invoke(statement, method, args);
+                return result instanceof ResultSet rs && method.getName().equals("getResultSet") ? counted(rs) : result;
+            }
+            String sql = preparedSql != null ? preparedSql
+                    : args != null && args.length > 0 && args[0] instanceof String text ? text
+                    : "batch";
+            SqlStatementEvent event = new SqlStatementEvent();
+            event.begin();
+            long start = System.nanoTime();
+            Object result = invoke(statement, method, args);
+            event.end();
+            long rows = switch (result) {
+                case Integer count -> Math.max(count, 0);
+                case Long count -> Math.max(count, 0);
+                case int[] counts -> sum(counts);
+                case long[] counts -> sum(counts);
+                case null, default -> 0;
+            };
+            executed(sql, System.nanoTime() - start, rows);
+            if (event.shouldCommit()) {
+                event.kind = kind(sql);
+                event.rows = rows;
+                event.commit();
+            }
+            return result instanceof ResultSet rs ? counted(rs) : result;
+        });
+    }
+
+    private ResultSet counted(ResultSet resultSet) {
+        RequestStats stats = current.get();
+        if (stats == null) {
+            return resultSet;
+        }
+        return (ResultSet) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] { ResultSet.class },
+                (proxy, method, args) -> {
+                    Object result = invoke(resultSet, method, args);
+                    if (Boolean.TRUE.equals(result) && method.getName().equals("next")) {
+                        stats.rows++;
+                    }
+                    return result;
+                });
+    }
+
+    private void executed(String sql, long nanos, long rows) {
+        statementTimers.computeIfAbsent(kind(sql), kind -> Timer.builder("pages.sql.statements")
+                .tag("kind", kind).publishPercentileHistogram().register(registry))
+                .record(Duration.ofNanos(nanos));
+        if (nanos > slowQueryNanos) {
+            log.warn("Slow SQL statement, {} ms: {}", nanos / 1_000_000, redact(sql));
+        }
+        RequestStats stats = current.get();
+        if (stats != null) {
+            stats.statements++;
+            stats.rows += rows;
+            stats.nanos += nanos;
+            stats.bySql.merge(sql, 1, Integer::sum);
+        }
+    }
+
+    private static String kind(String sql) {
+        String stripped = sql.stripLeading();
+        int end = 0;
+        while (end < stripped.length() && Character.isLetter(stripped.charAt(end))) {
+            end++;
+        }
+        String keyword = stripped.substring(0, end).toLowerCase(Locale.ROOT);
+        return KINDS.contains(keyword) ? keyword : "other";
+    }
+
+    private static String redact(String sql) {
+        String redacted = NUMBER_LITERAL.matcher(STRING_LITERAL.matcher(sql).replaceAll("?")).replaceAll("?");
+        redacted = WHITESPACE.matcher(redacted).replaceAll(" ").strip();
+        return redacted.length() > MAX_LOGGED_SQL ? redacted.substring(0, MAX_LOGGED_SQL) + "..." : redacted;
+    }
+
+    private static long sum(int[] counts) {
+        long sum = 0;
+        for (int count : counts) {
+            sum += Math.max(count, 0);
+        }
+        return sum;
+    }
+
+    private static long sum(long[] counts) {
+        long sum = 0;
+        for (long count : counts) {
+            sum += Math.max(count, 0);
+        }
+        return sum;
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package com.openclassrooms.rentals.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * DTO for a row rejected by a bulk import.
+ */
+@Schema(description = "A row rejected by a bulk import")
+@Data
+@AllArgsConstructor
+public class ImportErrorDto {
+    @Schema(description = "Line of the row in the imported file, starting at 1")
+    private long line;
+    @Schema(description = "Reason of the rejection", example = "price: price is required")
+    private String error;
+}
@@ -0,0 +1,27 @@
+package com.openclassrooms.rentals.dto;
+
+import java.util.List;
+
+import io.swagger.v3.oas.annotations.media.ArraySchema;
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * DTO for the outcome of a bulk import.
+ * <p>
+ * Only the first rejected rows are detailed in {@code errors}; {@code rejected}
+ * counts all of them.
+ * </p>
+ */
+@Schema(description = "Outcome of a bulk import")
+@Data
+@AllArgsConstructor
+public class ImportReportDto {
+    @Schema(description = "Number of rows imported")
+    private long imported;
+    @Schema(description = "Number of rows rejected")
+    private long rejected;
+    @ArraySchema(schema = @Schema(implementation = ImportErrorDto.class))
+    private List<ImportErrorDto> errors;
+}
@@ -0,0 +1,41 @@
+package com.openclassrooms.rentals.dto;
+
+import java.time.LocalDateTime;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * DTO for a message read.
+ * <p>
+ * Built directly by the message queries, so that reading messages never loads
+ * their user or rental.
+ * </p>
+ */
+@Schema(description = "A message sent about a rental")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class MessageDto {
+
+    @Schema(description = "Unique identifier for the message")
+    private Long id;
+    @Schema(description = "Rental identifier")
+    @JsonProperty("rental_id")
+    private Long rentalId;
+    @Schema(description = "User identifier of the message sender")
+    @JsonProperty("user_id")
+    private Long userId;
+    @Schema(description = "User's message")
+    private String message;
+    @Schema(description = "Timestamp date of creation")
+    @JsonProperty("created_at")
+    private LocalDateTime createdAt;
+    @Schema(description = "Timestamp date of last update")
+    @JsonProperty("updated_at")
+    private LocalDateTime updatedAt;
+}
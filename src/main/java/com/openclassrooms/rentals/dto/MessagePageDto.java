@@ -0,0 +1,28 @@
+package com.openclassrooms.rentals.dto;
+
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import io.swagger.v3.oas.annotations.media.ArraySchema;
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * DTO for a page of messages, newest first.
+ * <p>
+ * The next page is requested by passing {@code next_cursor} back as the
+ * {@code cursor} parameter.
+ * </p>
+ */
+@Schema(description = "A page of messages, newest first")
+@Data
+@AllArgsConstructor
+public class MessagePageDto {
+    @ArraySchema(schema = @Schema(implementation = MessageDto.class))
+    private List<MessageDto> messages;
+    @Schema(description = "Cursor of the next page, absent on the last page")
+    @JsonProperty("next_cursor")
+    private String nextCursor;
+}
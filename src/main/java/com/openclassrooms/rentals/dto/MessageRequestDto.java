@@ -4,11 +4,15 @@ package com.openclassrooms.rentals.dto;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
 import io.swagger.v3.oas.annotations.media.Schema;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
 import lombok.Data;
 /**
  * DTO for a message request.
  * <p>
- * Represents the expected request body for message creation.
+ * Represents the expected request body for message creation, and a row of a
+ * message bulk import.
  * </p>
  */
 @Schema(description = "Request body for message creation")
@@ -16,11 +20,15 @@ import lombok.Data;
 public class MessageRequestDto {
 
     @Schema(description = "User's message")
+    @NotBlank(message = "message is required")
+    @Size(max = 2000, message = "message cannot exceed 2000 characters")
     private String message;
     @Schema(description = "User identifier of the message sender")
     @JsonProperty("user_id")
+    @NotNull(message = "user_id is required")
     private Long userId;
     @Schema(description = "Rental identifier")
     @JsonProperty("rental_id")
+    @NotNull(message = "rental_id is required")
     private Long rentalId;
 }
@@ -40,5 +40,7 @@ public class RentalDto {
     @Schema(description = "Timestamp date of last update")
     @JsonProperty("updated_at")
     private LocalDateTime updatedAt;
+    @Schema(description = "Version of the rental, also its ETag, to send back in If-Match when updating it")
+    private Long version;
 
 }
\ No newline at end of file
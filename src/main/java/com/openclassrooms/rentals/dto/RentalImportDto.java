@@ -0,0 +1,39 @@
+package com.openclassrooms.rentals.dto;
+
+import java.math.BigDecimal;
+
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.PositiveOrZero;
+import jakarta.validation.constraints.Size;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * DTO for one row of a rental bulk import.
+ * <p>
+ * Represents an NDJSON line or a CSV record with the columns {@code name},
+ * {@code surface}, {@code price} and {@code description}. The owner of the
+ * imported rentals is the authenticated user.
+ * </p>
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class RentalImportDto {
+
+    @NotBlank(message = "name is required")
+    @Size(max = 255, message = "name cannot exceed 255 characters")
+    private String name;
+
+    @PositiveOrZero(message = "surface cannot be negative")
+    private BigDecimal surface;
+
+    @NotNull(message = "price is required")
+    @PositiveOrZero(message = "price cannot be negative")
+    private BigDecimal price;
+
+    @Size(max = 2000, message = "description cannot exceed 2000 characters")
+    private String description;
+}
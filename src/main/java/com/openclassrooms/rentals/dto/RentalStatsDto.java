@@ -0,0 +1,26 @@
+package com.openclassrooms.rentals.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * DTO for the statistics of a rental.
+ * <p>
+ * Represents the response body returned to the owner of a rental for its dashboard.
+ * </p>
+ */
+@Schema(description = "Statistics of a rental")
+@Data
+@AllArgsConstructor
+public class RentalStatsDto {
+    @Schema(description = "Rental identifier")
+    @JsonProperty("rental_id")
+    private Long rentalId;
+    @Schema(description = "Number of messages received about the rental")
+    private long messages;
+    @Schema(description = "Number of times the rental details were viewed")
+    private long views;
+}
@@ -0,0 +1,17 @@
+package com.openclassrooms.rentals.exceptions;
+
+/**
+ * Thrown when a message cannot be accepted by the write-behind ingestion, either
+ * because its queue is full or because a synchronous write did not complete.
+ * The client is expected to retry later.
+ */
+public class MessageIngestionException extends RuntimeException {
+
+    public MessageIngestionException(String message) {
+        super(message);
+    }
+
+    public MessageIngestionException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
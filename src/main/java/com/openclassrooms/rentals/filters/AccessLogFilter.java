@@ -0,0 +1,95 @@
+package com.openclassrooms.rentals.filters;
+
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.slf4j.event.Level;
+import org.slf4j.spi.LoggingEventBuilder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Logs the HTTP requests to the {@code pages.access} logger, as JSON (see {@code logback-spring.xml}).
+ * <p>
+ * Failed requests, answered with a {@code 4xx} or {@code 5xx} status or ended by an exception,
+ * and requests slower than {@code slowMs} are always logged, at {@code WARN}. The other
+ * requests are only logged for a random {@code sampleRate} share of them, at {@code INFO}, with
+ * this rate in {@code sampleRate} to scale their counts back. The request is not logged, nor
+ * anything allocated for it, when it is not sampled.
+ * </p>
+ * <p>
+ * Each entry holds the method, the path without its query string, the status, the duration
+ * and the controller method that handled the request. The query string is left out, as it
+ * may hold credentials; so are the user and the client address.
+ * </p>
+ */
+@Slf4j(topic = "pages.access")
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 1)
+@ConditionalOnProperty(name = "pages.accessLog.enabled", havingValue = "true", matchIfMissing = true)
+public class AccessLogFilter extends OncePerRequestFilter {
+
+    private final double sampleRate;
+    private final long slowNanos;
+
+    /**
+     * @param sampleRate the share of the successful requests that are logged, from 0 to 1
+     * @param slowMs the duration above which a request is always logged
+     */
+    public AccessLogFilter(@Value("${pages.accessLog.sampleRate:0.01}") double sampleRate,
+                           @Value("${pages.accessLog.slowMs:1000}") long slowMs) {
+        this.sampleRate = sampleRate;
+        this.slowNanos = slowMs * 1_000_000;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        long start = System.nanoTime();
+        Throwable failure = null;
+        try {
+            filterChain.doFilter(request, response);
+        } catch (IOException | ServletException | RuntimeException | Error e) {
+            failure = e;
+            throw e;
+        } finally {
+            long nanos = System.nanoTime() - start;
+            int status = failure != null ? HttpServletResponse.SC_INTERNAL_SERVER_ERROR : response.getStatus();
+            if (status >= 400 || nanos > slowNanos) {
+                log(Level.WARN, request, status, nanos, failure, 1);
+            } else if (sampleRate > 0 && ThreadLocalRandom.current().nextDouble() < sampleRate) {
+                log(Level.INFO, request, status, nanos, null, sampleRate);
+            }
+        }
+    }
+
+    private static void log(Level level, HttpServletRequest request, int status, long nanos, Throwable failure,
+                            double sampleRate) {
+        if (!log.isEnabledForLevel(level)) {
+            return;
+        }
+        double durationMs = nanos / 1_000_000.0;
+        LoggingEventBuilder entry = log.atLevel(level)
+                .addKeyValue("method", request.getMethod())
+                .addKeyValue("path", request.getRequestURI())
+                .addKeyValue("status", status)
+                .addKeyValue("durationMs", durationMs)
+                .addKeyValue("handler", SqlAccountingFilter.handler(request))
+                .addKeyValue("sampleRate", sampleRate);
+        if (failure != null) {
+            entry.addKeyValue("exception", failure.getClass().getName());
+        }
+        entry.log("{} {} {} {} ms", request.getMethod(), request.getRequestURI(), status,
+                        Math.round(durationMs));
+    }
+}
@@ -0,0 +1,361 @@
+package com.openclassrooms.rentals.filters;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.ContentCachingResponseWrapper;
+
+import com.openclassrooms.rentals.services.idempotency.IdempotencyStore;
+import com.openclassrooms.rentals.services.idempotency.StoredResponse;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.Part;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Makes the creation endpoints safe to retry with an {@code Idempotency-Key} header.
+ * <p>
+ * The first response to a key is stored in the {@link IdempotencyStore}, and a retry
+ * with the same key gets that response back, with an {@code Idempotent-Replayed}
+ * header, without the request being processed again. A retry arriving while the
+ * first request is still processed waits for its response. Keys are scoped to the
+ * authenticated user and to the endpoint. Server errors are not stored, so that the
+ * request can be retried: the duplicates waiting for a failed request then compete
+ * again for the key, and only one of them is processed.
+ * </p>
+ * <p>
+ * The response is stored with the SHA-256 of the request body, or of its parts for a
+ * multipart request; a request reusing a key with another body gets a
+ * {@code 422 Unprocessable Entity} instead of the response to the first one.
+ * A body that is neither multipart nor a form is held in memory to be hashed and
+ * replayed, so it is limited to {@code pages.idempotency.maxBodyBytes}, like the
+ * stored responses: a larger one gets a {@code 413 Payload Too Large}.
+ * </p>
+ * <p>
+ * The filter runs after Spring Security, and only on the {@code POST} endpoints
+ * listed in {@code pages.idempotency.paths}; requests without the header are left
+ * untouched.
+ * </p>
+ */
+@Component
+@Slf4j
+public class IdempotencyFilter extends OncePerRequestFilter {
+
+    public static final String IDEMPOTENCY_KEY = "Idempotency-Key";
+
+    public static final String IDEMPOTENT_REPLAYED = "Idempotent-Replayed";
+
+    private static final int MAX_KEY_LENGTH = 255;
+
+    private final IdempotencyStore store;
+    private final Map<String, CompletableFuture<Optional<StoredResponse>>> inFlight = new ConcurrentHashMap<>();
+    private final List<String> paths;
+    private final Duration ttl;
+    private final long waitMs;
+    private final int maxBodyBytes;
+    private final Counter replayed;
+
+    public IdempotencyFilter(IdempotencyStore store, MeterRegistry registry,
+                             @Value("${pages.idempotency.paths:/api/messages,/api/rentals}") List<String> paths,
+                             @Value("${pages.idempotency.ttlMs:86400000}") long ttlMs,
+                             @Value("${pages.idempotency.waitMs:10000}") long waitMs,
+                             @Value("${pages.idempotency.maxBodyBytes:65536}") int maxBodyBytes) {
+        this.store = store;
+        this.paths = paths;
+        this.ttl = Duration.ofMillis(ttlMs);
+        this.waitMs = waitMs;
+        this.maxBodyBytes = maxBodyBytes;
+        this.replayed = registry.counter("pages.idempotency.replayed");
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return request.getHeader(IDEMPOTENCY_KEY) == null
+                || !HttpMethod.POST.matches(request.getMethod())
+                || !paths.contains(request.getRequestURI());
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        String idempotencyKey = request.getHeader(IDEMPOTENCY_KEY);
+        if (idempotencyKey.isBlank() || idempotencyKey.length() > MAX_KEY_LENGTH) {
+            response.sendError(HttpStatus.BAD_REQUEST.value(), "Invalid " + IDEMPOTENCY_KEY + " header");
+            return;
+        }
+        String key = scope(request, idempotencyKey);
+        Optional<Fingerprinted> hashed = fingerprint(request);
+        if (hashed.isEmpty()) {
+            response.sendError(HttpStatus.PAYLOAD_TOO_LARGE.value(),
+                    "The body of a request with an " + IDEMPOTENCY_KEY + " is limited to " + maxBodyBytes + " bytes");
+            return;
+        }
+        Fingerprinted fingerprinted = hashed.get();
+        String fingerprint = fingerprinted.fingerprint();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(waitMs);
+
+        while (true) {
+            Optional<StoredResponse> stored = store.find(key);
+            if (stored.isPresent()) {
+                replay(stored.get(), fingerprint, response);
+                return;
+            }
+
+            CompletableFuture<Optional<StoredResponse>> execution = new CompletableFuture<>();
+            CompletableFuture<Optional<StoredResponse>> running = inFlight.putIfAbsent(key, execution);
+            if (running == null) {
+                execute(key, fingerprinted, response, filterChain, execution);
+                return;
+            }
+            Optional<StoredResponse> first = await(running, deadline);
+            if (first == null) {
+                response.sendError(HttpStatus.CONFLICT.value(), "A request with the same " + IDEMPOTENCY_KEY + " is in progress");
+                return;
+            }
+            if (first.isPresent()) {
+                replay(first.get(), fingerprint, response);
+                return;
+            }
+            // The first request failed and may be retried: the duplicates compete again for the key.
+        }
+    }
+
+    /**
+     * Processes the request that holds the key, unless the response was stored between
+     * the lookup and the registration of the request, then wakes the duplicates up.
+     */
+    private void execute(String key, Fingerprinted fingerprinted, HttpServletResponse response, FilterChain filterChain,
+                         CompletableFuture<Optional<StoredResponse>> execution) throws ServletException, IOException {
+        Optional<StoredResponse> result = Optional.empty();
+        try {
+            result = store.find(key);
+            if (result.isPresent()) {
+                replay(result.get(), fingerprinted.fingerprint(), response);
+                return;
+            }
+            ContentCachingResponseWrapper wrapper = new ContentCachingResponseWrapper(response);
+            filterChain.doFilter(fingerprinted.request(), wrapper);
+            result = capture(wrapper, fingerprinted.fingerprint());
+            result.ifPresent(r -> store.save(key, r, ttl));
+            wrapper.copyBodyToResponse();
+        } finally {
+            inFlight.remove(key, execution);
+            execution.complete(result);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${pages.idempotency.purgeIntervalMs:600000}")
+    public void purgeExpired() {
+        store.purgeExpired();
+    }
+
+    private String scope(HttpServletRequest request, String idempotencyKey) {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        String user = authentication == null ? "anonymous" : authentication.getName();
+        return user + ' ' + request.getRequestURI() + ' ' + idempotencyKey;
+    }
+
+    private Optional<StoredResponse> capture(ContentCachingResponseWrapper wrapper, String fingerprint) {
+        if (wrapper.getStatus() >= 500 || wrapper.getContentSize() > maxBodyBytes) {
+            return Optional.empty();
+        }
+        return Optional.of(new StoredResponse(wrapper.getStatus(), wrapper.getContentType(),
+                wrapper.getContentAsByteArray(), fingerprint));
+    }
+
+    /**
+     * @return the response of the first request, or {@code null} if it did not complete in time
+     */
+    private Optional<StoredResponse> await(CompletableFuture<Optional<StoredResponse>> running, long deadline)
+            throws ServletException {
+        try {
+            return running.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ServletException("Interrupted while waiting for a duplicate request", e);
+        } catch (ExecutionException e) {
+            return Optional.empty();
+        }
+    }
+
+    private void replay(StoredResponse stored, String fingerprint, HttpServletResponse response) throws IOException {
+        if (!fingerprint.equals(stored.requestHash())) {
+            response.sendError(HttpStatus.UNPROCESSABLE_ENTITY.value(),
+                    "The " + IDEMPOTENCY_KEY + " was already used with another request");
+            return;
+        }
+        replayed.increment();
+        log.debug("Replaying the response to an idempotent request, status {}", stored.status());
+        response.setStatus(stored.status());
+        if (stored.contentType() != null) {
+            response.setContentType(stored.contentType());
+        }
+        response.setHeader(IDEMPOTENT_REPLAYED, "true");
+        response.setContentLength(stored.body().length);
+        response.getOutputStream().write(stored.body());
+    }
+
+    /**
+     * A request with the SHA-256 of its content.
+     *
+     * @param request the request to process, whose body can still be read
+     * @param fingerprint the hexadecimal SHA-256 of the body, of the parts of a multipart
+     *        request, or of the parameters of a form
+     */
+    private record Fingerprinted(HttpServletRequest request, String fingerprint) {
+    }
+
+    /**
+     * Hashes the content of a request. The parts of a multipart request and the parameters
+     * of a form are read by the container, and stay available; any other body is read
+     * here, and replayed to the rest of the chain.
+     *
+     * @return the hashed request, or {@code Optional.empty()} if its body is over {@code maxBodyBytes}
+     */
+    private Optional<Fingerprinted> fingerprint(HttpServletRequest request) throws IOException, ServletException {
+        MessageDigest digest = sha256();
+        String contentType = request.getContentType();
+        if (contentType != null && contentType.toLowerCase().startsWith("multipart/")) {
+            for (Part part : request.getParts()) {
+                update(digest, part.getName());
+                update(digest, part.getSubmittedFileName());
+                update(digest, part.getContentType());
+                try (InputStream content = new DigestInputStream(part.getInputStream(), digest)) {
+                    content.transferTo(OutputStream.nullOutputStream());
+                }
+            }
+            return Optional.of(new Fingerprinted(request, HexFormat.of().formatHex(digest.digest())));
+        }
+        if (contentType != null && MediaType.APPLICATION_FORM_URLENCODED.isCompatibleWith(MediaType.parseMediaType(contentType))) {
+            for (Map.Entry<String, String[]> parameter : request.getParameterMap().entrySet()) {
+                update(digest, parameter.getKey());
+                for (String value : parameter.getValue()) {
+                    update(digest, value);
+                }
+            }
+            return Optional.of(new Fingerprinted(request, HexFormat.of().formatHex(digest.digest())));
+        }
+        if (request.getContentLengthLong() > maxBodyBytes) {
+            return Optional.empty();
+        }
+        // Bounded read: a chunked body does not declare its length
+        byte[] body = request.getInputStream().readNBytes(maxBodyBytes + 1);
+        if (body.length > maxBodyBytes) {
+            return Optional.empty();
+        }
+        return Optional.of(new Fingerprinted(new CachedBodyRequest(request, body),
+                HexFormat.of().formatHex(digest.digest(body))));
+    }
+
+    /** Hashes a value with its length, so that consecutive values cannot be confused. */
+    private static void update(MessageDigest digest, String value) {
+        byte[] bytes = value == null ? new byte[0] : value.getBytes(StandardCharsets.UTF_8);
+        digest.update(Integer.toString(value == null ? -1 : bytes.length).getBytes(StandardCharsets.US_ASCII));
+        digest.update((byte) ':');
+        digest.update(bytes);
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * Request whose body, already read to be hashed, is served again from memory.
+     */
+    private static final class CachedBodyRequest extends HttpServletRequestWrapper {
+
+        private final byte[] body;
+
+        CachedBodyRequest(HttpServletRequest request, byte[] body) {
+            super(request);
+            this.body = body;
+        }
+
+        @Override
+        public ServletInputStream getInputStream() {
+            ByteArrayInputStream content = new ByteArrayInputStream(body);
+            return new ServletInputStream() {
+                @Override
+                public int read() {
+                    return content.read();
+                }
+
+                @Override
+                public int read(byte[] buffer, int offset, int length) {
+                    return content.read(buffer, offset, length);
+                }
+
+                @Override
+                public boolean isFinished() {
+                    return content.available() == 0;
+                }
+
+                @Override
+                public boolean isReady() {
+                    return true;
+                }
+
+                @Override
+                public void setReadListener(ReadListener listener) {
+                    try {
+                        if (!isFinished()) {
+                            listener.onDataAvailable();
+                        }
+                        listener.onAllDataRead();
+                    } catch (IOException e) {
+                        listener.onError(e);
+                    }
+                }
+            };
+        }
+
+        @Override
+        public BufferedReader getReader() {
+            String encoding = getCharacterEncoding();
+            Charset charset = encoding == null ? StandardCharsets.UTF_8 : Charset.forName(encoding);
+            return new BufferedReader(new InputStreamReader(new ByteArrayInputStream(body), charset));
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.openclassrooms.rentals.filters;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.List;
+import java.util.Set;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import com.openclassrooms.rentals.datasource.SqlAccounting;
+import com.openclassrooms.rentals.profiling.ServerTiming;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpServletResponseWrapper;
+
+/**
+ * Adds a {@code Server-Timing} header to the responses, with the time spent in each phase of
+ * the request, see {@link ServerTiming}: {@code auth}, {@code db} with its number of
+ * statements, {@code storage}, {@code json} and {@code total}.
+ * <p>
+ * A header must be sent before the body, so it is added when the body starts, and holds the
+ * time spent until then. For the phases of a JSON response to be complete, the body is
+ * serialized into a buffer first, then written, for the timed requests only. Responses without
+ * a body get the header at the end of the request.
+ * </p>
+ * <p>
+ * Only created with {@code pages.serverTiming.enabled=true}: otherwise the timing costs a
+ * thread local read per phase. With {@code pages.serverTiming.users}, only these users get the
+ * header. The filter runs inside the {@link SqlAccountingFilter}, for the statements to be counted.
+ * </p>
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 2)
+@ConditionalOnProperty(name = "pages.serverTiming.enabled", havingValue = "true")
+public class ServerTimingFilter extends OncePerRequestFilter {
+
+    private static final String HEADER = "Server-Timing";
+
+    private final ObjectProvider<SqlAccounting> accounting;
+    private final Set<String> users;
+
+    public ServerTimingFilter(ObjectProvider<SqlAccounting> accounting,
+                              @Value("${pages.serverTiming.users:}") List<String> users) {
+        this.accounting = accounting;
+        this.users = Set.copyOf(users);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        TimedResponse timed = new TimedResponse(response, ServerTiming.begin(users));
+        try {
+            filterChain.doFilter(request, timed);
+            if (!response.isCommitted()) {
+                timed.addHeader();
+            }
+        } finally {
+            ServerTiming.end();
+        }
+    }
+
+    /**
+     * Response adding the header before its body.
+     */
+    private final class TimedResponse extends HttpServletResponseWrapper {
+
+        private final ServerTiming timing;
+        private boolean added;
+
+        TimedResponse(HttpServletResponse response, ServerTiming timing) {
+            super(response);
+            this.timing = timing;
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            addHeader();
+            return super.getOutputStream();
+        }
+
+        @Override
+        public PrintWriter getWriter() throws IOException {
+            addHeader();
+            return super.getWriter();
+        }
+
+        @Override
+        public void flushBuffer() throws IOException {
+            addHeader();
+            super.flushBuffer();
+        }
+
+        void addHeader() {
+            if (added || !timing.allowed()) {
+                return;
+            }
+            added = true;
+            SqlAccounting sql = accounting.getIfAvailable();
+            setHeader(HEADER, sql == null ? timing.header(0, 0) : timing.header(sql.statements(), sql.nanos()));
+        }
+    }
+}
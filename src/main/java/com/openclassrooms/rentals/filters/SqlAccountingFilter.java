@@ -0,0 +1,55 @@
+package com.openclassrooms.rentals.filters;
+
+import java.io.IOException;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerMapping;
+
+import com.openclassrooms.rentals.datasource.SqlAccounting;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * Adds up the SQL statements of each HTTP request, see {@link SqlAccounting}.
+ * <p>
+ * The filter runs first, so that the statements of the authentication are counted too.
+ * The totals are tagged by the controller method that handled the request, as
+ * {@code RentalsContoller.getRentals}, or {@code none} when no controller did.
+ * </p>
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+@ConditionalOnProperty(name = "pages.sql.accounting.enabled", havingValue = "true", matchIfMissing = true)
+public class SqlAccountingFilter extends OncePerRequestFilter {
+
+    private final SqlAccounting accounting;
+
+    public SqlAccountingFilter(SqlAccounting accounting) {
+        this.accounting = accounting;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        accounting.begin();
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            accounting.end(handler(request));
+        }
+    }
+
+    static String handler(HttpServletRequest request) {
+        return request.getAttribute(HandlerMapping.BEST_MATCHING_HANDLER_ATTRIBUTE) instanceof HandlerMethod method
+                ? method.getBeanType().getSimpleName() + "." + method.getMethod().getName()
+                : "none";
+    }
+}
@@ -8,9 +8,11 @@ import jakarta.persistence.FetchType;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
 import jakarta.persistence.JoinColumn;
 import jakarta.persistence.ManyToOne;
 import jakarta.persistence.Table;
+import jakarta.persistence.TableGenerator;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.Size;
 import lombok.Data;
@@ -23,6 +25,14 @@ import lombok.NoArgsConstructor;
  * contains the message's information including the message, the creation 
  * and update dates, and the user and rental defined as foreign keys in the database.
  * </p>
+ * <p>
+ * The composite indexes serve the keyset-paginated reads of the messages of a
+ * rental and of a user, newest first.
+ * </p>
+ * <p>
+ * Identifiers are allocated by blocks of 50 from the {@code id_generators} table
+ * (see {@code db/migration/V2__id_generators.sql}), so that Hibernate can batch the inserts.
+ * </p>
  * Lombock is used to generate Getters/Setters and the empty constructor needed
  * by JPA.
  * 
@@ -30,12 +40,16 @@ import lombok.NoArgsConstructor;
 @Entity
 @Data
 @NoArgsConstructor
-@Table(name = "messages")
+@Table(name = "messages", indexes = {
+    @Index(name = "idx_messages_rental_created", columnList = "rental_id, created_at, id"),
+    @Index(name = "idx_messages_user_created", columnList = "user_id, created_at, id")
+})
 public class MessageEntity {
 
     @Id
     @Column(name = "id")
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "messages_id")
+    @TableGenerator(name = "messages_id", table = "id_generators", pkColumnValue = "messages", allocationSize = 50)
     private Long id;
 
     @ManyToOne(fetch = FetchType.LAZY)
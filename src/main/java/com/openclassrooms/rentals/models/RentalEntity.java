@@ -1,5 +1,11 @@
 package com.openclassrooms.rentals.models;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+
+import com.openclassrooms.rentals.Configurations.HibernateCacheConfig;
+
+import jakarta.persistence.Cacheable;
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
 import jakarta.persistence.FetchType;
@@ -9,6 +15,8 @@ import jakarta.persistence.Id;
 import jakarta.persistence.JoinColumn;
 import jakarta.persistence.ManyToOne;
 import jakarta.persistence.Table;
+import jakarta.persistence.TableGenerator;
+import jakarta.persistence.Version;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import java.math.BigDecimal;
@@ -22,18 +30,32 @@ import java.time.LocalDateTime;
  * the creation and update dates, the name and a picture, and also the user 
  * who is the owner as foreign keys in the database.
  * </p>
+ * <p>
+ * Identifiers are allocated by blocks of 50 from the {@code id_generators} table
+ * (see {@code db/migration/V2__id_generators.sql}), so that Hibernate can batch the inserts.
+ * </p>
+ * <p>
+ * Rentals are kept in the second-level cache, see {@link HibernateCacheConfig}.
+ * </p>
+ * <p>
+ * The version is incremented by every update, and is the ETag of the rental: an
+ * update sent with {@code If-Match} only applies to the version the client read.
+ * </p>
  * 
  * Lombock is used to generate Getters/Setters and the empty constructor needed
  * by JPA.
  * 
  */
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = HibernateCacheConfig.RENTALS)
 @Table(name = "rentals")
 @Data
 @NoArgsConstructor
 public class RentalEntity {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.TABLE, generator = "rentals_id")
+    @TableGenerator(name = "rentals_id", table = "id_generators", pkColumnValue = "rentals", allocationSize = 50)
     @Column(name = "id")
     private Long id;
 
@@ -61,4 +83,8 @@ public class RentalEntity {
 
     @Column(name = "updated_at", columnDefinition = "TIMESTAMP")
     private LocalDateTime updatedAt;
+
+    @Version
+    @Column(name = "version", nullable = false)
+    private Long version;
 }
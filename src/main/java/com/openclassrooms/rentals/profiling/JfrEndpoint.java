@@ -0,0 +1,249 @@
+package com.openclassrooms.rentals.profiling;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import org.springframework.boot.actuate.endpoint.InvalidEndpointRequestException;
+import org.springframework.boot.actuate.endpoint.annotation.DeleteOperation;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.boot.actuate.endpoint.web.WebEndpointResponse;
+import org.springframework.boot.actuate.endpoint.web.annotation.WebEndpoint;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.lang.Nullable;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import jdk.jfr.RecordingState;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Actuator endpoint starting Java Flight Recorder recordings on demand, at {@code /actuator/jfr}.
+ * <ul>
+ *   <li>{@code POST} with {@code {"settings": "profile", "durationSeconds": 60}} starts a
+ *       recording with the {@code default} (about 1% overhead) or {@code profile} (about 2%,
+ *       with allocation and method sampling) settings of the JDK, and the events of this
+ *       package; the duration is capped by {@code maxDuration}</li>
+ *   <li>{@code GET} lists the recordings of the endpoint</li>
+ *   <li>{@code GET /{id}} downloads the {@code .jfr} file of a recording, as recorded so far
+ *       if it is still running</li>
+ *   <li>{@code DELETE /{id}} stops a recording and frees its data</li>
+ * </ul>
+ * Only one recording runs at a time, and the oldest stopped recordings are freed beyond
+ * {@code maxRecordings}. Each download dumps the recording into a file of its own in
+ * {@code directory}, deleted once it is sent.
+ */
+@Slf4j
+@WebEndpoint(id = "jfr")
+public class JfrEndpoint {
+
+    private static final Set<String> SETTINGS = Set.of("default", "profile");
+
+    private static final List<Class<? extends jdk.jfr.Event>> EVENTS = List.of(
+            JwtVerificationEvent.class, SqlStatementEvent.class, StorageIoEvent.class);
+
+    /** Recordings of the endpoint, by id. */
+    private final Map<Long, Recording> recordings = new ConcurrentSkipListMap<>();
+    private final Path directory;
+    private final Duration maxDuration;
+    private final int maxRecordings;
+
+    /**
+     * @param directory the directory of the dumped recordings
+     * @param maxDuration the maximum duration of a recording
+     * @param maxRecordings the number of recordings kept
+     */
+    public JfrEndpoint(Path directory, Duration maxDuration, int maxRecordings) {
+        this.directory = directory;
+        this.maxDuration = maxDuration;
+        this.maxRecordings = maxRecordings;
+    }
+
+    /**
+     * Description of a recording.
+     *
+     * @param id the id of the recording, to download it
+     * @param name the name of the recording
+     * @param state {@code RUNNING}, {@code STOPPED}...
+     * @param startTime the start of the recording, {@code null} before it starts
+     * @param durationSeconds the planned duration of the recording
+     */
+    public record RecordingDescriptor(long id, String name, RecordingState state, Instant startTime,
+                                      long durationSeconds) {
+
+        static RecordingDescriptor of(Recording recording) {
+            return new RecordingDescriptor(recording.getId(), recording.getName(), recording.getState(),
+                    recording.getStartTime(), recording.getDuration().toSeconds());
+        }
+    }
+
+    /**
+     * @return the recordings of the endpoint
+     */
+    @ReadOperation
+    public List<RecordingDescriptor> recordings() {
+        return recordings.values().stream().map(RecordingDescriptor::of).toList();
+    }
+
+    /**
+     * Starts a recording.
+     *
+     * @param settings {@code default} or {@code profile}, {@code default} if not given
+     * @param durationSeconds the duration of the recording, {@code maxDuration} if not given
+     * @return the started recording
+     */
+    @WriteOperation
+    public synchronized RecordingDescriptor start(@Nullable String settings, @Nullable Long durationSeconds) {
+        String name = settings == null ? "default" : settings;
+        if (!SETTINGS.contains(name)) {
+            throw new InvalidEndpointRequestException("Unknown settings: " + name, "settings must be one of " + SETTINGS);
+        }
+        if (durationSeconds != null && durationSeconds <= 0) {
+            throw new InvalidEndpointRequestException("Invalid duration: " + durationSeconds,
+                    "durationSeconds must be positive");
+        }
+        if (recordings.values().stream().anyMatch(recording -> recording.getState() == RecordingState.RUNNING)) {
+            throw new InvalidEndpointRequestException("A recording is already running",
+                    "A recording is already running");
+        }
+        Duration duration = durationSeconds == null || durationSeconds > maxDuration.toSeconds()
+                ? maxDuration
+                : Duration.ofSeconds(durationSeconds);
+
+        Recording recording;
+        try {
+            recording = new Recording(Configuration.getConfiguration(name));
+        } catch (IOException | ParseException e) {
+            throw new IllegalStateException("JFR settings " + name + " cannot be read", e);
+        }
+        recording.setName("pages-" + name + "-" + recording.getId());
+        recording.setDuration(duration);
+        recording.setToDisk(true);
+        EVENTS.forEach(event -> recording.enable(event).withoutThreshold());
+        recording.start();
+        recordings.put(recording.getId(), recording);
+        log.info("JFR recording {} started with the {} settings for {}", recording.getName(), name, duration);
+        evict();
+        return RecordingDescriptor.of(recording);
+    }
+
+    /**
+     * Dumps a recording into a new file of {@code directory}, so that concurrent downloads
+     * never share one. The file is deleted when the response has read it.
+     *
+     * @param id the id of the recording
+     * @return the {@code .jfr} file, or {@code 404} if there is no such recording
+     */
+    @ReadOperation(produces = "application/octet-stream")
+    public WebEndpointResponse<Resource> download(@Selector long id) {
+        Recording recording = recordings.get(id);
+        if (recording == null) {
+            return new WebEndpointResponse<>(WebEndpointResponse.STATUS_NOT_FOUND);
+        }
+        Path file;
+        try {
+            Files.createDirectories(directory);
+            file = Files.createTempFile(directory, recording.getName() + "-", ".jfr");
+        } catch (IOException e) {
+            throw new UncheckedIOException("JFR recording " + recording.getName() + " cannot be dumped", e);
+        }
+        boolean dumped = false;
+        try {
+            recording.dump(file);
+            dumped = true;
+        } catch (IOException e) {
+            throw new UncheckedIOException("JFR recording " + recording.getName() + " cannot be dumped", e);
+        } finally {
+            if (!dumped) {
+                delete(file);
+            }
+        }
+        return new WebEndpointResponse<>(new FileSystemResource(file) {
+            @Override
+            public InputStream getInputStream() throws IOException {
+                return new FilterInputStream(super.getInputStream()) {
+                    @Override
+                    public void close() throws IOException {
+                        try {
+                            super.close();
+                        } finally {
+                            delete(file);
+                        }
+                    }
+                };
+            }
+        });
+    }
+
+    /**
+     * Stops a recording, frees its data and deletes the files of its unfinished downloads.
+     *
+     * @param id the id of the recording
+     * @return {@code 204}, or {@code 404} if there is no such recording
+     */
+    @DeleteOperation
+    public WebEndpointResponse<Void> delete(@Selector long id) {
+        Recording recording = recordings.remove(id);
+        if (recording == null) {
+            return new WebEndpointResponse<>(WebEndpointResponse.STATUS_NOT_FOUND);
+        }
+        close(recording);
+        return new WebEndpointResponse<>(WebEndpointResponse.STATUS_NO_CONTENT);
+    }
+
+    /**
+     * Closes the recordings of the endpoint, when the application stops.
+     */
+    public void closeAll() {
+        recordings.values().forEach(this::close);
+        recordings.clear();
+    }
+
+    /**
+     * Frees the oldest stopped recordings beyond {@code maxRecordings}.
+     */
+    private void evict() {
+        List<Recording> stopped = recordings.values().stream()
+                .filter(recording -> recording.getState() != RecordingState.RUNNING)
+                .toList();
+        int excess = recordings.size() - maxRecordings;
+        for (int i = 0; i < excess && i < stopped.size(); i++) {
+            recordings.remove(stopped.get(i).getId());
+            close(stopped.get(i));
+        }
+    }
+
+    private void close(Recording recording) {
+        recording.close();
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, recording.getName() + "-*.jfr")) {
+            files.forEach(JfrEndpoint::delete);
+        } catch (IOException e) {
+            log.warn("JFR recording files {} cannot be listed: {}", recording.getName(), e.getMessage());
+        }
+    }
+
+    private static void delete(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.warn("JFR recording file {} cannot be deleted: {}", file, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.openclassrooms.rentals.profiling;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingStream;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Continuous watch of the allocation rate and of the GC pauses, through a Flight Recorder stream.
+ * <p>
+ * The stream only records the throttled allocation samples ({@code jdk.ObjectAllocationSample})
+ * and the garbage collections ({@code jdk.GarbageCollection}), which cost well under 1% of CPU.
+ * Over windows of at least a second, closed by the flushes of the stream, the weights of the
+ * samples give the bytes allocated, published as {@code pages.jfr.allocation.rate} in bytes
+ * per second, and the longest pause of the collections as {@code pages.jfr.gc.pause}. A window
+ * above {@code allocationRateThreshold} or {@code gcPauseThreshold} is counted by
+ * {@code pages.jfr.alerts}, tagged by its kind, and logged when the alert starts.
+ * </p>
+ */
+@Slf4j
+public class JfrMonitor implements AutoCloseable {
+
+    private static final long WINDOW_NANOS = Duration.ofSeconds(1).toNanos();
+
+    private final RecordingStream stream = new RecordingStream();
+    private final long allocationRateThreshold;
+    private final Duration gcPauseThreshold;
+    private final Counter allocationAlerts;
+    private final Counter gcPauseAlerts;
+
+    /** Bytes allocated and longest pause of the current window, updated by the stream thread only. */
+    private long allocated;
+    private Duration longestPause = Duration.ZERO;
+    private long windowStart = System.nanoTime();
+    private boolean allocationAlert;
+
+    /** Values of the last window, read by the gauges. */
+    private final AtomicLong allocationRate = new AtomicLong();
+    private final AtomicLong gcPauseNanos = new AtomicLong();
+
+    /**
+     * @param registry the registry of the meters
+     * @param allocationRateThreshold the allocation rate, in bytes per second, above which an alert is raised
+     * @param gcPauseThreshold the GC pause above which an alert is raised
+     * @param allocationSampleRate the allocation samples per second, e.g. {@code 150/s}
+     */
+    public JfrMonitor(MeterRegistry registry, long allocationRateThreshold, Duration gcPauseThreshold,
+                      String allocationSampleRate) {
+        this.allocationRateThreshold = allocationRateThreshold;
+        this.gcPauseThreshold = gcPauseThreshold;
+        this.allocationAlerts = registry.counter("pages.jfr.alerts", "kind", "allocation");
+        this.gcPauseAlerts = registry.counter("pages.jfr.alerts", "kind", "gcPause");
+        Gauge.builder("pages.jfr.allocation.rate", allocationRate, AtomicLong::get)
+                .baseUnit("bytes").description("Bytes allocated per second, sampled by JFR").register(registry);
+        Gauge.builder("pages.jfr.gc.pause", gcPauseNanos, nanos -> nanos.get() / 1e9)
+                .baseUnit("seconds").description("Longest GC pause of the last second").register(registry);
+
+        stream.enable("jdk.ObjectAllocationSample").with("throttle", allocationSampleRate);
+        stream.enable("jdk.GarbageCollection");
+        stream.setMaxAge(Duration.ofSeconds(10));
+        stream.onEvent("jdk.ObjectAllocationSample", this::onAllocation);
+        stream.onEvent("jdk.GarbageCollection", this::onGarbageCollection);
+        stream.onFlush(this::onFlush);
+    }
+
+    /**
+     * Starts the stream, in a thread of its own.
+     */
+    public void start() {
+        stream.startAsync();
+        log.info("JFR monitor started: allocation rate threshold {} bytes/s, GC pause threshold {} ms",
+                allocationRateThreshold, gcPauseThreshold.toMillis());
+    }
+
+    @Override
+    public void close() {
+        stream.close();
+    }
+
+    private void onAllocation(RecordedEvent event) {
+        allocated += event.getLong("weight");
+    }
+
+    private void onGarbageCollection(RecordedEvent event) {
+        Duration pause = event.getDuration("longestPause");
+        if (pause.compareTo(longestPause) > 0) {
+            longestPause = pause;
+        }
+        if (pause.compareTo(gcPauseThreshold) > 0) {
+            gcPauseAlerts.increment();
+            log.warn("GC pause of {} ms above {} ms: {} ({})", pause.toMillis(), gcPauseThreshold.toMillis(),
+                    event.getString("name"), event.getString("cause"));
+        }
+    }
+
+    private void onFlush() {
+        long now = System.nanoTime();
+        long elapsed = now - windowStart;
+        if (elapsed < WINDOW_NANOS) {
+            return;
+        }
+        long rate = (long) (allocated * 1e9 / elapsed);
+        allocationRate.set(rate);
+        gcPauseNanos.set(longestPause.toNanos());
+        boolean above = rate > allocationRateThreshold;
+        // Logged once when the alert starts; every window above the threshold is counted.
+        if (above) {
+            allocationAlerts.increment();
+            if (!allocationAlert) {
+                log.warn("Allocation rate of {} MB/s above {} MB/s", rate >> 20, allocationRateThreshold >> 20);
+            }
+        }
+        allocationAlert = above;
+        allocated = 0;
+        longestPause = Duration.ZERO;
+        windowStart = now;
+    }
+}
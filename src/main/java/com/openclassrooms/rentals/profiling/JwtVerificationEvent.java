@@ -0,0 +1,26 @@
+package com.openclassrooms.rentals.profiling;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event of the verification of the JWT of a request, loading of its user included.
+ * Disabled unless a recording of the {@code jfr} endpoint enables it.
+ */
+@Name("pages.JwtVerification")
+@Label("JWT Verification")
+@Category({ "Pages", "Security" })
+@Description("Decoding and validation of the JWT of a request, with the loading of its user")
+@Enabled(false)
+@StackTrace(false)
+public class JwtVerificationEvent extends Event {
+
+    /** {@code valid}, {@code invalid}, {@code failed} if the token cannot be decoded, or {@code skipped}. */
+    @Label("Outcome")
+    public String outcome;
+}
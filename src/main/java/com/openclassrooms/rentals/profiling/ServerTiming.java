@@ -0,0 +1,147 @@
+package com.openclassrooms.rentals.profiling;
+
+import java.util.Locale;
+import java.util.Set;
+
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+/**
+ * Wall time of the phases of the HTTP request of the current thread, for the
+ * {@code Server-Timing} header of {@link com.openclassrooms.rentals.filters.ServerTimingFilter}.
+ * <p>
+ * The code of a phase calls {@link #start()} and {@link #stop(Phase, long)} around its work:
+ * outside of a timed request, {@link #start()} returns {@code 0} after reading a thread
+ * local, and {@link #stop(Phase, long)} does nothing. The time of a phase is added up over
+ * the request. The SQL statements are timed by
+ * {@link com.openclassrooms.rentals.datasource.SqlAccounting} instead, so the phases overlap:
+ * the statements of the authentication are part of {@code auth} and of {@code db}.
+ * </p>
+ */
+public final class ServerTiming {
+
+    /** Phases of a request, named as in the header. */
+    public enum Phase {
+        /** Decoding and validation of the JWT, with the loading of its user. */
+        AUTH("auth"),
+        /** Staging, promotion and reads of the pictures. */
+        STORAGE("storage"),
+        /** Writing of the JSON bodies. */
+        SERIALIZATION("json");
+
+        private final String metric;
+
+        Phase(String metric) {
+            this.metric = metric;
+        }
+    }
+
+    private static final ThreadLocal<ServerTiming> CURRENT = new ThreadLocal<>();
+
+    private final long start = System.nanoTime();
+    private final long[] nanos = new long[Phase.values().length];
+    private final Set<String> users;
+    private Boolean allowed;
+
+    private ServerTiming(Set<String> users) {
+        this.users = users;
+    }
+
+    /**
+     * Starts timing the request of the current thread.
+     *
+     * @param users the emails of the users who get the header, every caller if empty
+     * @return the timing of the request
+     */
+    public static ServerTiming begin(Set<String> users) {
+        ServerTiming timing = new ServerTiming(users);
+        CURRENT.set(timing);
+        return timing;
+    }
+
+    /**
+     * Stops timing the request of the current thread.
+     */
+    public static void end() {
+        CURRENT.remove();
+    }
+
+    /**
+     * @return the current time, or {@code 0} if the request of the current thread is not timed
+     */
+    public static long start() {
+        return CURRENT.get() == null ? 0 : System.nanoTime();
+    }
+
+    /**
+     * Adds the time elapsed since {@code start} to a phase of the request of the current thread.
+     *
+     * @param phase the phase
+     * @param start the result of {@link #start()}
+     */
+    public static void stop(Phase phase, long start) {
+        if (start == 0) {
+            return;
+        }
+        ServerTiming timing = CURRENT.get();
+        if (timing != null) {
+            timing.nanos[phase.ordinal()] += System.nanoTime() - start;
+            if (phase == Phase.AUTH) {
+                // Decided while the authentication is in the security context, which is cleared
+                // before the end of the request.
+                timing.allowed();
+            }
+        }
+    }
+
+    /**
+     * @return the timing of the request of the current thread if its caller gets the header,
+     *         {@code null} otherwise
+     */
+    public static ServerTiming current() {
+        ServerTiming timing = CURRENT.get();
+        return timing != null && timing.allowed() ? timing : null;
+    }
+
+    /**
+     * Tells whether the caller gets the header. The answer is kept for the rest of the request:
+     * it is given at the end of the authentication, or at the first call for the requests
+     * without authentication.
+     *
+     * @return {@code true} if every caller gets the header, or if the caller is one of the users
+     */
+    public boolean allowed() {
+        if (allowed == null) {
+            Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+            allowed = users.isEmpty() || authentication != null && users.contains(authentication.getName());
+        }
+        return allowed;
+    }
+
+    /**
+     * @param statements the SQL statements of the request so far
+     * @param dbNanos the time of these statements
+     * @return the value of the {@code Server-Timing} header, the durations in milliseconds
+     */
+    public String header(int statements, long dbNanos) {
+        StringBuilder header = new StringBuilder(128);
+        for (Phase phase : Phase.values()) {
+            if (nanos[phase.ordinal()] > 0) {
+                metric(header, phase.metric, nanos[phase.ordinal()]);
+            }
+        }
+        if (statements > 0) {
+            metric(header, "db", dbNanos);
+            header.append(";desc=\"").append(statements).append(statements == 1 ? " statement\"" : " statements\"");
+        }
+        metric(header, "total", System.nanoTime() - start);
+        return header.toString();
+    }
+
+    private static void metric(StringBuilder header, String name, long nanos) {
+        if (!header.isEmpty()) {
+            header.append(", ");
+        }
+        header.append(name).append(";dur=").append(String.format(Locale.ROOT, "%.2f", nanos / 1_000_000.0));
+    }
+}
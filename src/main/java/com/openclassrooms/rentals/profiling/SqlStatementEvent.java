@@ -0,0 +1,31 @@
+package com.openclassrooms.rentals.profiling;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event of the execution of a SQL statement, recorded by
+ * {@link com.openclassrooms.rentals.datasource.SqlAccounting}. Its stack trace gives the code
+ * that ran the statement. Disabled unless a recording of the {@code jfr} endpoint enables it.
+ */
+@Name("pages.SqlStatement")
+@Label("SQL Statement")
+@Category({ "Pages", "Database" })
+@Description("Execution of a SQL statement, without its text nor its parameters")
+@Enabled(false)
+@StackTrace(true)
+public class SqlStatementEvent extends Event {
+
+    /** {@code select}, {@code insert}, {@code update}, {@code delete} or {@code other}. */
+    @Label("Kind")
+    public String kind;
+
+    /** Rows written by the statement; the rows read are not known when it returns. */
+    @Label("Rows Written")
+    public long rows;
+}
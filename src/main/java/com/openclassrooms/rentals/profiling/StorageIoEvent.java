@@ -0,0 +1,39 @@
+package com.openclassrooms.rentals.profiling;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Flight Recorder event of a read or a write of a rental picture by the
+ * {@link com.openclassrooms.rentals.services.StorageService}. Disabled unless a recording of
+ * the {@code jfr} endpoint enables it.
+ */
+@Name("pages.StorageIo")
+@Label("Storage I/O")
+@Category({ "Pages", "Storage" })
+@Description("Staging, promotion or read of a rental picture")
+@Enabled(false)
+@StackTrace(false)
+public class StorageIoEvent extends Event {
+
+    /** {@code stage}, {@code promote}, {@code load} or {@code loadRange}. */
+    @Label("Operation")
+    public String operation;
+
+    /**
+     * {@code cache}, {@code store}, {@code missing} or {@code error} for the reads,
+     * {@code staging} or {@code store} for the writes.
+     */
+    @Label("Source")
+    public String source;
+
+    @Label("Bytes")
+    @DataAmount
+    public long bytes;
+}
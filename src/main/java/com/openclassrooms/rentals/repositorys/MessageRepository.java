@@ -1,21 +1,56 @@
 package com.openclassrooms.rentals.repositorys;
 
+import java.time.LocalDateTime;
+import java.util.List;
+
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import com.openclassrooms.rentals.dto.MessageDto;
 import com.openclassrooms.rentals.models.MessageEntity;
 
 
 /**
- * Repository interface for managing {@link MessageEntity} persistence.  
- * <p>  
- * Extends {@link JpaRepository} to provide standard CRUD operations  
- * and database interactions for message entities.  
- * </p>  
- *  
- * @see JpaRepository  
+ * Repository interface for managing {@link MessageEntity} persistence.
+ * <p>
+ * Extends {@link JpaRepository} to provide standard CRUD operations
+ * and database interactions for message entities, and {@link MessageRepositoryCustom}
+ * for the batched inserts of the write-behind ingestion.
+ * </p>
+ * <p>
+ * Messages are read newest first with keyset pagination: a page starts after the
+ * {@code (createdAt, id)} of the last message of the previous one, which the
+ * {@code (rental_id, created_at, id)} and {@code (user_id, created_at, id)} indexes
+ * serve directly. The reads are projected to {@link MessageDto} and only use the
+ * foreign key columns, so the user and the rental are never joined.
+ * </p>
+ *
+ * @see JpaRepository
  */
 @Repository
-public interface MessageRepository extends JpaRepository<MessageEntity, Long> { 
+public interface MessageRepository extends JpaRepository<MessageEntity, Long>, MessageRepositoryCustom {
+
+    String PROJECTION = "select new com.openclassrooms.rentals.dto.MessageDto("
+            + "m.id, m.rental.id, m.user.id, m.message, m.createdAt, m.updatedAt) from MessageEntity m ";
+
+    String NEWEST_FIRST = " order by m.createdAt desc, m.id desc";
+
+    String AFTER_CURSOR = " and (m.createdAt < :createdAt or (m.createdAt = :createdAt and m.id < :id))";
+
+    @Query(PROJECTION + "where m.rental.id = :rentalId" + NEWEST_FIRST)
+    List<MessageDto> findPageByRental(@Param("rentalId") Long rentalId, Limit limit);
+
+    @Query(PROJECTION + "where m.rental.id = :rentalId" + AFTER_CURSOR + NEWEST_FIRST)
+    List<MessageDto> findPageByRentalAfter(@Param("rentalId") Long rentalId,
+            @Param("createdAt") LocalDateTime createdAt, @Param("id") Long id, Limit limit);
+
+    @Query(PROJECTION + "where m.user.id = :userId" + NEWEST_FIRST)
+    List<MessageDto> findPageByUser(@Param("userId") Long userId, Limit limit);
 
+    @Query(PROJECTION + "where m.user.id = :userId" + AFTER_CURSOR + NEWEST_FIRST)
+    List<MessageDto> findPageByUserAfter(@Param("userId") Long userId,
+            @Param("createdAt") LocalDateTime createdAt, @Param("id") Long id, Limit limit);
 }
@@ -0,0 +1,22 @@
+package com.openclassrooms.rentals.repositorys;
+
+import java.util.List;
+
+import com.openclassrooms.rentals.models.MessageEntity;
+
+/**
+ * Bulk operations on messages, not covered by {@link org.springframework.data.jpa.repository.JpaRepository}.
+ */
+public interface MessageRepositoryCustom {
+
+    /**
+     * Inserts messages with JDBC batches of {@code hibernate.jdbc.batch_size}, in a
+     * single transaction.
+     * <p>
+     * The given entities get their identifier, then are detached.
+     * </p>
+     *
+     * @param messages the messages to insert, with their user and rental set
+     */
+    void insertBatch(List<MessageEntity> messages);
+}
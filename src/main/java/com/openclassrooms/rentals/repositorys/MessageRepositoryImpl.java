@@ -0,0 +1,28 @@
+package com.openclassrooms.rentals.repositorys;
+
+import java.util.List;
+
+import org.springframework.transaction.annotation.Transactional;
+
+import com.openclassrooms.rentals.models.MessageEntity;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+
+/**
+ * JPA implementation of {@link MessageRepositoryCustom}, picked up by Spring Data
+ * through its {@code Impl} suffix.
+ */
+public class MessageRepositoryImpl implements MessageRepositoryCustom {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    @Transactional
+    public void insertBatch(List<MessageEntity> messages) {
+        messages.forEach(entityManager::persist);
+        entityManager.flush();
+        entityManager.clear();
+    }
+}
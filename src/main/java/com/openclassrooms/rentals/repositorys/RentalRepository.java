@@ -3,6 +3,8 @@ package com.openclassrooms.rentals.repositorys;
 import java.util.Optional;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import com.openclassrooms.rentals.models.RentalEntity;
@@ -11,14 +13,18 @@ import com.openclassrooms.rentals.models.RentalEntity;
  * Repository interface for managing {@link RentalEntity} persistence.  
  * <p>  
  * Extends {@link JpaRepository} to provide standard CRUD operations  
- * and database interactions for message entities.  
+ * and database interactions for message entities, and {@link RentalRepositoryCustom}  
+ * for the batch inserts of the bulk imports.  
  * </p>  
  *  
  * @see JpaRepository  
  */
 @Repository
-public interface RentalRepository extends JpaRepository<RentalEntity, Long> {
+public interface RentalRepository extends JpaRepository<RentalEntity, Long>, RentalRepositoryCustom {
 
     Optional<RentalEntity> findById(long id);
 
+    @Query("select r.owner.id from RentalEntity r where r.id = :id")
+    Optional<Long> findOwnerId(@Param("id") Long id);
+
 }
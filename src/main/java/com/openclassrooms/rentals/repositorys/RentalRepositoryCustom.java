@@ -0,0 +1,51 @@
+package com.openclassrooms.rentals.repositorys;
+
+import java.util.List;
+import java.util.Optional;
+
+import com.openclassrooms.rentals.models.RentalEntity;
+
+/**
+ * Bulk and conditional operations on rentals, not covered by
+ * {@link org.springframework.data.jpa.repository.JpaRepository}.
+ */
+public interface RentalRepositoryCustom {
+
+    /**
+     * Inserts rentals with JDBC batches of {@code hibernate.jdbc.batch_size}, in a
+     * single transaction.
+     * <p>
+     * The given entities get their identifier, then are detached.
+     * </p>
+     *
+     * @param rentals the rentals to insert, with their owner set
+     */
+    void insertBatch(List<RentalEntity> rentals);
+
+    /**
+     * Updates a rental with a single {@code UPDATE}, only if it is owned by the given
+     * user and, when a version is given, still has this version. The version is
+     * incremented, and the rental is evicted from the second-level cache.
+     * <p>
+     * The name, surface, price, description and update date of {@code changes} are
+     * written; its picture only when it is not {@code null}.
+     * </p>
+     *
+     * @param changes the new state of the rental, with its identifier
+     * @param ownerId the user who must own the rental
+     * @param version the version the rental must have, or {@code null} for any
+     * @return the number of updated rows, 0 or 1
+     */
+    int updateIfMatch(RentalEntity changes, Long ownerId, Long version);
+
+    /**
+     * Reads the picture of a rental and locks its row until the end of the current
+     * transaction, so that a concurrent update replacing the picture reads the
+     * picture written by this one.
+     *
+     * @param id the rental identifier
+     * @return the picture URL, or {@code Optional.empty()} for a rental without picture
+     *         or a missing rental
+     */
+    Optional<String> findPictureForUpdate(Long id);
+}
@@ -0,0 +1,102 @@
+package com.openclassrooms.rentals.repositorys;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.List;
+import java.util.Optional;
+
+import org.hibernate.Cache;
+import org.hibernate.CacheMode;
+import org.hibernate.Session;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.openclassrooms.rentals.models.RentalEntity;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+
+/**
+ * JPA implementation of {@link RentalRepositoryCustom}, picked up by Spring Data
+ * through its {@code Impl} suffix.
+ */
+public class RentalRepositoryImpl implements RentalRepositoryCustom {
+
+    private static final String UPDATE = "UPDATE rentals SET name = ?, surface = ?, price = ?, description = ?, "
+            + "picture = COALESCE(?, picture), updated_at = ?, version = version + 1 WHERE id = ? AND owner_id = ?";
+    private static final String SELECT_PICTURE_FOR_UPDATE = "SELECT picture FROM rentals WHERE id = ? FOR UPDATE";
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    @Transactional
+    public void insertBatch(List<RentalEntity> rentals) {
+        // Bulk inserts would only evict the entries in use from the second-level cache.
+        entityManager.unwrap(Session.class).setCacheMode(CacheMode.IGNORE);
+        rentals.forEach(entityManager::persist);
+        entityManager.flush();
+        entityManager.clear();
+    }
+
+    @Override
+    @Transactional
+    public int updateIfMatch(RentalEntity changes, Long ownerId, Long version) {
+        Session session = entityManager.unwrap(Session.class);
+        // Sent as plain JDBC: a JPQL or native update would invalidate the whole rentals region.
+        int updated = session.doReturningWork(connection -> {
+            try (PreparedStatement update = connection.prepareStatement(
+                    version == null ? UPDATE : UPDATE + " AND version = ?")) {
+                update.setString(1, changes.getName());
+                update.setObject(2, changes.getSurface(), Types.DECIMAL);
+                update.setObject(3, changes.getPrice(), Types.DECIMAL);
+                update.setString(4, changes.getDescription());
+                update.setString(5, changes.getPicture());
+                update.setTimestamp(6, Timestamp.valueOf(changes.getUpdatedAt()));
+                update.setLong(7, changes.getId());
+                update.setLong(8, ownerId);
+                if (version != null) {
+                    update.setLong(9, version);
+                }
+                return update.executeUpdate();
+            }
+        });
+        if (updated > 0) {
+            evict(session, changes.getId());
+        }
+        return updated;
+    }
+
+    @Override
+    @Transactional
+    public Optional<String> findPictureForUpdate(Long id) {
+        return entityManager.unwrap(Session.class).doReturningWork(connection -> {
+            try (PreparedStatement select = connection.prepareStatement(SELECT_PICTURE_FOR_UPDATE)) {
+                select.setLong(1, id);
+                try (ResultSet rs = select.executeQuery()) {
+                    return rs.next() ? Optional.ofNullable(rs.getString(1)) : Optional.empty();
+                }
+            }
+        });
+    }
+
+    /**
+     * Evicts a rental from the second-level cache now, and again once the transaction is
+     * over, so that a read made in between does not keep the previous state cached.
+     */
+    private static void evict(Session session, Long id) {
+        Cache cache = session.getSessionFactory().getCache();
+        cache.evictEntityData(RentalEntity.class, id);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    cache.evictEntityData(RentalEntity.class, id);
+                }
+            });
+        }
+    }
+}
@@ -1,14 +1,18 @@
 package com.openclassrooms.rentals.repositorys;
 
-import java.util.Optional;
-
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
 
 import com.openclassrooms.rentals.models.UserEntity;
 
+/**
+ * Repository interface for managing {@link UserEntity} persistence.
+ * <p>
+ * Extends {@link JpaRepository} to provide standard CRUD operations, and
+ * {@link UserRepositoryCustom} for the lookups by email through the natural-id cache.
+ * </p>
+ */
 @Repository
-public interface UserRepository extends JpaRepository<UserEntity, Long> {
-    Optional<UserEntity> findByEmail(String email);
+public interface UserRepository extends JpaRepository<UserEntity, Long>, UserRepositoryCustom {
 
 }
@@ -0,0 +1,20 @@
+package com.openclassrooms.rentals.repositorys;
+
+import java.util.Optional;
+
+import com.openclassrooms.rentals.models.UserEntity;
+
+/**
+ * User lookups not covered by {@link org.springframework.data.jpa.repository.JpaRepository}.
+ */
+public interface UserRepositoryCustom {
+
+    /**
+     * Finds a user by email, its natural id. The email to id resolution and the user
+     * are read from the second-level cache when present, without a query.
+     *
+     * @param email the user email
+     * @return the user, or {@code Optional.empty()} if no user has this email
+     */
+    Optional<UserEntity> findByEmail(String email);
+}
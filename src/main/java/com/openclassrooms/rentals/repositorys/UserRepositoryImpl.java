@@ -0,0 +1,30 @@
+package com.openclassrooms.rentals.repositorys;
+
+import java.util.Optional;
+
+import org.hibernate.Session;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.openclassrooms.rentals.models.UserEntity;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+
+/**
+ * Hibernate implementation of {@link UserRepositoryCustom}, picked up by Spring Data
+ * through its {@code Impl} suffix.
+ */
+public class UserRepositoryImpl implements UserRepositoryCustom {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    @Transactional(readOnly = true)
+    public Optional<UserEntity> findByEmail(String email) {
+        if (email == null) {
+            return Optional.empty();
+        }
+        return entityManager.unwrap(Session.class).bySimpleNaturalId(UserEntity.class).loadOptional(email);
+    }
+}
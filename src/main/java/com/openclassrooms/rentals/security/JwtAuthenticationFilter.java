@@ -14,6 +14,9 @@ import org.springframework.util.StringUtils;
 import org.springframework.web.filter.OncePerRequestFilter;
 import org.springframework.stereotype.Component;
 
+import com.openclassrooms.rentals.profiling.JwtVerificationEvent;
+import com.openclassrooms.rentals.profiling.ServerTiming;
+
 import java.io.IOException;
 import java.util.List;
 
@@ -49,28 +52,40 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
         String jwt = parseJwt(request);
         if (jwt == null) {
-            logger.warn(" Token JWT absent");
+            logger.debug(" Token JWT absent");
             filterChain.doFilter(request, response);
             return;
         }
 
-        String username = jwtService.extractUsername(jwt);
-        if (username != null && SecurityContextHolder.getContext().getAuthentication() == null) {
-            UserDetails userDetails = userDetailsService.loadUserByUsername(username);
-
-            if (!jwtService.validateToken(jwt, userDetails)) {
-                logger.warn("Token JWT invalide pour l'utilisateur : {}", username);
-                response.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
-                return;
+        long timing = ServerTiming.start();
+        JwtVerificationEvent verification = new JwtVerificationEvent();
+        verification.begin();
+        verification.outcome = "failed";
+        try {
+            String username = jwtService.extractUsername(jwt);
+            verification.outcome = "skipped";
+            if (username != null && SecurityContextHolder.getContext().getAuthentication() == null) {
+                UserDetails userDetails = userDetailsService.loadUserByUsername(username);
+
+                if (!jwtService.validateToken(jwt, userDetails)) {
+                    verification.outcome = "invalid";
+                    logger.warn("Token JWT invalide pour l'utilisateur : {}", username);
+                    response.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
+                    return;
+                }
+                verification.outcome = "valid";
+
+                UsernamePasswordAuthenticationToken authToken = new UsernamePasswordAuthenticationToken(
+                        userDetails, null, userDetails.getAuthorities()
+                );
+
+                authToken.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
+                SecurityContextHolder.getContext().setAuthentication(authToken);
+                logger.debug("Authentification établie pour : {}", username);
             }
-
-            UsernamePasswordAuthenticationToken authToken = new UsernamePasswordAuthenticationToken(
-                    userDetails, null, userDetails.getAuthorities()
-            );
-
-            authToken.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
-            SecurityContextHolder.getContext().setAuthentication(authToken);
-            logger.info("Authentification établie pour : {}", username);
+        } finally {
+            verification.commit();
+            ServerTiming.stop(ServerTiming.Phase.AUTH, timing);
         }
 
         filterChain.doFilter(request, response);
@@ -3,8 +3,10 @@ import org.springframework.security.core.Authentication;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Service;
 
+import io.micrometer.core.annotation.Timed;
 
 @Service
+@Timed(value = "pages.service", histogram = true)
 public class JwtService {
 
     private final HmacJwtFactory jwtFactory;
@@ -18,7 +18,6 @@ public class UserDetailsServiceImplementation implements UserDetailsService {
 
    @Override
     public UserDetails loadUserByUsername(String email) throws UsernameNotFoundException {
-        System.out.println("Recherche de l'utilisateur : " + email); 
         UserEntity user = userRepository.findByEmail(email)
             .orElseThrow(() -> new UsernameNotFoundException("Utilisateur non trouvé : " + email));
         return new AppUserDetails(user);
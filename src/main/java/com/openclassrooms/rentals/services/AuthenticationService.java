@@ -13,7 +13,10 @@ import com.openclassrooms.rentals.dto.TokenResponseDto;
 import com.openclassrooms.rentals.exceptions.AuthenticatedUserNotFound;
 import com.openclassrooms.rentals.security.JwtService;
 
+import io.micrometer.core.annotation.Timed;
+
 @Service
+@Timed(value = "pages.service", histogram = true)
 public class AuthenticationService {
     
         private final AuthenticationManager authenticationManager;
@@ -1,27 +1,176 @@
 package com.openclassrooms.rentals.services;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.Limit;
+import org.springframework.security.access.AccessDeniedException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
+import com.openclassrooms.rentals.dto.MessageDto;
+import com.openclassrooms.rentals.dto.MessagePageDto;
 import com.openclassrooms.rentals.dto.MessageRequestDto;
+import com.openclassrooms.rentals.exceptions.MessageIngestionException;
 import com.openclassrooms.rentals.models.MessageEntity;
 import com.openclassrooms.rentals.repositorys.MessageRepository;
+import com.openclassrooms.rentals.repositorys.RentalRepository;
+import com.openclassrooms.rentals.services.ingestion.MessageBatchWriter;
+import com.openclassrooms.rentals.services.map.MessageCursor;
 import com.openclassrooms.rentals.services.map.MessageMapper;
+import com.openclassrooms.rentals.services.notification.MessageSavedEvent;
 
+import io.micrometer.core.annotation.Timed;
+
+/**
+ * Service saving and reading the messages.
+ * <p>
+ * With {@code pages.messages.ingestion=direct} each message is inserted by the request
+ * thread. With {@code write-behind} it is handed to the {@link MessageBatchWriter}: with
+ * {@code pages.messages.durability=async} the message is acknowledged as soon as it is
+ * queued, with {@code sync} only once its batch has been committed. Either way a
+ * {@link MessageSavedEvent} is published once the message is committed.
+ * </p>
+ * <p>
+ * Messages are read page by page, newest first, by the owner of their rental or by
+ * their sender.
+ * </p>
+ */
 @Service
+@Timed(value = "pages.service", histogram = true)
 public class MessageService {
 
 	private final MessageRepository messageRepo;
 
 	private final MessageMapper messageMapper;
 
-	public MessageService(MessageRepository messageRepo, MessageMapper messageMapper) {
+	private final RentalRepository rentalRepo;
+
+	private final UserService userSrvc;
+
+	private final ApplicationEventPublisher eventPublisher;
+
+	private final MessageBatchWriter batchWriter;
+
+	private final boolean synchronousDurability;
+
+	private final long syncTimeoutMs;
+
+	public MessageService(MessageRepository messageRepo, MessageMapper messageMapper,
+			RentalRepository rentalRepo, UserService userSrvc, ApplicationEventPublisher eventPublisher,
+			ObjectProvider<MessageBatchWriter> batchWriter,
+			@Value("${pages.messages.durability:async}") String durability,
+			@Value("${pages.messages.syncTimeoutMs:5000}") long syncTimeoutMs) {
 		this.messageRepo = messageRepo;
 		this.messageMapper = messageMapper;
+		this.rentalRepo = rentalRepo;
+		this.userSrvc = userSrvc;
+		this.eventPublisher = eventPublisher;
+		this.batchWriter = batchWriter.getIfAvailable();
+		this.synchronousDurability = "sync".equalsIgnoreCase(durability);
+		this.syncTimeoutMs = syncTimeoutMs;
 	}
 
+	/**
+	 * Save a message.
+	 * @param message the message request
+	 * @return the message, or {@code Optional.empty()} if its user or rental does not exist
+	 * @throws MessageIngestionException if the write-behind queue is full, or if a
+	 *         synchronous write failed or timed out
+	 */
 	public Optional<MessageEntity> save(MessageRequestDto message) {
-		return messageMapper.fromRequest(message).map(m -> messageRepo.save(m));
+		if (batchWriter == null) {
+			return messageMapper.fromRequest(message).map(m -> messageRepo.save(m)).map(saved -> {
+				eventPublisher.publishEvent(new MessageSavedEvent(messageMapper.toDto(saved)));
+				return saved;
+			});
+		}
+		return messageMapper.fromRequest(message).map(m -> {
+			CompletableFuture<Void> written = batchWriter.submit(m);
+			if (written == null) {
+				throw new MessageIngestionException("Message queue is full");
+			}
+			if (synchronousDurability) {
+				awaitWrite(written);
+			}
+			return m;
+		});
+	}
+
+	/**
+	 * Read a page of the messages of a rental, newest first.
+	 * @param rentalId the rental identifier
+	 * @param cursor the {@code next_cursor} of the previous page, {@code null} for the first page
+	 * @param limit the maximum number of messages of the page
+	 * @return the page, or {@code Optional.empty()} if the rental does not exist
+	 * @throws AccessDeniedException if the authenticated user does not own the rental
+	 * @throws IllegalArgumentException if the cursor is malformed
+	 */
+	@Transactional(readOnly = true)
+	public Optional<MessagePageDto> findByRental(Long rentalId, String cursor, int limit) {
+		return rentalRepo.findOwnerId(rentalId).map(ownerId -> {
+			checkCurrentUser(ownerId);
+			return page(cursor, limit, (after, max) -> after == null
+					? messageRepo.findPageByRental(rentalId, max)
+					: messageRepo.findPageByRentalAfter(rentalId, after.createdAt(), after.id(), max));
+		});
+	}
+
+	/**
+	 * Read a page of the messages sent by a user, newest first.
+	 * @param userId the sender identifier
+	 * @param cursor the {@code next_cursor} of the previous page, {@code null} for the first page
+	 * @param limit the maximum number of messages of the page
+	 * @return the page
+	 * @throws AccessDeniedException if the authenticated user is not the sender
+	 * @throws IllegalArgumentException if the cursor is malformed
+	 */
+	@Transactional(readOnly = true)
+	public MessagePageDto findByUser(Long userId, String cursor, int limit) {
+		checkCurrentUser(userId);
+		return page(cursor, limit, (after, max) -> after == null
+				? messageRepo.findPageByUser(userId, max)
+				: messageRepo.findPageByUserAfter(userId, after.createdAt(), after.id(), max));
+	}
+
+	private interface PageQuery {
+		List<MessageDto> find(MessageCursor after, Limit limit);
+	}
+
+	private MessagePageDto page(String cursor, int limit, PageQuery query) {
+		MessageCursor after = cursor == null || cursor.isBlank() ? null : MessageCursor.decode(cursor);
+		// One more message than asked tells whether a next page exists.
+		List<MessageDto> messages = query.find(after, Limit.of(limit + 1));
+		if (messages.size() <= limit) {
+			return new MessagePageDto(messages, null);
+		}
+		List<MessageDto> page = messages.subList(0, limit);
+		return new MessagePageDto(page, MessageCursor.after(page.get(limit - 1)).encode());
+	}
+
+	private void checkCurrentUser(Long userId) {
+		if (!userSrvc.getCurrentUserId().map(userId::equals).orElse(false)) {
+			throw new AccessDeniedException("Messages of user " + userId + " are not readable by the current user");
+		}
+	}
+
+	private void awaitWrite(CompletableFuture<Void> written) {
+		try {
+			written.get(syncTimeoutMs, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new MessageIngestionException("Interrupted while writing the message", e);
+		} catch (ExecutionException e) {
+			throw new MessageIngestionException("Message could not be written", e.getCause());
+		} catch (TimeoutException e) {
+			throw new MessageIngestionException("Message write timed out", e);
+		}
 	}
 
 }
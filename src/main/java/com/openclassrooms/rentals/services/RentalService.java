@@ -88,11 +88,13 @@
 
 package com.openclassrooms.rentals.services;
 
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.multipart.MultipartFile;
 
 import com.openclassrooms.rentals.dto.RentalCreationDto;
@@ -101,23 +103,39 @@ import com.openclassrooms.rentals.dto.RentalUpdateDto;
 import com.openclassrooms.rentals.models.RentalEntity;
 import com.openclassrooms.rentals.repositorys.RentalRepository;
 import com.openclassrooms.rentals.services.map.RentalMapper;
+import com.openclassrooms.rentals.services.storage.StagedPicture;
+
+import io.micrometer.core.annotation.Timed;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
 
 @Service
+@Slf4j
+@Timed(value = "pages.service", histogram = true)
 public class RentalService {
 
     private final RentalMapper mapper;
     private final RentalRepository rentalRepo;
     private final UserService userSrvc;
     private final StorageService storageService;
+    private final TransactionTemplate transactionTemplate;
+    private final Timer createConnectionHold;
 
     public RentalService(RentalRepository rentalRepo,
                          UserService userSrvc,
                          RentalMapper mapper,
-                         StorageService storageService) {
+                         StorageService storageService,
+                         TransactionTemplate transactionTemplate,
+                         MeterRegistry registry) {
         this.mapper = mapper;
         this.rentalRepo = rentalRepo;
         this.userSrvc = userSrvc;
         this.storageService = storageService;
+        this.transactionTemplate = transactionTemplate;
+        this.createConnectionHold = Timer.builder("pages.rental.create.connection.hold")
+                .description("Time a database connection is held by the rental creation transaction")
+                .register(registry);
     }
 
     /**
@@ -138,44 +156,110 @@ public class RentalService {
 
     /**
      * Create a new rental with an optional picture.
+     * <p>
+     * The picture is staged before the transaction starts and promoted to the
+     * storage once the rental row is committed, so no file I/O happens while a
+     * database connection is held.
+     * </p>
      */
-   @Transactional
 public Optional<RentalDto> create(RentalCreationDto rentalCreation, MultipartFile picture) {
-    return mapper.fromDto(rentalCreation)
-            .map(r -> {
-                userSrvc.getCurrentUserEntity().ifPresent(r::setOwner);
+    Optional<StagedPicture> staged = storageService.stage(picture);
 
+    Optional<RentalEntity> created = createConnectionHold.record(() -> transactionTemplate.execute(status ->
+            mapper.fromDto(rentalCreation).map(r -> {
                 RentalEntity saved = rentalRepo.save(r);
-
-                if (picture != null && !picture.isEmpty()) {
-                    storageService.store(saved, picture).ifPresent(updated -> {
-                        saved.setPicture(updated.getPicture());
-                        rentalRepo.save(saved);
-                    });
-                }
+                staged.ifPresent(p -> saved.setPicture(storageService.pictureUrl(saved.getId(), p.filename())));
                 return saved;
-            })
-            .map(mapper::toDto);
+            })));
+
+    if (created.isEmpty()) {
+        staged.ifPresent(storageService::discard);
+        return Optional.empty();
+    }
+
+    RentalEntity rental = created.get();
+    staged.filter(p -> !storageService.promote(rental.getId(), p)).ifPresent(p -> {
+        log.warn("Picture of rental {} could not be promoted, clearing its link", rental.getId());
+        transactionTemplate.executeWithoutResult(status ->
+                rentalRepo.findById(rental.getId()).ifPresent(r -> r.setPicture(null)));
+        rental.setPicture(null);
+    });
+    return Optional.of(mapper.toDto(rental));
+}
+
+/**
+ * Update a rental of the authenticated user with a single conditional {@code UPDATE}.
+ * <p>
+ * The rental is not read first: the ownership and the version are checked by the
+ * statement itself. When it updates nothing, the owner of the rental is read to tell
+ * why. The picture is staged, then promoted before the transaction, so that the
+ * rental never links to a picture missing from the storage: if the promotion fails,
+ * the rental keeps its current picture. The picture it replaces is read under the lock
+ * of the row in the same transaction, and deleted from the storage once the update is
+ * committed; a picture promoted for an update that changed nothing is deleted instead.
+ * </p>
+ * @param id the rental id
+ * @param rentalUpdate the new fields of the rental
+ * @param picture the new picture, or {@code null} to keep the current one
+ * @param version the version read by the client ({@code If-Match}), or {@code null} to skip the check
+ * @return the outcome of the update
+ */
+public UpdateResult update(Long id, RentalUpdateDto rentalUpdate, MultipartFile picture, Long version) {
+    Optional<Long> userId = userSrvc.getCurrentUserId();
+    if (userId.isEmpty()) {
+        return new UpdateResult(UpdateStatus.NOT_OWNER, null);
+    }
+    Optional<StagedPicture> staged = storageService.stage(picture);
+    Optional<String> promoted = staged.filter(p -> storageService.promote(id, p))
+            .map(p -> storageService.pictureUrl(id, p.filename()));
+    if (staged.isPresent() && promoted.isEmpty()) {
+        log.warn("Picture of rental {} could not be promoted, keeping its current picture", id);
+    }
+
+    RentalEntity changes = new RentalEntity();
+    changes.setId(id);
+    changes.setName(rentalUpdate.getName());
+    changes.setSurface(rentalUpdate.getSurface());
+    changes.setPrice(rentalUpdate.getPrice());
+    changes.setDescription(rentalUpdate.getDescription());
+    changes.setUpdatedAt(LocalDateTime.now());
+    changes.setPicture(promoted.orElse(null));
+
+    Updated updated = transactionTemplate.execute(status -> {
+        String previousPicture = promoted.isPresent() ? rentalRepo.findPictureForUpdate(id).orElse(null) : null;
+        return new Updated(rentalRepo.updateIfMatch(changes, userId.get(), version) > 0, previousPicture);
+    });
+    if (!updated.done()) {
+        promoted.filter(url -> !url.equals(updated.previousPicture())).ifPresent(storageService::delete);
+        UpdateStatus status = rentalRepo.findOwnerId(id)
+                .map(ownerId -> ownerId.equals(userId.get()) ? UpdateStatus.VERSION_MISMATCH : UpdateStatus.NOT_OWNER)
+                .orElse(UpdateStatus.NOT_FOUND);
+        return new UpdateResult(status, null);
+    }
+
+    if (updated.previousPicture() != null && !updated.previousPicture().equals(changes.getPicture())) {
+        storageService.delete(updated.previousPicture());
+    }
+    return new UpdateResult(UpdateStatus.UPDATED, version == null ? null : version + 1);
+}
+
+/**
+ * Outcome of the conditional update.
+ * @param done whether the rental was updated
+ * @param previousPicture the picture of the rental read before the update, when it has a new one
+ */
+private record Updated(boolean done, String previousPicture) {
 }
 
-@Transactional
-public Optional<RentalDto> update(Long id, RentalUpdateDto rentalUpdate, MultipartFile picture) {
-    return rentalRepo.findById(id)
-            .filter(r -> userSrvc.getCurrentUserEntity()
-                    .map(u -> u.getId().equals(r.getOwner().getId()))
-                    .orElse(false))
-            .map(r -> {
-                RentalEntity updated = mapper.updateFromDto(r, rentalUpdate);
-
-                if (picture != null && !picture.isEmpty()) {
-                    storageService.store(updated, picture).ifPresent(stored -> {
-                        updated.setPicture(stored.getPicture());
-                    });
-                }
-
-                return rentalRepo.save(updated);
-            })
-            .map(mapper::toDto);
+/** Outcome of {@link #update}. */
+public enum UpdateStatus { UPDATED, NOT_FOUND, NOT_OWNER, VERSION_MISMATCH }
+
+/**
+ * Outcome of {@link #update}.
+ * @param status what happened
+ * @param version the new version of the rental, when updated with a version check
+ */
+public record UpdateResult(UpdateStatus status, Long version) {
 }
 
 }
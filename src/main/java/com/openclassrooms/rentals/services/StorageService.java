@@ -1,83 +1,353 @@
 package com.openclassrooms.rentals.services;
-import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.nio.file.*;
+import java.nio.ByteBuffer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Optional;
+import java.util.UUID;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 import com.openclassrooms.rentals.models.RentalEntity;
+import com.openclassrooms.rentals.profiling.ServerTiming;
+import com.openclassrooms.rentals.profiling.StorageIoEvent;
+import com.openclassrooms.rentals.services.storage.PictureCache;
+import com.openclassrooms.rentals.services.storage.PictureNames;
+import com.openclassrooms.rentals.services.storage.PictureRange;
+import com.openclassrooms.rentals.services.storage.PictureStore;
+import com.openclassrooms.rentals.services.storage.StagedPicture;
+import io.micrometer.core.annotation.Timed;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import jakarta.annotation.PostConstruct;
 import lombok.extern.slf4j.Slf4j;
 
+/**
+ * Stockage des images des rentals.
+ * <p>
+ * Les octets sont confiés au {@link PictureStore} sélectionné par la propriété
+ * {@code pages.storage.type} ({@code filesystem} par défaut, {@code segments} ou {@code s3}),
+ * et les images les plus demandées sont servies depuis le {@link PictureCache}.
+ * </p>
+ * <p>
+ * Les uploads peuvent être d'abord écrits dans une zone de staging
+ * ({@code pages.storage.stagingDir}) puis promus une fois le rental enregistré,
+ * afin qu'aucune écriture disque n'ait lieu pendant une transaction. Les fichiers
+ * de staging abandonnés sont supprimés périodiquement.
+ * </p>
+ * <p>
+ * Chaque image est stockée sous un nom contenant l'empreinte de son contenu
+ * (voir {@link PictureNames}), si bien que son URL change à chaque remplacement
+ * et peut être mise en cache indéfiniment par les navigateurs et les CDN.
+ * </p>
+ * <p>
+ * Les octets stockés et servis sont comptés par {@code pages.storage.bytes}, et les
+ * lectures par {@code pages.storage.reads} selon leur source : le cache, le stockage,
+ * une image absente ou une erreur de lecture. Les écritures et les lectures sont aussi
+ * des {@link StorageIoEvent} des enregistrements Flight Recorder qui les activent, et leur
+ * durée est reportée dans la phase {@code storage} de l'en-tête {@code Server-Timing}.
+ * </p>
+ */
 @Service
 @Slf4j
+@Timed(value = "pages.service", histogram = true)
 public class StorageService {
 
-    private final Path rootLocation;
+    private static final String PICTURE_URL_PREFIX = "/api/files/rentalpicture/";
 
-    public StorageService(@Value("${pages.uploadDir}") String uploadDir) {
-        this.rootLocation = Path.of(uploadDir);
+    private final PictureStore pictureStore;
+    private final PictureCache pictureCache;
+    private final Path stagingLocation;
+    private final long stagingMaxAgeMillis;
+    private final Counter bytesStored;
+    private final Counter bytesServed;
+    private final Counter readsFromCache;
+    private final Counter readsFromStore;
+    private final Counter readsMissing;
+    private final Counter readErrors;
+
+    public StorageService(PictureStore pictureStore, PictureCache pictureCache,
+                          @Value("${pages.storage.stagingDir:${pages.uploadDir}/.staging}") String stagingDir,
+                          @Value("${pages.storage.staging.maxAgeMs:3600000}") long stagingMaxAgeMillis,
+                          MeterRegistry registry) {
+        this.pictureStore = pictureStore;
+        this.pictureCache = pictureCache;
+        this.stagingLocation = Path.of(stagingDir);
+        this.stagingMaxAgeMillis = stagingMaxAgeMillis;
+        this.bytesStored = Counter.builder("pages.storage.bytes").tag("direction", "stored")
+                .baseUnit("bytes").register(registry);
+        this.bytesServed = Counter.builder("pages.storage.bytes").tag("direction", "served")
+                .baseUnit("bytes").register(registry);
+        this.readsFromCache = registry.counter("pages.storage.reads", "source", "cache");
+        this.readsFromStore = registry.counter("pages.storage.reads", "source", "store");
+        this.readsMissing = registry.counter("pages.storage.reads", "source", "missing");
+        this.readErrors = registry.counter("pages.storage.reads", "source", "error");
     }
 
     @PostConstruct
     public void init() {
         try {
-            if (!Files.exists(rootLocation)) {
-                Files.createDirectories(rootLocation);
-            }
+            Files.createDirectories(stagingLocation);
         } catch (IOException e) {
-            throw new RuntimeException("Could not initialize storage", e);
+            throw new RuntimeException("Could not initialize staging storage", e);
         }
     }
 
+    /**
+     * Stocker directement l'image d'un rental déjà enregistré.
+     * @param rental le rental propriétaire de l'image
+     * @param file le fichier uploadé
+     * @return le rental dont le lien vers l'image a été mis à jour
+     */
     public Optional<RentalEntity> store(RentalEntity rental, MultipartFile file) {
+        return stage(file)
+                .filter(staged -> promote(rental.getId(), staged))
+                .map(staged -> {
+                    rental.setPicture(pictureUrl(rental.getId(), staged.filename()));
+                    return rental;
+                });
+    }
+
+    /**
+     * Écrire un upload dans la zone de staging, sans toucher au stockage final.
+     * L'empreinte du contenu est calculée pendant la copie et donne le nom sous
+     * lequel l'image sera stockée.
+     * @param file le fichier uploadé
+     * @return l'image en staging, vide si aucun fichier n'est fourni ou si l'écriture échoue
+     */
+    public Optional<StagedPicture> stage(MultipartFile file) {
         if (file == null || file.isEmpty()) {
             return Optional.empty();
         }
+        long timing = ServerTiming.start();
+        StorageIoEvent event = event("stage");
+        Path staged = stagingLocation.resolve(UUID.randomUUID() + ".part");
+        MessageDigest digest = sha256();
+        try (InputStream inputStream = new DigestInputStream(file.getInputStream(), digest)) {
+            long size = Files.copy(inputStream, staged, StandardCopyOption.REPLACE_EXISTING);
+            String filename = PictureNames.fingerprinted(file.getOriginalFilename(), digest.digest());
+            commit(event, timing, "staging", size);
+            return Optional.of(new StagedPicture(staged, filename, size));
+        } catch (IOException e) {
+            commit(event, timing, "error", 0);
+            log.error("Erreur staging fichier: {}", e.getMessage());
+            discard(new StagedPicture(staged, file.getOriginalFilename(), 0));
+            return Optional.empty();
+        }
+    }
 
+    /**
+     * Promouvoir une image en staging vers son emplacement définitif.
+     * @param rentalId l’ID du rental propriétaire de l'image
+     * @param staged l'image en staging
+     * @return {@code true} si l'image a été promue
+     */
+    public boolean promote(Long rentalId, StagedPicture staged) {
+        long timing = ServerTiming.start();
+        StorageIoEvent event = event("promote");
         try {
-            Path rentalFolder = this.rootLocation.resolve(rental.getId().toString());
-            if (!Files.exists(rentalFolder)) {
-                Files.createDirectories(rentalFolder);
-            }
+            pictureStore.promote(rentalId, staged.filename(), staged.path(), staged.size());
+            pictureCache.invalidate(rentalId, staged.filename());
+            bytesStored.increment(staged.size());
+            commit(event, timing, "store", staged.size());
+            return true;
+        } catch (IOException e) {
+            commit(event, timing, "error", 0);
+            log.error("Erreur promotion fichier {} pour rentalId {}: {}", staged.filename(), rentalId, e.getMessage());
+            discard(staged);
+            return false;
+        }
+    }
 
-            Path destinationFile = rentalFolder.resolve(file.getOriginalFilename());
-            try (InputStream inputStream = file.getInputStream()) {
-                Files.copy(inputStream, destinationFile, StandardCopyOption.REPLACE_EXISTING);
-            }
+    /**
+     * Supprimer une image du stockage, typiquement l'image précédente d'un rental
+     * une fois la nouvelle enregistrée. Les URL qui ne désignent pas une image
+     * stockée sont ignorées.
+     * @param pictureUrl l'URL publique de l'image
+     */
+    public void delete(String pictureUrl) {
+        if (pictureUrl == null || !pictureUrl.startsWith(PICTURE_URL_PREFIX)) {
+            return;
+        }
+        String path = pictureUrl.substring(PICTURE_URL_PREFIX.length());
+        int slash = path.indexOf('/');
+        if (slash <= 0 || !path.substring(0, slash).chars().allMatch(Character::isDigit)) {
+            return;
+        }
+        Long rentalId = Long.valueOf(path.substring(0, slash));
+        String filename = path.substring(slash + 1);
+        long timing = ServerTiming.start();
+        StorageIoEvent event = event("delete");
+        try {
+            pictureStore.delete(rentalId, filename);
+            pictureCache.invalidate(rentalId, filename);
+            commit(event, timing, "store", 0);
+        } catch (IOException e) {
+            commit(event, timing, "error", 0);
+            log.error("Erreur suppression fichier {} pour rentalId {}: {}", filename, rentalId, e.getMessage());
+        }
+    }
+
+    /**
+     * Supprimer une image en staging qui ne sera pas promue.
+     * @param staged l'image en staging
+     */
+    public void discard(StagedPicture staged) {
+        try {
+            Files.deleteIfExists(staged.path());
+        } catch (IOException e) {
+            log.warn("Impossible de supprimer le fichier de staging {}: {}", staged.path(), e.getMessage());
+        }
+    }
+
+    /**
+     * @param rentalId l’ID du rental
+     * @param filename le nom du fichier
+     * @return l'URL publique de l'image
+     */
+    public String pictureUrl(Long rentalId, String filename) {
+        return PICTURE_URL_PREFIX + rentalId + "/" + filename;
+    }
 
-            rental.setPicture("/api/files/rentalpicture/" + rental.getId() + "/" + file.getOriginalFilename());
-            return Optional.of(rental);
+    /**
+     * Supprimer les fichiers de staging orphelins et les dossiers vides laissés
+     * par le stockage.
+     */
+    @Scheduled(fixedDelayString = "${pages.storage.staging.sweepIntervalMs:600000}")
+    public void sweep() {
+        long limit = System.currentTimeMillis() - stagingMaxAgeMillis;
+        try (DirectoryStream<Path> stagedFiles = Files.newDirectoryStream(stagingLocation)) {
+            for (Path staged : stagedFiles) {
+                if (Files.getLastModifiedTime(staged).toMillis() < limit) {
+                    Files.deleteIfExists(staged);
+                    log.info("Fichier de staging orphelin supprimé: {}", staged);
+                }
+            }
+        } catch (IOException e) {
+            log.error("Erreur nettoyage du staging: {}", e.getMessage());
+        }
+        pictureStore.sweep(stagingMaxAgeMillis);
+    }
 
+    /**
+     * Charger le contenu d’un fichier précis d’un rental, hors du tas Java.
+     * <p>
+     * Les petites images sont copiées une fois dans un buffer direct et conservées
+     * dans le {@link PictureCache}, sauf si le stockage les sert déjà depuis la
+     * mémoire; les plus grosses sont servies directement depuis leur projection
+     * en mémoire. Une image invalidée pendant sa lecture n'est pas mise en cache :
+     * les octets lus peuvent être ceux de l'image remplacée.
+     * </p>
+     * @param rentalId l’ID du rental
+     * @param filename le nom exact du fichier
+     * @return un buffer en lecture seule positionné au début du contenu
+     */
+    public Optional<ByteBuffer> load(Long rentalId, String filename) {
+        long timing = ServerTiming.start();
+        StorageIoEvent event = event("load");
+        Optional<ByteBuffer> cached = pictureCache.get(rentalId, filename);
+        if (cached.isPresent()) {
+            return served(cached, readsFromCache, event, timing);
+        }
+        long stamp = pictureCache.stamp(rentalId, filename);
+        try {
+            return served(pictureStore.read(rentalId, filename).map(content -> {
+                if (pictureStore.servesFromMemory() || !pictureCache.accepts(content.remaining())) {
+                    return content;
+                }
+                ByteBuffer copy = ByteBuffer.allocateDirect(content.remaining()).put(content).flip();
+                return pictureCache.put(rentalId, filename, copy, stamp);
+            }), readsFromStore, event, timing);
         } catch (IOException e) {
-            log.error("Erreur stockage fichier: {}", e.getMessage());
+            readErrors.increment();
+            commit(event, timing, "error", 0);
+            log.error("Erreur lors du chargement du fichier pour rentalId {}: {}", rentalId, e.getMessage());
             return Optional.empty();
         }
     }
 
     /**
-     * Charger un fichier précis d’un rental
+     * Charger une plage d'octets d’un fichier précis d’un rental.
+     * <p>
+     * La plage est découpée dans le {@link PictureCache} si l'image y est, sinon
+     * seuls les octets demandés sont lus depuis le stockage.
+     * </p>
      * @param rentalId l’ID du rental
      * @param filename le nom exact du fichier
-     * @return le fichier si trouvé
+     * @param offset la position du premier octet
+     * @param length le nombre maximal d'octets
+     * @return la plage demandée
      */
-    public Optional<File> load(Long rentalId, String filename) {
+    public Optional<PictureRange> loadRange(Long rentalId, String filename, long offset, long length) {
+        long timing = ServerTiming.start();
+        StorageIoEvent event = event("loadRange");
+        Optional<ByteBuffer> cached = pictureCache.get(rentalId, filename);
+        if (cached.isPresent()) {
+            return servedRange(cached.map(content -> PictureRange.slice(content, offset, length)), readsFromCache,
+                    event, timing);
+        }
         try {
-            Path rentalFolder = this.rootLocation.resolve(rentalId.toString());
-            Path filePath = rentalFolder.resolve(filename);
-
-            if (Files.exists(filePath)) {
-                return Optional.of(filePath.toFile());
-            } else {
-                log.warn("Fichier non trouvé: {}", filePath.toAbsolutePath());
-                return Optional.empty();
-            }
-
-        } catch (Exception e) {
-            log.error("Erreur lors du chargement du fichier pour rentalId {}: {}", rentalId, e.getMessage());
+            return servedRange(pictureStore.readRange(rentalId, filename, offset, length), readsFromStore, event,
+                    timing);
+        } catch (IOException e) {
+            readErrors.increment();
+            commit(event, timing, "error", 0);
+            log.error("Erreur lors du chargement partiel du fichier pour rentalId {}: {}", rentalId, e.getMessage());
             return Optional.empty();
         }
     }
+
+    private Optional<ByteBuffer> served(Optional<ByteBuffer> content, Counter source, StorageIoEvent event,
+                                        long timing) {
+        content.ifPresentOrElse(buffer -> {
+            source.increment();
+            bytesServed.increment(buffer.remaining());
+        }, readsMissing::increment);
+        commit(event, timing, content.isPresent() ? source.getId().getTag("source") : "missing",
+                content.map(ByteBuffer::remaining).orElse(0));
+        return content;
+    }
+
+    private Optional<PictureRange> servedRange(Optional<PictureRange> range, Counter source, StorageIoEvent event,
+                                               long timing) {
+        range.ifPresentOrElse(part -> {
+            source.increment();
+            bytesServed.increment(part.content().remaining());
+        }, readsMissing::increment);
+        commit(event, timing, range.isPresent() ? source.getId().getTag("source") : "missing",
+                range.map(part -> part.content().remaining()).orElse(0));
+        return range;
+    }
+
+    private static StorageIoEvent event(String operation) {
+        StorageIoEvent event = new StorageIoEvent();
+        event.operation = operation;
+        event.begin();
+        return event;
+    }
+
+    private static void commit(StorageIoEvent event, long timing, String source, long bytes) {
+        ServerTiming.stop(ServerTiming.Phase.STORAGE, timing);
+        event.end();
+        if (event.shouldCommit()) {
+            event.source = source;
+            event.bytes = bytes;
+            event.commit();
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
 }
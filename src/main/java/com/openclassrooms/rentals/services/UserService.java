@@ -17,7 +17,10 @@ import com.openclassrooms.rentals.models.UserEntity;
 import com.openclassrooms.rentals.repositorys.UserRepository;
 import com.openclassrooms.rentals.services.map.UserMapper;
 
+import io.micrometer.core.annotation.Timed;
+
 @Service
+@Timed(value = "pages.service", histogram = true)
 public class UserService {
 
     private final UserRepository userRepository;
@@ -117,6 +120,17 @@ public class UserService {
         return Optional.empty();
     }
 
+    /**
+     * @return the identifier of the authenticated user, read from the security
+     *         context without querying the database
+     */
+    public Optional<Long> getCurrentUserId() {
+        Object principal = SecurityContextHolder.getContext().getAuthentication().getPrincipal();
+        return principal instanceof AppUserDetails userDetails
+                ? Optional.of(userDetails.getId())
+                : Optional.empty();
+    }
+
 	@Transactional(readOnly = true)
 	public Optional<UserDto> findById(Long id) {
 		return userRepository.findById(id).map(u -> userMapper.toDto(u));
@@ -0,0 +1,38 @@
+package com.openclassrooms.rentals.services.idempotency;
+
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * Table of the responses given to requests carrying an {@code Idempotency-Key}.
+ * <p>
+ * The implementation is chosen with the {@code pages.idempotency.store} property: a
+ * bounded table in memory, or a database table shared by all the API nodes and kept
+ * across restarts. Keys are already scoped to the user and the endpoint when they
+ * reach the store.
+ * </p>
+ */
+public interface IdempotencyStore {
+
+    /**
+     * @param key the scoped idempotency key
+     * @return the stored response, or {@code Optional.empty()} if none was stored or it expired
+     */
+    Optional<StoredResponse> find(String key);
+
+    /**
+     * Stores a response, replacing any previous response stored under the same key.
+     *
+     * @param key the scoped idempotency key
+     * @param response the response to store
+     * @param ttl how long the response is kept
+     */
+    void save(String key, StoredResponse response, Duration ttl);
+
+    /**
+     * Removes the expired responses. Expired responses are never returned by
+     * {@link #find(String)}, this only reclaims their space.
+     */
+    default void purgeExpired() {
+    }
+}
@@ -0,0 +1,64 @@
+package com.openclassrooms.rentals.services.idempotency;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * {@link IdempotencyStore} keeping the responses in memory, in a table bounded to
+ * {@code pages.idempotency.maxEntries} responses, the least recently stored being
+ * evicted first.
+ */
+@Component
+@ConditionalOnProperty(name = "pages.idempotency.store", havingValue = "memory", matchIfMissing = true)
+public class InMemoryIdempotencyStore implements IdempotencyStore {
+
+    private record Entry(StoredResponse response, long expiresAt) {
+    }
+
+    private final Map<String, Entry> entries;
+
+    public InMemoryIdempotencyStore(@Value("${pages.idempotency.maxEntries:10000}") int maxEntries) {
+        this.entries = new LinkedHashMap<>(16, 0.75f, false) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    @Override
+    public synchronized Optional<StoredResponse> find(String key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return Optional.empty();
+        }
+        if (entry.expiresAt() <= System.currentTimeMillis()) {
+            entries.remove(key);
+            return Optional.empty();
+        }
+        return Optional.of(entry.response());
+    }
+
+    @Override
+    public synchronized void save(String key, StoredResponse response, Duration ttl) {
+        entries.remove(key);
+        entries.put(key, new Entry(response, System.currentTimeMillis() + ttl.toMillis()));
+    }
+
+    @Override
+    public synchronized void purgeExpired() {
+        long now = System.currentTimeMillis();
+        for (Iterator<Entry> it = entries.values().iterator(); it.hasNext();) {
+            if (it.next().expiresAt() <= now) {
+                it.remove();
+            }
+        }
+    }
+}
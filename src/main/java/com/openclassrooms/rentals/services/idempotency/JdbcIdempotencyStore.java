@@ -0,0 +1,66 @@
+package com.openclassrooms.rentals.services.idempotency;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.Optional;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * {@link IdempotencyStore} keeping the responses in the {@code idempotency_keys} table
+ * (see {@code db/migration/V4__idempotency_keys.sql} and {@code V7__idempotency_request_hash.sql}),
+ * so that they are shared by all the API nodes and survive restarts. Keys are stored as their
+ * SHA-256, which bounds their length.
+ */
+@Component
+@ConditionalOnProperty(name = "pages.idempotency.store", havingValue = "jdbc")
+public class JdbcIdempotencyStore implements IdempotencyStore {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public JdbcIdempotencyStore(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public Optional<StoredResponse> find(String key) {
+        return jdbcTemplate.query(
+                "SELECT status, content_type, body, request_hash FROM idempotency_keys WHERE key_hash = ? AND expires_at > ?",
+                (rs, row) -> new StoredResponse(rs.getInt("status"), rs.getString("content_type"), rs.getBytes("body"),
+                        rs.getString("request_hash")),
+                hash(key), Timestamp.from(Instant.now()))
+                .stream().findFirst();
+    }
+
+    @Override
+    public void save(String key, StoredResponse response, Duration ttl) {
+        jdbcTemplate.update(
+                "INSERT INTO idempotency_keys (key_hash, status, content_type, body, request_hash, expires_at) "
+                        + "VALUES (?, ?, ?, ?, ?, ?) "
+                        + "ON DUPLICATE KEY UPDATE status = VALUES(status), content_type = VALUES(content_type), "
+                        + "body = VALUES(body), request_hash = VALUES(request_hash), expires_at = VALUES(expires_at)",
+                hash(key), response.status(), response.contentType(), response.body(), response.requestHash(),
+                Timestamp.from(Instant.now().plus(ttl)));
+    }
+
+    @Override
+    public void purgeExpired() {
+        jdbcTemplate.update("DELETE FROM idempotency_keys WHERE expires_at <= ?", Timestamp.from(Instant.now()));
+    }
+
+    private static String hash(String key) {
+        try {
+            return HexFormat.of().formatHex(
+                    MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
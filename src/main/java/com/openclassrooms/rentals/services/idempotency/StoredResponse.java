@@ -0,0 +1,12 @@
+package com.openclassrooms.rentals.services.idempotency;
+
+/**
+ * A response kept to answer the retries of a request carrying an {@code Idempotency-Key}.
+ *
+ * @param status the HTTP status
+ * @param contentType the content type, {@code null} when the response had none
+ * @param body the response body
+ * @param requestHash the SHA-256 of the request the response answers, in hexadecimal
+ */
+public record StoredResponse(int status, String contentType, byte[] body, String requestHash) {
+}
@@ -0,0 +1,296 @@
+package com.openclassrooms.rentals.services.imports;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.dataformat.csv.CsvMapper;
+import com.fasterxml.jackson.dataformat.csv.CsvParser;
+import com.fasterxml.jackson.dataformat.csv.CsvSchema;
+import com.openclassrooms.rentals.dto.ImportErrorDto;
+import com.openclassrooms.rentals.dto.ImportReportDto;
+import com.openclassrooms.rentals.dto.MessageRequestDto;
+import com.openclassrooms.rentals.dto.RentalImportDto;
+import com.openclassrooms.rentals.models.RentalEntity;
+import com.openclassrooms.rentals.models.UserEntity;
+import com.openclassrooms.rentals.repositorys.MessageRepository;
+import com.openclassrooms.rentals.repositorys.RentalRepository;
+import com.openclassrooms.rentals.services.map.MessageMapper;
+import com.openclassrooms.rentals.services.notification.MessageSavedEvent;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Bulk import of rentals and messages from NDJSON or CSV (with a header line).
+ * <p>
+ * The body is parsed as it is received, one row at a time. Each row is validated,
+ * and the accepted rows are written by chunks of {@code pages.import.chunkSize} with
+ * one JDBC batch and one transaction per chunk. Memory use only depends on the chunk
+ * size, not on the size of the file. A rejected row does not stop the import: it is
+ * counted and, within the first {@code pages.import.maxReportedErrors}, reported with
+ * its line and reason. A chunk whose write fails is rejected as a whole; the chunks
+ * already written are kept.
+ * </p>
+ */
+@Service
+@Slf4j
+public class BulkImportService {
+
+    /** Format of an imported body. */
+    public enum Format { NDJSON, CSV }
+
+    private final RentalRepository rentalRepo;
+    private final MessageRepository messageRepo;
+    private final MessageMapper messageMapper;
+    private final ApplicationEventPublisher eventPublisher;
+    private final Validator validator;
+    private final ObjectMapper objectMapper;
+    private final CsvMapper csvMapper;
+    private final MeterRegistry registry;
+    private final int chunkSize;
+    private final int maxReportedErrors;
+
+    public BulkImportService(RentalRepository rentalRepo, MessageRepository messageRepo, MessageMapper messageMapper,
+                             ApplicationEventPublisher eventPublisher, Validator validator, ObjectMapper objectMapper,
+                             MeterRegistry registry,
+                             @Value("${pages.import.chunkSize:1000}") int chunkSize,
+                             @Value("${pages.import.maxReportedErrors:100}") int maxReportedErrors) {
+        this.rentalRepo = rentalRepo;
+        this.messageRepo = messageRepo;
+        this.messageMapper = messageMapper;
+        this.eventPublisher = eventPublisher;
+        this.validator = validator;
+        this.objectMapper = objectMapper;
+        this.csvMapper = CsvMapper.builder()
+                .enable(CsvParser.Feature.TRIM_SPACES)
+                .enable(CsvParser.Feature.EMPTY_STRING_AS_NULL)
+                .enable(CsvParser.Feature.SKIP_EMPTY_LINES)
+                .disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES)
+                .build();
+        this.registry = registry;
+        this.chunkSize = chunkSize;
+        this.maxReportedErrors = maxReportedErrors;
+    }
+
+    /**
+     * Import rentals owned by a user.
+     * @param in the body, read until its end
+     * @param charset the charset of the body
+     * @param format the format of the body
+     * @param owner the owner of the imported rentals
+     * @return the import report
+     */
+    public ImportReportDto importRentals(InputStream in, Charset charset, Format format, UserEntity owner) {
+        LocalDateTime now = LocalDateTime.now();
+        return run("rentals", in, charset, format, RentalImportDto.class, row -> {
+            RentalEntity r = new RentalEntity();
+            r.setOwner(owner);
+            r.setName(row.getName());
+            r.setSurface(row.getSurface());
+            r.setPrice(row.getPrice());
+            r.setDescription(row.getDescription());
+            r.setCreatedAt(now);
+            r.setUpdatedAt(now);
+            return r;
+        }, rentalRepo::insertBatch, chunk -> { });
+    }
+
+    /**
+     * Import messages. As for a single message, the user and the rental of each
+     * message must exist; a {@link MessageSavedEvent} is published for each message
+     * once its chunk is committed.
+     * @param in the body, read until its end
+     * @param charset the charset of the body
+     * @param format the format of the body
+     * @return the import report
+     */
+    public ImportReportDto importMessages(InputStream in, Charset charset, Format format) {
+        return run("messages", in, charset, format, MessageRequestDto.class,
+                row -> messageMapper.fromRequest(row)
+                        .orElseThrow(() -> new IllegalArgumentException("unknown user or rental")),
+                messageRepo::insertBatch,
+                chunk -> chunk.forEach(m -> eventPublisher.publishEvent(new MessageSavedEvent(messageMapper.toDto(m)))));
+    }
+
+    /** Maps a valid row to the entity to insert, or rejects it with an {@link IllegalArgumentException}. */
+    private interface RowMapper<T, E> {
+        E map(T row);
+    }
+
+    /** A parsed row, or the reason it could not be parsed. */
+    private record Row<T>(long line, T value, String error) {
+    }
+
+    /** Incremental reader of the rows of a body; {@code next()} returns {@code null} at the end. */
+    private interface RowReader<T> extends AutoCloseable {
+        Row<T> next() throws IOException;
+
+        @Override
+        void close() throws IOException;
+    }
+
+    private <T, E> ImportReportDto run(String target, InputStream in, Charset charset, Format format, Class<T> rowType,
+                                       RowMapper<T, E> mapper, Consumer<List<E>> insert, Consumer<List<E>> committed) {
+        Report report = new Report();
+        List<E> chunk = new ArrayList<>(chunkSize);
+        List<Long> chunkLines = new ArrayList<>(chunkSize);
+        long start = System.nanoTime();
+        try (RowReader<T> rows = reader(new InputStreamReader(in, charset), format, rowType)) {
+            Row<T> row;
+            while ((row = rows.next()) != null) {
+                report.lastLine = row.line();
+                if (row.error() != null) {
+                    report.reject(row.line(), row.error());
+                    continue;
+                }
+                Set<ConstraintViolation<T>> violations = validator.validate(row.value());
+                if (!violations.isEmpty()) {
+                    report.reject(row.line(), violations.stream()
+                            .map(v -> v.getPropertyPath() + ": " + v.getMessage())
+                            .sorted()
+                            .collect(Collectors.joining(", ")));
+                    continue;
+                }
+                try {
+                    chunk.add(mapper.map(row.value()));
+                    chunkLines.add(row.line());
+                } catch (IllegalArgumentException e) {
+                    report.reject(row.line(), e.getMessage());
+                    continue;
+                }
+                if (chunk.size() >= chunkSize) {
+                    write(chunk, chunkLines, insert, committed, report);
+                }
+            }
+        } catch (IOException e) {
+            // The rest of the body cannot be read: the rows read so far are still written.
+            report.reject(report.lastLine + 1, "unreadable input: " + e.getMessage());
+        }
+        write(chunk, chunkLines, insert, committed, report);
+        registry.counter("pages.import.rows", "target", target, "result", "imported").increment(report.imported);
+        registry.counter("pages.import.rows", "target", target, "result", "rejected").increment(report.rejected);
+        log.info("Imported {} {} in {} ms, {} rows rejected", report.imported, target,
+                (System.nanoTime() - start) / 1_000_000, report.rejected);
+        return new ImportReportDto(report.imported, report.rejected, report.errors);
+    }
+
+    private <E> void write(List<E> chunk, List<Long> lines, Consumer<List<E>> insert, Consumer<List<E>> committed,
+                           Report report) {
+        if (chunk.isEmpty()) {
+            return;
+        }
+        try {
+            insert.accept(chunk);
+            report.imported += chunk.size();
+            committed.accept(chunk);
+        } catch (DataAccessException e) {
+            log.error("Failed to write the import chunk of lines {} to {}", lines.getFirst(), lines.getLast(), e);
+            lines.forEach(line -> report.reject(line, "could not be written: " + e.getMostSpecificCause().getMessage()));
+        }
+        chunk.clear();
+        lines.clear();
+    }
+
+    private <T> RowReader<T> reader(Reader body, Format format, Class<T> rowType) throws IOException {
+        return format == Format.CSV ? csvReader(body, rowType) : ndjsonReader(body, rowType);
+    }
+
+    /**
+     * One JSON object per line; a malformed line is rejected on its own.
+     */
+    private <T> RowReader<T> ndjsonReader(Reader body, Class<T> rowType) {
+        BufferedReader lines = new BufferedReader(body);
+        ObjectReader rowReader = objectMapper.readerFor(rowType);
+        return new RowReader<>() {
+            private long line;
+
+            @Override
+            public Row<T> next() throws IOException {
+                String text;
+                do {
+                    text = lines.readLine();
+                    line++;
+                } while (text != null && text.isBlank());
+                if (text == null) {
+                    return null;
+                }
+                try {
+                    return new Row<>(line, rowReader.readValue(text), null);
+                } catch (JsonProcessingException e) {
+                    return new Row<>(line, null, e.getOriginalMessage());
+                }
+            }
+
+            @Override
+            public void close() throws IOException {
+                lines.close();
+            }
+        };
+    }
+
+    /**
+     * CSV records named by the header line; a record whose values cannot be bound is
+     * rejected on its own, a syntax error ends the import.
+     */
+    private <T> RowReader<T> csvReader(Reader body, Class<T> rowType) throws IOException {
+        MappingIterator<T> records = csvMapper.readerFor(rowType)
+                .with(CsvSchema.emptySchema().withHeader())
+                .readValues(body);
+        return new RowReader<>() {
+            @Override
+            public Row<T> next() throws IOException {
+                if (!records.hasNextValue()) {
+                    return null;
+                }
+                long line = records.getCurrentLocation().getLineNr();
+                try {
+                    return new Row<>(line, records.nextValue(), null);
+                } catch (JsonProcessingException e) {
+                    return new Row<>(line, null, e.getOriginalMessage());
+                }
+            }
+
+            @Override
+            public void close() throws IOException {
+                records.close();
+            }
+        };
+    }
+
+    /** Counts of an import in progress, with the first rejected rows. */
+    private final class Report {
+        private long imported;
+        private long rejected;
+        private long lastLine;
+        private final List<ImportErrorDto> errors = new ArrayList<>();
+
+        private void reject(long line, String error) {
+            rejected++;
+            if (errors.size() < maxReportedErrors) {
+                errors.add(new ImportErrorDto(line, error));
+            }
+        }
+    }
+}
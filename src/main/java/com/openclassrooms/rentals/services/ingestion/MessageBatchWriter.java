@@ -0,0 +1,193 @@
+package com.openclassrooms.rentals.services.ingestion;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+
+import com.openclassrooms.rentals.models.MessageEntity;
+import com.openclassrooms.rentals.repositorys.MessageRepository;
+import com.openclassrooms.rentals.services.map.MessageMapper;
+import com.openclassrooms.rentals.services.notification.MessageSavedEvent;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Write-behind writer of the messages.
+ * <p>
+ * Accepted messages are put in a bounded queue, and a single writer thread inserts
+ * them by batches of at most {@code pages.messages.batchSize} messages through
+ * {@link MessageRepository#insertBatch}, which persists and flushes them as Hibernate
+ * JDBC batches. A partial batch is flushed once its oldest message has waited
+ * {@code pages.messages.flushIntervalMs}. When the queue is full, new messages are
+ * refused rather than piling up in memory. A {@link MessageSavedEvent} is published
+ * for each message of a committed batch.
+ * </p>
+ * <p>
+ * When the application stops, new messages are refused and the queue is drained.
+ * Submissions hold a read lock that stopping takes for writing, so that no message is
+ * queued once the writer may have drained the queue for the last time; the messages
+ * still queued if the writer does not finish in time are failed.
+ * </p>
+ */
+@Component
+@ConditionalOnProperty(name = "pages.messages.ingestion", havingValue = "write-behind")
+@Slf4j
+public class MessageBatchWriter {
+
+    /** Longest wait for a batch to fill before checking whether the writer is stopping. */
+    private static final long STOP_CHECK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private record Pending(MessageEntity message, CompletableFuture<Void> written) {
+    }
+
+    private final MessageRepository messageRepo;
+    private final MessageMapper messageMapper;
+    private final ApplicationEventPublisher eventPublisher;
+    private final BlockingQueue<Pending> queue;
+    private final int batchSize;
+    private final long flushIntervalNanos;
+    private final Counter rejected;
+    private final Counter written;
+    private final Counter failed;
+    private final Timer flushes;
+    private final Thread writer = Thread.ofPlatform().name("message-writer").daemon().unstarted(this::run);
+    private final ReadWriteLock submissions = new ReentrantReadWriteLock();
+    private volatile boolean running = true;
+
+    public MessageBatchWriter(MessageRepository messageRepo, MessageMapper messageMapper,
+                              ApplicationEventPublisher eventPublisher, MeterRegistry registry,
+                              @Value("${pages.messages.queueCapacity:10000}") int queueCapacity,
+                              @Value("${pages.messages.batchSize:500}") int batchSize,
+                              @Value("${pages.messages.flushIntervalMs:50}") long flushIntervalMs) {
+        this.messageRepo = messageRepo;
+        this.messageMapper = messageMapper;
+        this.eventPublisher = eventPublisher;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.batchSize = batchSize;
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+        this.rejected = registry.counter("pages.messages.ingestion", "result", "rejected");
+        this.written = registry.counter("pages.messages.ingestion", "result", "written");
+        this.failed = registry.counter("pages.messages.ingestion", "result", "failed");
+        this.flushes = registry.timer("pages.messages.flush");
+        registry.gauge("pages.messages.queue.size", queue, BlockingQueue::size);
+    }
+
+    @PostConstruct
+    public void start() {
+        writer.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        submissions.writeLock().lock();
+        try {
+            running = false;
+        } finally {
+            submissions.writeLock().unlock();
+        }
+        // Not interrupted, so that a batch being written is not cut short.
+        writer.join(TimeUnit.SECONDS.toMillis(30));
+        List<Pending> leftovers = new ArrayList<>();
+        queue.drainTo(leftovers);
+        if (!leftovers.isEmpty()) {
+            log.error("{} queued messages were not written before the message writer stopped", leftovers.size());
+            failed.increment(leftovers.size());
+            IllegalStateException stopped = new IllegalStateException("Message writer stopped");
+            leftovers.forEach(p -> p.written().completeExceptionally(stopped));
+        }
+    }
+
+    /**
+     * Queues a message for writing.
+     *
+     * @param message the message to write
+     * @return a future completed once the batch holding the message is committed, or
+     *         {@code null} when the queue is full or the writer is stopped
+     */
+    public CompletableFuture<Void> submit(MessageEntity message) {
+        Pending pending = new Pending(message, new CompletableFuture<>());
+        submissions.readLock().lock();
+        try {
+            if (!running || !queue.offer(pending)) {
+                rejected.increment();
+                return null;
+            }
+        } finally {
+            submissions.readLock().unlock();
+        }
+        return pending.written();
+    }
+
+    private void run() {
+        List<Pending> batch = new ArrayList<>(batchSize);
+        while (running) {
+            try {
+                Pending first = queue.poll(1, TimeUnit.SECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + flushIntervalNanos;
+                while (running && batch.size() < batchSize) {
+                    queue.drainTo(batch, batchSize - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= batchSize || remaining <= 0) {
+                        break;
+                    }
+                    Pending next = queue.poll(Math.min(remaining, STOP_CHECK_NANOS), TimeUnit.NANOSECONDS);
+                    if (next != null) {
+                        batch.add(next);
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                running = false;
+            }
+            flush(batch);
+        }
+        while (queue.drainTo(batch, batchSize) > 0) {
+            flush(batch);
+        }
+        log.info("Message writer stopped");
+    }
+
+    private void flush(List<Pending> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            flushes.record(() -> messageRepo.insertBatch(batch.stream().map(Pending::message).toList()));
+            written.increment(batch.size());
+            batch.forEach(p -> p.written().complete(null));
+        } catch (RuntimeException e) {
+            failed.increment(batch.size());
+            log.error("Failed to write a batch of {} messages", batch.size(), e);
+            batch.forEach(p -> p.written().completeExceptionally(e));
+            batch.clear();
+            return;
+        }
+        for (Pending pending : batch) {
+            try {
+                eventPublisher.publishEvent(new MessageSavedEvent(messageMapper.toDto(pending.message())));
+            } catch (RuntimeException e) {
+                log.warn("Saved message event could not be published: {}", e.getMessage());
+            }
+        }
+        batch.clear();
+    }
+}
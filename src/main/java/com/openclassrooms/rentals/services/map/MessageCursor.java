@@ -0,0 +1,47 @@
+package com.openclassrooms.rentals.services.map;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+
+import com.openclassrooms.rentals.dto.MessageDto;
+
+/**
+ * Position in a list of messages sorted by {@code created_at} then {@code id}, both
+ * descending. The cursor is exchanged with the clients as an opaque string.
+ *
+ * @param createdAt the creation date of the last message read
+ * @param id the identifier of the last message read
+ */
+public record MessageCursor(LocalDateTime createdAt, Long id) {
+
+    /**
+     * @param message the last message of a page
+     * @return the cursor of the page following {@code message}
+     */
+    public static MessageCursor after(MessageDto message) {
+        return new MessageCursor(message.getCreatedAt(), message.getId());
+    }
+
+    /**
+     * @param cursor a cursor previously returned by {@link #encode()}
+     * @return the decoded cursor
+     * @throws IllegalArgumentException if the cursor is malformed
+     */
+    public static MessageCursor decode(String cursor) {
+        try {
+            String value = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = value.lastIndexOf('|');
+            return new MessageCursor(LocalDateTime.parse(value.substring(0, separator)),
+                    Long.valueOf(value.substring(separator + 1)));
+        } catch (DateTimeParseException | IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Invalid message cursor: " + cursor, e);
+        }
+    }
+
+    public String encode() {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString((createdAt + "|" + id).getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -1,15 +1,32 @@
 package com.openclassrooms.rentals.services.map;
 
 
+import java.time.LocalDateTime;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import com.openclassrooms.rentals.dto.MessageDto;
 import com.openclassrooms.rentals.dto.MessageRequestDto;
 import com.openclassrooms.rentals.models.MessageEntity;
 import com.openclassrooms.rentals.repositorys.RentalRepository;
 import com.openclassrooms.rentals.repositorys.UserRepository;
 
+/**
+ * Maps message requests to {@link MessageEntity}.
+ * <p>
+ * The user and the rental of a message are only checked for existence and set as
+ * references, without loading their rows. Users and rentals are never deleted and a
+ * rental never changes owner, so the users found once and the owners of the rentals
+ * found once are remembered: later messages of the same user or on the same rental
+ * need no query at all.
+ * </p>
+ */
 @Service
 public class MessageMapper {
 
@@ -17,21 +34,76 @@ public class MessageMapper {
 
 	private final RentalRepository rentalRepo;
 
-	public MessageMapper(RentalRepository rentalRepo, UserRepository userRepo) {
+	private final int referenceCacheSize;
+
+	private final Set<Long> knownUsers = ConcurrentHashMap.newKeySet();
+
+	private final Map<Long, Long> rentalOwners = new ConcurrentHashMap<>();
+
+	public MessageMapper(RentalRepository rentalRepo, UserRepository userRepo,
+			@Value("${pages.messages.referenceCacheSize:10000}") int referenceCacheSize) {
 		this.userRepo = userRepo;
 		this.rentalRepo = rentalRepo;
+		this.referenceCacheSize = referenceCacheSize;
 	}
 
 	public Optional<MessageEntity> fromRequest(MessageRequestDto messageReq) {
-		return Optional.of(new MessageEntity()).flatMap(m -> userRepo.findById(messageReq.getUserId()).map(u -> {
-			m.setUser(u);
-			return m;
-		})).flatMap(m -> rentalRepo.findById(messageReq.getRentalId()).map(r -> {
-			m.setRental(r);
-			return m;
-		})).map(m -> {
-			m.setMessage(messageReq.getMessage());
-			return m;
+		if (!exists(knownUsers, messageReq.getUserId(), userRepo::existsById)
+				|| findRentalOwner(messageReq.getRentalId()).isEmpty()) {
+			return Optional.empty();
+		}
+		LocalDateTime now = LocalDateTime.now();
+		MessageEntity m = new MessageEntity();
+		m.setUser(userRepo.getReferenceById(messageReq.getUserId()));
+		m.setRental(rentalRepo.getReferenceById(messageReq.getRentalId()));
+		m.setMessage(messageReq.getMessage());
+		m.setCreatedAt(now);
+		m.setUpdatedAt(now);
+		return Optional.of(m);
+	}
+
+	public MessageDto toDto(MessageEntity message) {
+		return new MessageDto(message.getId(), message.getRental().getId(), message.getUser().getId(),
+				message.getMessage(), message.getCreatedAt(), message.getUpdatedAt());
+	}
+
+	/**
+	 * Find the owner of a rental, from the remembered owners when possible.
+	 * @param rentalId the rental identifier
+	 * @return the owner identifier, or {@code Optional.empty()} if the rental does not exist
+	 */
+	public Optional<Long> findRentalOwner(Long rentalId) {
+		if (rentalId == null) {
+			return Optional.empty();
+		}
+		Long ownerId = rentalOwners.get(rentalId);
+		if (ownerId != null) {
+			return Optional.of(ownerId);
+		}
+		Optional<Long> found = rentalRepo.findOwnerId(rentalId);
+		found.ifPresent(owner -> {
+			if (rentalOwners.size() >= referenceCacheSize) {
+				rentalOwners.clear();
+			}
+			rentalOwners.put(rentalId, owner);
 		});
+		return found;
+	}
+
+	private boolean exists(Set<Long> known, Long id, Predicate<Long> lookup) {
+		if (id == null) {
+			return false;
+		}
+		if (known.contains(id)) {
+			return true;
+		}
+		if (!lookup.test(id)) {
+			return false;
+		}
+		if (known.size() >= referenceCacheSize) {
+			known.clear();
+		}
+		known.add(id);
+		return true;
 	}
 }
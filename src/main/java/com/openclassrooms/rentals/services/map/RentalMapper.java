@@ -3,7 +3,6 @@ package com.openclassrooms.rentals.services.map;
 
 import com.openclassrooms.rentals.dto.RentalCreationDto;
 import com.openclassrooms.rentals.dto.RentalDto;
-import com.openclassrooms.rentals.dto.RentalUpdateDto;
 import com.openclassrooms.rentals.models.RentalEntity;
 import com.openclassrooms.rentals.services.StorageService;
 import com.openclassrooms.rentals.services.UserService;
@@ -35,14 +34,6 @@ public Optional<RentalEntity> fromDto(RentalCreationDto rental) {
         });
 }
 
-	public RentalEntity updateFromDto(RentalEntity rental, RentalUpdateDto rentalDto) {
-		rental.setName(rentalDto.getName());
-		rental.setSurface(rentalDto.getSurface());
-		rental.setPrice(rentalDto.getPrice());
-		rental.setDescription(rentalDto.getDescription());
-		return rental;
-	}
-
 	public RentalDto toDto(RentalEntity rental) {
 		RentalDto rentalDto = new RentalDto();
 		rentalDto.setId(rental.getId());
@@ -54,6 +45,7 @@ public Optional<RentalEntity> fromDto(RentalCreationDto rental) {
 		rentalDto.setOwner(rental.getOwner().getId());
 		rentalDto.setCreatedAt(rental.getCreatedAt());
 		rentalDto.setUpdatedAt(rental.getUpdatedAt());
+		rentalDto.setVersion(rental.getVersion());
 		return rentalDto;
 	}
 }
\ No newline at end of file
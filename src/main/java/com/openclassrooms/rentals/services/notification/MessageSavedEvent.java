@@ -0,0 +1,11 @@
+package com.openclassrooms.rentals.services.notification;
+
+import com.openclassrooms.rentals.dto.MessageDto;
+
+/**
+ * Published once a message has been committed to the database.
+ *
+ * @param message the saved message
+ */
+public record MessageSavedEvent(MessageDto message) {
+}
@@ -0,0 +1,205 @@
+package com.openclassrooms.rentals.services.notification;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import com.openclassrooms.rentals.dto.MessageDto;
+import com.openclassrooms.rentals.services.map.MessageMapper;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Fan-out of the saved messages to the Server-Sent Events streams of the rental owners.
+ * <p>
+ * Streams are async servlet responses, so an idle stream holds no thread. Each stream
+ * has its own bounded buffer, drained on a virtual thread only while it holds messages:
+ * a slow client never delays the others nor the thread saving the message. When the
+ * buffer of a stream is full, the new message is dropped for that stream
+ * ({@code pages.messages.stream.overflow=drop}) or the stream is closed
+ * ({@code disconnect}); in both cases the client can catch up through the paginated
+ * message reads. A comment is sent periodically on every stream to detect the clients
+ * that went away.
+ * </p>
+ */
+@Component
+@Slf4j
+public class MessageStreamHub {
+
+    private static final class Subscriber {
+        private final Long ownerId;
+        private final SseEmitter emitter;
+        private final BlockingQueue<MessageDto> buffer;
+        private final AtomicBoolean draining = new AtomicBoolean();
+        private final AtomicBoolean closed = new AtomicBoolean();
+        private volatile boolean heartbeatDue;
+
+        private Subscriber(Long ownerId, SseEmitter emitter, int bufferSize) {
+            this.ownerId = ownerId;
+            this.emitter = emitter;
+            this.buffer = new ArrayBlockingQueue<>(bufferSize);
+        }
+    }
+
+    private final MessageMapper messageMapper;
+    private final Map<Long, Set<Subscriber>> subscribers = new ConcurrentHashMap<>();
+    private final AtomicInteger connections = new AtomicInteger();
+    private final ExecutorService senders = Executors.newVirtualThreadPerTaskExecutor();
+    private final int bufferSize;
+    private final long timeoutMs;
+    private final int maxConnections;
+    private final boolean disconnectOnOverflow;
+    private final Counter dropped;
+    private final Counter disconnected;
+
+    public MessageStreamHub(MessageMapper messageMapper, MeterRegistry registry,
+                            @Value("${pages.messages.stream.bufferSize:256}") int bufferSize,
+                            @Value("${pages.messages.stream.timeoutMs:1800000}") long timeoutMs,
+                            @Value("${pages.messages.stream.maxConnections:10000}") int maxConnections,
+                            @Value("${pages.messages.stream.overflow:disconnect}") String overflow) {
+        this.messageMapper = messageMapper;
+        this.bufferSize = bufferSize;
+        this.timeoutMs = timeoutMs;
+        this.maxConnections = maxConnections;
+        this.disconnectOnOverflow = !"drop".equalsIgnoreCase(overflow);
+        this.dropped = registry.counter("pages.messages.stream.dropped");
+        this.disconnected = registry.counter("pages.messages.stream.overflows.disconnected");
+        registry.gauge("pages.messages.stream.connections", connections);
+    }
+
+    /**
+     * Opens a stream of the messages sent about the rentals of an owner.
+     *
+     * @param ownerId the owner identifier
+     * @return the stream, or {@code Optional.empty()} when too many streams are open
+     */
+    public Optional<SseEmitter> subscribe(Long ownerId) {
+        if (connections.incrementAndGet() > maxConnections) {
+            connections.decrementAndGet();
+            return Optional.empty();
+        }
+        Subscriber subscriber = new Subscriber(ownerId, new SseEmitter(timeoutMs), bufferSize);
+        subscriber.emitter.onCompletion(() -> remove(subscriber));
+        subscriber.emitter.onTimeout(() -> close(subscriber));
+        subscriber.emitter.onError(e -> remove(subscriber));
+        subscribers.compute(ownerId, (id, owned) -> {
+            Set<Subscriber> updated = owned == null ? ConcurrentHashMap.newKeySet() : owned;
+            updated.add(subscriber);
+            return updated;
+        });
+        try {
+            // Sent right away so that the client sees the stream as open.
+            subscriber.emitter.send(SseEmitter.event().comment("connected"));
+        } catch (IOException e) {
+            close(subscriber);
+        }
+        log.debug("Message stream opened for owner {}", ownerId);
+        return Optional.of(subscriber.emitter);
+    }
+
+    /**
+     * Pushes a saved message to the streams of the owner of its rental. Runs once the
+     * message is committed, on the thread that saved it.
+     *
+     * @param event the saved message
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onMessageSaved(MessageSavedEvent event) {
+        if (subscribers.isEmpty()) {
+            return;
+        }
+        MessageDto message = event.message();
+        messageMapper.findRentalOwner(message.getRentalId())
+                .map(subscribers::get)
+                .ifPresent(owned -> owned.forEach(subscriber -> {
+                    if (subscriber.buffer.offer(message)) {
+                        schedule(subscriber);
+                    } else if (disconnectOnOverflow) {
+                        disconnected.increment();
+                        log.debug("Message stream of owner {} is too slow, closing it", subscriber.ownerId);
+                        close(subscriber);
+                    } else {
+                        dropped.increment();
+                    }
+                }));
+    }
+
+    @Scheduled(fixedDelayString = "${pages.messages.stream.heartbeatMs:30000}")
+    public void heartbeat() {
+        subscribers.values().forEach(owned -> owned.forEach(subscriber -> {
+            subscriber.heartbeatDue = true;
+            schedule(subscriber);
+        }));
+    }
+
+    @PreDestroy
+    public void close() {
+        subscribers.values().forEach(owned -> owned.forEach(this::close));
+        senders.shutdown();
+    }
+
+    private void schedule(Subscriber subscriber) {
+        if (subscriber.draining.compareAndSet(false, true)) {
+            senders.execute(() -> drain(subscriber));
+        }
+    }
+
+    private void drain(Subscriber subscriber) {
+        try {
+            if (subscriber.heartbeatDue) {
+                subscriber.heartbeatDue = false;
+                subscriber.emitter.send(SseEmitter.event().comment("heartbeat"));
+            }
+            MessageDto message;
+            while ((message = subscriber.buffer.poll()) != null) {
+                SseEmitter.SseEventBuilder event = SseEmitter.event().name("message").data(message, MediaType.APPLICATION_JSON);
+                if (message.getId() != null) {
+                    event.id(message.getId().toString());
+                }
+                subscriber.emitter.send(event);
+            }
+        } catch (IOException | IllegalStateException e) {
+            log.debug("Message stream of owner {} is gone: {}", subscriber.ownerId, e.getMessage());
+            close(subscriber);
+        } finally {
+            subscriber.draining.set(false);
+        }
+        if (!subscriber.closed.get() && (!subscriber.buffer.isEmpty() || subscriber.heartbeatDue)) {
+            schedule(subscriber);
+        }
+    }
+
+    private void close(Subscriber subscriber) {
+        remove(subscriber);
+        subscriber.emitter.complete();
+    }
+
+    private void remove(Subscriber subscriber) {
+        if (subscriber.closed.compareAndSet(false, true)) {
+            connections.decrementAndGet();
+            subscribers.computeIfPresent(subscriber.ownerId, (id, owned) -> {
+                owned.remove(subscriber);
+                return owned.isEmpty() ? null : owned;
+            });
+            subscriber.buffer.clear();
+        }
+    }
+}
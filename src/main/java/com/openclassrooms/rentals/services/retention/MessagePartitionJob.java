@@ -0,0 +1,261 @@
+package com.openclassrooms.rentals.services.retention;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.openclassrooms.rentals.dto.MessageDto;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Maintenance of the monthly partitions of the {@code messages} table (MySQL).
+ * <p>
+ * The table is partitioned by {@code db/messages-partitioning.sql}. Every day, and once
+ * at startup, this job:
+ * </p>
+ * <ul>
+ *   <li>splits the catch-all {@code pmax} partition so that the current month and the
+ *       {@code pages.messages.partitioning.monthsAhead} following ones have their own
+ *       partition;</li>
+ *   <li>exports every partition entirely older than {@code pages.messages.partitioning.retentionMonths}
+ *       months to {@code <archiveDir>/messages-<partition>.ndjson.gz}, one message per line,
+ *       then drops it.</li>
+ * </ul>
+ * <p>
+ * Dropping a partition is a metadata change, unlike deleting its rows. The message
+ * queries are not aware of the partitions and are not bounded below on {@code created_at}:
+ * the first page of a paginated read looks up the index of every partition, the following
+ * ones skip the partitions newer than their cursor.
+ * </p>
+ * <p>
+ * Several instances of the application may run the job at the same time. The maintenance
+ * is guarded by the named lock {@value #LOCK_NAME} of the database, taken without waiting
+ * on a connection held for the whole run: the instances that do not get it skip the run. The
+ * lock goes with its connection, should the instance holding it die.
+ * </p>
+ */
+@Component
+@ConditionalOnProperty(name = "pages.messages.partitioning.enabled", havingValue = "true")
+@Slf4j
+public class MessagePartitionJob {
+
+    private static final String LOCK_NAME = "pages.messages.partitioning";
+
+    private static final String CATCH_ALL = "pmax";
+    private static final DateTimeFormatter PARTITION_NAME = DateTimeFormatter.ofPattern("'p'yyyyMM");
+    private static final DateTimeFormatter BOUNDARY = DateTimeFormatter.ofPattern("yyyy-MM-01 00:00:00");
+
+    /**
+     * A partition of the messages table.
+     *
+     * @param name the partition name
+     * @param upperBound the exclusive upper bound of {@code UNIX_TIMESTAMP(created_at)},
+     *        {@code null} for {@code MAXVALUE}
+     */
+    private record Partition(String name, Long upperBound) {
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final JdbcTemplate streamingJdbcTemplate;
+    private final ObjectMapper objectMapper;
+    private final Path archiveDir;
+    private final int monthsAhead;
+    private final int retentionMonths;
+    private final Counter archivedRows;
+
+    public MessagePartitionJob(DataSource dataSource, ObjectMapper objectMapper, MeterRegistry registry,
+                               @Value("${pages.messages.partitioning.archiveDir:archive/messages}") String archiveDir,
+                               @Value("${pages.messages.partitioning.monthsAhead:3}") int monthsAhead,
+                               @Value("${pages.messages.partitioning.retentionMonths:12}") int retentionMonths) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        // MySQL Connector/J streams the rows one by one with this fetch size, instead of
+        // loading the whole partition in memory.
+        this.streamingJdbcTemplate = new JdbcTemplate(dataSource);
+        this.streamingJdbcTemplate.setFetchSize(Integer.MIN_VALUE);
+        this.objectMapper = objectMapper;
+        this.archiveDir = Paths.get(archiveDir);
+        this.monthsAhead = monthsAhead;
+        this.retentionMonths = retentionMonths;
+        this.archivedRows = registry.counter("pages.messages.archived.rows");
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onStartup() {
+        run();
+    }
+
+    @Scheduled(cron = "${pages.messages.partitioning.cron:0 30 3 * * *}")
+    public synchronized void run() {
+        try {
+            jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+                if (!lock(connection)) {
+                    log.info("Message partition maintenance already running on another instance, skipped");
+                    return null;
+                }
+                try {
+                    maintain();
+                } finally {
+                    unlock(connection);
+                }
+                return null;
+            });
+        } catch (DataAccessException e) {
+            log.error("Message partition maintenance failed", e);
+        }
+    }
+
+    private void maintain() {
+        try {
+            List<Partition> partitions = partitions();
+            if (partitions.stream().noneMatch(p -> CATCH_ALL.equals(p.name()))) {
+                log.warn("Table messages has no {} partition, run db/messages-partitioning.sql to partition it", CATCH_ALL);
+                return;
+            }
+            rollover(partitions);
+            if (retentionMonths > 0) {
+                archive(partitions());
+            }
+        } catch (DataAccessException | IOException | UncheckedIOException e) {
+            log.error("Message partition maintenance failed", e);
+        }
+    }
+
+    /**
+     * Takes the named lock of the maintenance, without waiting.
+     *
+     * @return {@code true} if this connection now holds it
+     */
+    private static boolean lock(Connection connection) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("SELECT GET_LOCK(?, 0)")) {
+            statement.setString(1, LOCK_NAME);
+            try (ResultSet rs = statement.executeQuery()) {
+                return rs.next() && rs.getInt(1) == 1;
+            }
+        }
+    }
+
+    private static void unlock(Connection connection) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("SELECT RELEASE_LOCK(?)")) {
+            statement.setString(1, LOCK_NAME);
+            statement.executeQuery().close();
+        }
+    }
+
+    private void rollover(List<Partition> partitions) {
+        long highestBound = partitions.stream()
+                .filter(p -> p.upperBound() != null)
+                .mapToLong(Partition::upperBound)
+                .max().orElse(Long.MIN_VALUE);
+        YearMonth current = YearMonth.now();
+        for (int i = 0; i <= monthsAhead; i++) {
+            YearMonth month = current.plusMonths(i);
+            long bound = epochSecond(month.plusMonths(1));
+            if (bound <= highestBound) {
+                continue;
+            }
+            String name = month.format(PARTITION_NAME);
+            jdbcTemplate.execute("ALTER TABLE messages REORGANIZE PARTITION " + CATCH_ALL + " INTO ("
+                    + "PARTITION " + name + " VALUES LESS THAN (" + bound + "), "
+                    + "PARTITION " + CATCH_ALL + " VALUES LESS THAN MAXVALUE)");
+            highestBound = bound;
+            log.info("Partition {} added to table messages", name);
+        }
+    }
+
+    private void archive(List<Partition> partitions) throws IOException {
+        long cutoff = epochSecond(YearMonth.now().minusMonths(retentionMonths));
+        for (Partition partition : partitions) {
+            if (partition.upperBound() != null && partition.upperBound() <= cutoff) {
+                long rows = export(partition);
+                jdbcTemplate.execute("ALTER TABLE messages DROP PARTITION " + partition.name());
+                archivedRows.increment(rows);
+                log.info("Partition {} of table messages archived ({} messages) and dropped", partition.name(), rows);
+            }
+        }
+    }
+
+    /**
+     * Writes the messages of a partition to a compressed NDJSON file. The file only gets
+     * its final name once complete, so a partition is never dropped with a partial export.
+     */
+    private long export(Partition partition) throws IOException {
+        Files.createDirectories(archiveDir);
+        Path target = archiveDir.resolve("messages-" + partition.name() + ".ndjson.gz");
+        Path partial = archiveDir.resolve(target.getFileName() + ".part");
+        AtomicLong rows = new AtomicLong();
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(
+                new GZIPOutputStream(Files.newOutputStream(partial)), StandardCharsets.UTF_8))) {
+            streamingJdbcTemplate.query(
+                    "SELECT id, rental_id, user_id, message, created_at, updated_at FROM messages PARTITION ("
+                            + partition.name() + ") ORDER BY id",
+                    rs -> {
+                        MessageDto message = new MessageDto(rs.getLong("id"), rs.getLong("rental_id"),
+                                rs.getLong("user_id"), rs.getString("message"),
+                                rs.getObject("created_at", LocalDateTime.class),
+                                rs.getObject("updated_at", LocalDateTime.class));
+                        try {
+                            out.write(objectMapper.writeValueAsString(message));
+                            out.write('\n');
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                        rows.incrementAndGet();
+                    });
+        }
+        Files.move(partial, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return rows.get();
+    }
+
+    private List<Partition> partitions() {
+        return jdbcTemplate.query(
+                "SELECT PARTITION_NAME, PARTITION_DESCRIPTION FROM information_schema.PARTITIONS "
+                        + "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = 'messages' AND PARTITION_NAME IS NOT NULL "
+                        + "ORDER BY PARTITION_ORDINAL_POSITION",
+                (rs, row) -> {
+                    String bound = rs.getString("PARTITION_DESCRIPTION");
+                    return new Partition(rs.getString("PARTITION_NAME"),
+                            "MAXVALUE".equalsIgnoreCase(bound) ? null : Long.valueOf(bound));
+                });
+    }
+
+    /**
+     * Converts the first instant of a month with the MySQL session time zone, the one
+     * used by {@code UNIX_TIMESTAMP(created_at)} in the partitioning function.
+     */
+    private long epochSecond(YearMonth month) {
+        return jdbcTemplate.queryForObject("SELECT UNIX_TIMESTAMP(?)", Long.class, month.atDay(1).format(BOUNDARY));
+    }
+}
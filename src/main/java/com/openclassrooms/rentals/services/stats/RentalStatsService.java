@@ -0,0 +1,208 @@
+package com.openclassrooms.rentals.services.stats;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.access.AccessDeniedException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.openclassrooms.rentals.dto.RentalStatsDto;
+import com.openclassrooms.rentals.repositorys.RentalRepository;
+import com.openclassrooms.rentals.services.UserService;
+import com.openclassrooms.rentals.services.notification.MessageSavedEvent;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Per-rental counters of the messages received and of the detail views.
+ * <p>
+ * Counting happens in memory, on {@link LongAdder} cells: concurrent increments of
+ * the same rental spread over several cells instead of contending on one. Every
+ * {@code pages.rentalStats.flushIntervalMs} the counted deltas are added to the
+ * {@code rental_stats} table with one batch of upserts, and withdrawn from the cells.
+ * The statistics read add the deltas not flushed yet to the stored values; while a
+ * flush is being committed they may briefly lag behind.
+ * </p>
+ * <p>
+ * The cells of a rental with nothing left to flush are removed, and created again on
+ * the next increment, so that only the rentals active since the last flush are kept
+ * and walked. An increment made on cells just removed is handed over to the new ones.
+ * </p>
+ * <p>
+ * Messages are counted once committed, whatever the message ingestion mode.
+ * </p>
+ */
+@Service
+@Slf4j
+public class RentalStatsService {
+
+    private static final String UPSERT = "INSERT INTO rental_stats (rental_id, messages, views) VALUES (?, ?, ?) "
+            + "ON DUPLICATE KEY UPDATE messages = messages + VALUES(messages), views = views + VALUES(views)";
+
+    private static final class Cells {
+        private final LongAdder messages = new LongAdder();
+        private final LongAdder views = new LongAdder();
+        /** Set, under the lock of the cells, once they are removed from the counters. */
+        private volatile boolean retired;
+    }
+
+    private record Delta(Long rentalId, long messages, long views) {
+    }
+
+    private final Map<Long, Cells> counters = new ConcurrentHashMap<>();
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final RentalRepository rentalRepo;
+    private final UserService userSrvc;
+    private final Timer flushes;
+
+    public RentalStatsService(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                              RentalRepository rentalRepo, UserService userSrvc, MeterRegistry registry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.rentalRepo = rentalRepo;
+        this.userSrvc = userSrvc;
+        this.flushes = registry.timer("pages.rental.stats.flush");
+        registry.gaugeMapSize("pages.rental.stats.counters", List.of(), counters);
+    }
+
+    public void recordView(Long rentalId) {
+        Cells cells = cells(rentalId);
+        cells.views.increment();
+        if (cells.retired) {
+            handOver(rentalId, cells);
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onMessageSaved(MessageSavedEvent event) {
+        Long rentalId = event.message().getRentalId();
+        Cells cells = cells(rentalId);
+        cells.messages.increment();
+        if (cells.retired) {
+            handOver(rentalId, cells);
+        }
+    }
+
+    /**
+     * Read the statistics of a rental.
+     * @param rentalId the rental identifier
+     * @return the statistics, or {@code Optional.empty()} if the rental does not exist
+     * @throws AccessDeniedException if the authenticated user does not own the rental
+     */
+    public Optional<RentalStatsDto> findByRental(Long rentalId) {
+        return rentalRepo.findOwnerId(rentalId).map(ownerId -> {
+            if (!userSrvc.getCurrentUserId().map(ownerId::equals).orElse(false)) {
+                throw new AccessDeniedException("Statistics of rental " + rentalId + " are only readable by its owner");
+            }
+            RentalStatsDto stats = jdbcTemplate.query(
+                    "SELECT messages, views FROM rental_stats WHERE rental_id = ?",
+                    (rs, row) -> new RentalStatsDto(rentalId, rs.getLong("messages"), rs.getLong("views")),
+                    rentalId).stream().findFirst().orElse(new RentalStatsDto(rentalId, 0, 0));
+            Cells pending = counters.get(rentalId);
+            if (pending != null) {
+                stats.setMessages(stats.getMessages() + pending.messages.sum());
+                stats.setViews(stats.getViews() + pending.views.sum());
+            }
+            return stats;
+        });
+    }
+
+    /**
+     * Adds the counted deltas to the {@code rental_stats} table. A delta is withdrawn
+     * from its cells by subtracting it, so that the increments made meanwhile are kept
+     * for the next flush; it is put back if the batch, run in one transaction, fails.
+     * The cells found empty are removed.
+     */
+    @Scheduled(fixedDelayString = "${pages.rentalStats.flushIntervalMs:5000}")
+    @PreDestroy
+    public synchronized void flush() {
+        List<Delta> deltas = new ArrayList<>();
+        counters.forEach((rentalId, cells) -> {
+            long messages = cells.messages.sum();
+            long views = cells.views.sum();
+            if (messages != 0 || views != 0) {
+                cells.messages.add(-messages);
+                cells.views.add(-views);
+                deltas.add(new Delta(rentalId, messages, views));
+            } else {
+                retire(rentalId, cells);
+            }
+        });
+        if (deltas.isEmpty()) {
+            return;
+        }
+        try {
+            flushes.record(() -> transactionTemplate.executeWithoutResult(status ->
+                    jdbcTemplate.batchUpdate(UPSERT, deltas, deltas.size(), (ps, delta) -> {
+                        ps.setLong(1, delta.rentalId());
+                        ps.setLong(2, delta.messages());
+                        ps.setLong(3, delta.views());
+                    })));
+        } catch (DataAccessException e) {
+            log.error("Failed to flush the statistics of {} rentals, keeping them for the next flush", deltas.size(), e);
+            deltas.forEach(delta -> {
+                Cells cells = cells(delta.rentalId());
+                cells.messages.add(delta.messages());
+                cells.views.add(delta.views());
+            });
+        }
+    }
+
+    private Cells cells(Long rentalId) {
+        return counters.computeIfAbsent(rentalId, id -> new Cells());
+    }
+
+    /**
+     * Removes the cells of a rental. The increments that were made on them before they were
+     * marked retired are handed over here; the later ones by their callers.
+     */
+    private void retire(Long rentalId, Cells cells) {
+        synchronized (cells) {
+            cells.retired = true;
+            counters.remove(rentalId, cells);
+        }
+        handOver(rentalId, cells);
+    }
+
+    /**
+     * Moves what retired cells counted to the current cells of the rental. Under the lock of
+     * the retired cells, each call withdraws exactly what it moves, so that an increment is
+     * moved once whichever call sees it.
+     */
+    private void handOver(Long rentalId, Cells retired) {
+        Cells from = retired;
+        while (true) {
+            Cells to;
+            synchronized (from) {
+                long messages = from.messages.sum();
+                long views = from.views.sum();
+                if (messages == 0 && views == 0) {
+                    return;
+                }
+                from.messages.add(-messages);
+                from.views.add(-views);
+                to = cells(rentalId);
+                to.messages.add(messages);
+                to.views.add(views);
+            }
+            if (!to.retired) {
+                return;
+            }
+            from = to;
+        }
+    }
+}
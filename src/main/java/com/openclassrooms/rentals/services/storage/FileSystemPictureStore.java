@@ -0,0 +1,126 @@
+package com.openclassrooms.rentals.services.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Optional;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Default {@link PictureStore} keeping one directory per rental under
+ * {@code pages.uploadDir}, each picture being a plain file.
+ */
+@Component
+@ConditionalOnProperty(name = "pages.storage.type", havingValue = "filesystem", matchIfMissing = true)
+@Slf4j
+public class FileSystemPictureStore implements PictureStore {
+
+    private final Path rootLocation;
+
+    public FileSystemPictureStore(@Value("${pages.uploadDir}") String uploadDir) {
+        this.rootLocation = Path.of(uploadDir);
+    }
+
+    @PostConstruct
+    public void init() {
+        try {
+            if (!Files.exists(rootLocation)) {
+                Files.createDirectories(rootLocation);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Could not initialize storage", e);
+        }
+    }
+
+    @Override
+    public void write(Long rentalId, String filename, InputStream content, long size) throws IOException {
+        Path rentalFolder = rootLocation.resolve(rentalId.toString());
+        if (!Files.exists(rentalFolder)) {
+            Files.createDirectories(rentalFolder);
+        }
+        Files.copy(content, resolve(rentalFolder, filename), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Renames the staged file into the rental folder, falling back to a copy
+     * when the staging area lives on another file system.
+     */
+    @Override
+    public void promote(Long rentalId, String filename, Path staged, long size) throws IOException {
+        Path rentalFolder = rootLocation.resolve(rentalId.toString());
+        Files.createDirectories(rentalFolder);
+        Path destinationFile = resolve(rentalFolder, filename);
+        try {
+            Files.move(staged, destinationFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(staged, destinationFile, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Deletes the picture file, the rental folder being left to {@link #sweep}
+     * once empty.
+     */
+    @Override
+    public void delete(Long rentalId, String filename) throws IOException {
+        Files.deleteIfExists(resolve(rootLocation.resolve(rentalId.toString()), filename));
+    }
+
+    /**
+     * Deletes the empty rental folders older than {@code maxAgeMillis}.
+     */
+    @Override
+    public void sweep(long maxAgeMillis) {
+        long limit = System.currentTimeMillis() - maxAgeMillis;
+        try (DirectoryStream<Path> folders = Files.newDirectoryStream(rootLocation,
+                p -> Files.isDirectory(p) && p.getFileName().toString().chars().allMatch(Character::isDigit))) {
+            for (Path folder : folders) {
+                if (Files.getLastModifiedTime(folder).toMillis() < limit && isEmpty(folder)) {
+                    Files.deleteIfExists(folder);
+                    log.info("Dossier orphelin supprimé: {}", folder);
+                }
+            }
+        } catch (IOException e) {
+            log.error("Erreur nettoyage des dossiers orphelins: {}", e.getMessage());
+        }
+    }
+
+    @Override
+    public Optional<ByteBuffer> read(Long rentalId, String filename) throws IOException {
+        Path filePath = resolve(rootLocation.resolve(rentalId.toString()), filename);
+        if (!Files.isRegularFile(filePath)) {
+            log.warn("Fichier non trouvé: {}", filePath.toAbsolutePath());
+            return Optional.empty();
+        }
+        try (FileChannel channel = FileChannel.open(filePath, StandardOpenOption.READ)) {
+            return Optional.of(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).asReadOnlyBuffer());
+        }
+    }
+
+    private static boolean isEmpty(Path folder) throws IOException {
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(folder)) {
+            return !entries.iterator().hasNext();
+        }
+    }
+
+    private static Path resolve(Path rentalFolder, String filename) throws IOException {
+        Path filePath = rentalFolder.resolve(filename).normalize();
+        if (!filePath.startsWith(rentalFolder) || filePath.equals(rentalFolder)) {
+            throw new IOException("Invalid picture file name: " + filename);
+        }
+        return filePath;
+    }
+}
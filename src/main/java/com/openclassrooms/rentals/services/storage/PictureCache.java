@@ -0,0 +1,202 @@
+package com.openclassrooms.rentals.services.storage;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * In-memory cache for the most requested rental pictures.
+ * <p>
+ * Picture bytes are kept in direct {@link ByteBuffer}s so the cache does not
+ * add anything to the GC heap. Entries are evicted in least-recently-used
+ * order once the configured total byte budget is reached, and pictures bigger
+ * than the per-entry limit are never cached.
+ * </p>
+ * <p>
+ * A picture read from the store while it is being replaced must not be cached
+ * once the replacement has invalidated it. The reader takes a {@link #stamp}
+ * of the picture before reading, and {@link #put(Long, String, ByteBuffer, long)}
+ * drops the bytes if the picture was invalidated since. Invalidations are counted
+ * per stripe of pictures, so the counts stay bounded; a put only gets dropped
+ * needlessly when another picture of the same stripe was invalidated meanwhile.
+ * </p>
+ * <p>
+ * Hits, misses, evictions, the used bytes and the hit ratio are published as
+ * Micrometer meters under {@code pages.picture.cache.*} and are therefore
+ * available through the actuator metrics endpoint.
+ * </p>
+ */
+@Component
+@Slf4j
+public class PictureCache {
+
+    private static final int INVALIDATION_STRIPES = 1024;
+
+    private final long maxBytes;
+    private final long maxEntryBytes;
+
+    /** Access ordered map, the eldest entry is the least recently used one. */
+    private final LinkedHashMap<String, ByteBuffer> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private long usedBytes;
+
+    /** Invalidations per stripe of keys, see {@link #stamp}. */
+    private final long[] invalidations = new long[INVALIDATION_STRIPES];
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public PictureCache(@Value("${pages.pictureCache.maxBytes:67108864}") long maxBytes,
+                        @Value("${pages.pictureCache.maxEntryBytes:2097152}") long maxEntryBytes,
+                        MeterRegistry registry) {
+        this.maxBytes = maxBytes;
+        this.maxEntryBytes = Math.min(maxEntryBytes, maxBytes);
+
+        FunctionCounter.builder("pages.picture.cache.requests", hits, LongAdder::sum)
+                .tag("result", "hit").register(registry);
+        FunctionCounter.builder("pages.picture.cache.requests", misses, LongAdder::sum)
+                .tag("result", "miss").register(registry);
+        FunctionCounter.builder("pages.picture.cache.evictions", evictions, LongAdder::sum).register(registry);
+        Gauge.builder("pages.picture.cache.hit.ratio", this, PictureCache::hitRatio).register(registry);
+        Gauge.builder("pages.picture.cache.size", this, PictureCache::usedBytes)
+                .baseUnit("bytes").register(registry);
+    }
+
+    /**
+     * Tells whether a picture of the given size may be kept in the cache.
+     *
+     * @param size the picture size in bytes
+     * @return {@code true} if the picture fits the per-entry limit
+     */
+    public boolean accepts(long size) {
+        return size > 0 && size <= maxEntryBytes;
+    }
+
+    /**
+     * Looks a picture up.
+     *
+     * @param rentalId the rental the picture belongs to
+     * @param filename the picture file name
+     * @return a read-only view of the cached bytes, positioned at zero, or
+     *         {@code Optional.empty()} on a miss
+     */
+    public Optional<ByteBuffer> get(Long rentalId, String filename) {
+        ByteBuffer content;
+        synchronized (this) {
+            content = entries.get(key(rentalId, filename));
+        }
+        if (content == null) {
+            misses.increment();
+            return Optional.empty();
+        }
+        hits.increment();
+        return Optional.of(content.asReadOnlyBuffer());
+    }
+
+    /**
+     * Stamps a picture before reading it from the store, for
+     * {@link #put(Long, String, ByteBuffer, long)} to tell whether it was
+     * invalidated during the read.
+     *
+     * @param rentalId the rental the picture belongs to
+     * @param filename the picture file name
+     * @return the stamp of the picture
+     */
+    public synchronized long stamp(Long rentalId, String filename) {
+        return invalidations[stripe(key(rentalId, filename))];
+    }
+
+    /**
+     * Adds a picture to the cache, evicting the least recently used entries
+     * until the byte budget is respected.
+     *
+     * @param rentalId the rental the picture belongs to
+     * @param filename the picture file name
+     * @param content the picture bytes, held in a direct buffer
+     * @return a read-only view of {@code content}, positioned at zero
+     */
+    public ByteBuffer put(Long rentalId, String filename, ByteBuffer content) {
+        return put(rentalId, filename, content, stamp(rentalId, filename));
+    }
+
+    /**
+     * Adds a picture read from the store to the cache, unless it was invalidated
+     * since {@code stamp} was taken: the bytes read may then be the replaced ones.
+     *
+     * @param rentalId the rental the picture belongs to
+     * @param filename the picture file name
+     * @param content the picture bytes, held in a direct buffer
+     * @param stamp the {@link #stamp} taken before reading the picture
+     * @return a read-only view of {@code content}, positioned at zero
+     */
+    public ByteBuffer put(Long rentalId, String filename, ByteBuffer content, long stamp) {
+        int size = content.capacity();
+        if (!accepts(size)) {
+            return content.asReadOnlyBuffer();
+        }
+        String key = key(rentalId, filename);
+        synchronized (this) {
+            if (invalidations[stripe(key)] != stamp) {
+                log.debug("Picture {} invalidated while read, not cached", key);
+                return content.asReadOnlyBuffer();
+            }
+            ByteBuffer previous = entries.put(key, content);
+            if (previous != null) {
+                usedBytes -= previous.capacity();
+            }
+            usedBytes += size;
+            Iterator<Map.Entry<String, ByteBuffer>> eldest = entries.entrySet().iterator();
+            while (usedBytes > maxBytes && eldest.hasNext()) {
+                usedBytes -= eldest.next().getValue().capacity();
+                eldest.remove();
+                evictions.increment();
+            }
+        }
+        return content.asReadOnlyBuffer();
+    }
+
+    /**
+     * Drops a picture from the cache, typically because it has been replaced.
+     *
+     * @param rentalId the rental the picture belongs to
+     * @param filename the picture file name
+     */
+    public synchronized void invalidate(Long rentalId, String filename) {
+        String key = key(rentalId, filename);
+        invalidations[stripe(key)]++;
+        ByteBuffer removed = entries.remove(key);
+        if (removed != null) {
+            usedBytes -= removed.capacity();
+            log.debug("Picture {}/{} invalidated from cache", rentalId, filename);
+        }
+    }
+
+    public double hitRatio() {
+        long hitCount = hits.sum();
+        long total = hitCount + misses.sum();
+        return total == 0 ? 0d : (double) hitCount / total;
+    }
+
+    public synchronized long usedBytes() {
+        return usedBytes;
+    }
+
+    private static String key(Long rentalId, String filename) {
+        return rentalId + "/" + filename;
+    }
+
+    private static int stripe(String key) {
+        return Math.floorMod(key.hashCode(), INVALIDATION_STRIPES);
+    }
+}
@@ -0,0 +1,59 @@
+package com.openclassrooms.rentals.services.storage;
+
+import java.util.HexFormat;
+import java.util.Optional;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Naming rules of the stored pictures.
+ * <p>
+ * A stored picture name embeds a fingerprint of its content, e.g.
+ * {@code house.3fa2c1d90b4e.jpg}. Replacing a picture therefore changes its
+ * URL, which lets the picture responses be cached as immutable.
+ * </p>
+ */
+public final class PictureNames {
+
+    private static final int FINGERPRINT_LENGTH = 12;
+    private static final Pattern FINGERPRINTED = Pattern.compile("^.+\\.([0-9a-f]{" + FINGERPRINT_LENGTH + "})(\\.[A-Za-z0-9]{1,10})?$");
+    private static final Pattern EXTENSION = Pattern.compile("\\.[A-Za-z0-9]{1,10}$");
+
+    private PictureNames() {
+    }
+
+    /**
+     * Builds the stored name of a picture.
+     *
+     * @param originalFilename the name of the uploaded file, possibly with a client path
+     * @param digest the digest of the picture content
+     * @return a file name safe for every storage backend, carrying the content fingerprint
+     *         before the extension
+     */
+    public static String fingerprinted(String originalFilename, byte[] digest) {
+        String name = originalFilename == null ? "" : originalFilename;
+        name = name.substring(Math.max(name.lastIndexOf('/'), name.lastIndexOf('\\')) + 1)
+                .replaceAll("[^A-Za-z0-9._-]", "_");
+
+        Matcher extension = EXTENSION.matcher(name);
+        String suffix = extension.find() ? extension.group().toLowerCase() : "";
+        String base = name.substring(0, name.length() - suffix.length()).replaceAll("^[._]+", "");
+        if (base.isEmpty()) {
+            base = "picture";
+        }
+        String fingerprint = HexFormat.of().formatHex(digest).substring(0, FINGERPRINT_LENGTH);
+        return base + "." + fingerprint + suffix;
+    }
+
+    /**
+     * Extracts the content fingerprint of a stored picture name.
+     *
+     * @param filename the stored picture name
+     * @return the fingerprint, or {@code Optional.empty()} for pictures stored
+     *         before fingerprinting was introduced
+     */
+    public static Optional<String> fingerprint(String filename) {
+        Matcher matcher = FINGERPRINTED.matcher(filename);
+        return matcher.matches() ? Optional.of(matcher.group(1)) : Optional.empty();
+    }
+}
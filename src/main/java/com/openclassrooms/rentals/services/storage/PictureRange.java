@@ -0,0 +1,29 @@
+package com.openclassrooms.rentals.services.storage;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A byte range of a stored picture.
+ *
+ * @param content the bytes of the range, positioned at zero
+ * @param offset the offset of the first byte of the range in the picture
+ * @param totalSize the size of the whole picture
+ */
+public record PictureRange(ByteBuffer content, long offset, long totalSize) {
+
+    /**
+     * Cuts a range out of a whole picture. The range is clamped to the picture
+     * bounds, so an offset past the end gives an empty range.
+     *
+     * @param picture the whole picture bytes
+     * @param offset the offset of the first byte of the range
+     * @param length the maximum number of bytes of the range
+     * @return the range, sharing the bytes of {@code picture}
+     */
+    public static PictureRange slice(ByteBuffer picture, long offset, long length) {
+        int total = picture.remaining();
+        int start = (int) Math.min(offset, total);
+        int end = (int) Math.min(total, start + Math.min(length, (long) total));
+        return new PictureRange(picture.slice(picture.position() + start, end - start), start, total);
+    }
+}
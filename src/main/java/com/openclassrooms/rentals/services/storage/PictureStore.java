@@ -0,0 +1,108 @@
+package com.openclassrooms.rentals.services.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+
+/**
+ * Storage backend for rental pictures.
+ * <p>
+ * {@link com.openclassrooms.rentals.services.StorageService} delegates the
+ * actual persistence of picture bytes to one implementation of this
+ * interface, chosen with the {@code pages.storage.type} property: the local
+ * file system, packed segment files or an S3-compatible object store. Pictures
+ * are addressed by the rental identifier and the picture file name.
+ * </p>
+ */
+public interface PictureStore {
+
+    /**
+     * Stores a picture, replacing any previous picture with the same name.
+     *
+     * @param rentalId the rental the picture belongs to
+     * @param filename the picture file name
+     * @param content the picture bytes
+     * @param size the number of bytes available in {@code content}
+     * @throws IOException if the picture cannot be written
+     */
+    void write(Long rentalId, String filename, InputStream content, long size) throws IOException;
+
+    /**
+     * Moves a staged picture to its final location. The staged file no longer
+     * exists once this method returns normally.
+     *
+     * @param rentalId the rental the picture belongs to
+     * @param filename the picture file name
+     * @param staged the staged picture file
+     * @param size the picture size in bytes
+     * @throws IOException if the picture cannot be written
+     */
+    default void promote(Long rentalId, String filename, Path staged, long size) throws IOException {
+        try (InputStream content = Files.newInputStream(staged)) {
+            write(rentalId, filename, content, size);
+        }
+        Files.delete(staged);
+    }
+
+    /**
+     * Deletes a picture, typically the previous picture of a rental once the
+     * new one is linked. Deleting a missing picture does nothing.
+     *
+     * @param rentalId the rental the picture belongs to
+     * @param filename the picture file name
+     * @throws IOException if the picture cannot be deleted
+     */
+    void delete(Long rentalId, String filename) throws IOException;
+
+    /**
+     * Removes leftovers older than the given age, such as folders created for
+     * pictures that were never written. Called periodically by the staging
+     * sweeper.
+     *
+     * @param maxAgeMillis the minimum age of the leftovers to remove
+     */
+    default void sweep(long maxAgeMillis) {
+    }
+
+    /**
+     * Reads a picture.
+     *
+     * @param rentalId the rental the picture belongs to
+     * @param filename the picture file name
+     * @return a read-only buffer positioned at the start of the picture bytes,
+     *         or {@code Optional.empty()} if there is no such picture
+     * @throws IOException if the picture exists but cannot be read
+     */
+    Optional<ByteBuffer> read(Long rentalId, String filename) throws IOException;
+
+    /**
+     * Reads a byte range of a picture. The default implementation reads the
+     * whole picture and slices it; remote stores override it to only transfer
+     * the requested bytes.
+     *
+     * @param rentalId the rental the picture belongs to
+     * @param filename the picture file name
+     * @param offset the offset of the first byte to read
+     * @param length the maximum number of bytes to read
+     * @return the range, or {@code Optional.empty()} if there is no such picture
+     * @throws IOException if the picture exists but cannot be read
+     */
+    default Optional<PictureRange> readRange(Long rentalId, String filename, long offset, long length)
+            throws IOException {
+        return read(rentalId, filename).map(content -> PictureRange.slice(content, offset, length));
+    }
+
+    /**
+     * Tells whether the buffers returned by {@link #read} are already served
+     * from memory, in which case copying them into the {@link PictureCache}
+     * brings nothing.
+     *
+     * @return {@code true} if reads should bypass the picture cache
+     */
+    default boolean servesFromMemory() {
+        return false;
+    }
+}
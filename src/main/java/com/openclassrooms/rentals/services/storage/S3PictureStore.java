@@ -0,0 +1,214 @@
+package com.openclassrooms.rentals.services.storage;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import software.amazon.awssdk.core.ResponseBytes;
+import software.amazon.awssdk.core.exception.SdkException;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+
+/**
+ * {@link PictureStore} keeping pictures in an S3-compatible object store, so
+ * that several API nodes can share them.
+ * <p>
+ * Pictures are stored under {@code <prefix><rentalId>/<filename>} in the
+ * configured bucket. Pictures larger than {@code pages.storage.s3.partSize} are
+ * sent with a multipart upload: parts are read from the stream one at a time
+ * and uploaded in parallel, at most {@code pages.storage.s3.uploadConcurrency}
+ * parts being in flight, which also bounds the memory used by an upload.
+ * Range reads only transfer the requested bytes.
+ * </p>
+ */
+@Component
+@ConditionalOnProperty(name = "pages.storage.type", havingValue = "s3")
+@Slf4j
+public class S3PictureStore implements PictureStore {
+
+    /** Smallest part size accepted by S3 for every part but the last one. */
+    private static final int MIN_PART_SIZE = 5 * 1024 * 1024;
+
+    private final S3Client s3;
+    private final String bucket;
+    private final String prefix;
+    private final int partSize;
+    private final int uploadConcurrency;
+    private final ExecutorService partUploader = Executors.newVirtualThreadPerTaskExecutor();
+
+    public S3PictureStore(S3Client s3,
+                          @Value("${pages.storage.s3.bucket}") String bucket,
+                          @Value("${pages.storage.s3.prefix:pictures/}") String prefix,
+                          @Value("${pages.storage.s3.partSize:8388608}") int partSize,
+                          @Value("${pages.storage.s3.uploadConcurrency:4}") int uploadConcurrency) {
+        this.s3 = s3;
+        this.bucket = bucket;
+        this.prefix = prefix;
+        this.partSize = Math.max(partSize, MIN_PART_SIZE);
+        this.uploadConcurrency = Math.max(uploadConcurrency, 1);
+    }
+
+    @PreDestroy
+    public void close() {
+        partUploader.shutdown();
+    }
+
+    @Override
+    public void write(Long rentalId, String filename, InputStream content, long size) throws IOException {
+        String key = key(rentalId, filename);
+        if (size <= partSize) {
+            byte[] bytes = content.readNBytes((int) size);
+            try {
+                s3.putObject(b -> b.bucket(bucket).key(key).contentLength((long) bytes.length), body(bytes));
+            } catch (SdkException e) {
+                throw new IOException("Upload failed for " + key, e);
+            }
+        } else {
+            multipartUpload(key, content);
+        }
+    }
+
+    @Override
+    public void delete(Long rentalId, String filename) throws IOException {
+        String key = key(rentalId, filename);
+        try {
+            s3.deleteObject(b -> b.bucket(bucket).key(key));
+        } catch (SdkException e) {
+            throw new IOException("Delete failed for " + key, e);
+        }
+    }
+
+    @Override
+    public Optional<ByteBuffer> read(Long rentalId, String filename) throws IOException {
+        String key = key(rentalId, filename);
+        try {
+            return Optional.of(s3.getObjectAsBytes(b -> b.bucket(bucket).key(key)).asByteBuffer());
+        } catch (NoSuchKeyException e) {
+            return Optional.empty();
+        } catch (SdkException e) {
+            throw new IOException("Download failed for " + key, e);
+        }
+    }
+
+    @Override
+    public Optional<PictureRange> readRange(Long rentalId, String filename, long offset, long length)
+            throws IOException {
+        String key = key(rentalId, filename);
+        String range = "bytes=" + offset + "-" + (length == Long.MAX_VALUE ? "" : offset + length - 1);
+        try {
+            ResponseBytes<GetObjectResponse> bytes = s3.getObjectAsBytes(b -> b.bucket(bucket).key(key).range(range));
+            String contentRange = bytes.response().contentRange();
+            long totalSize = contentRange == null
+                    ? bytes.asByteArrayUnsafe().length
+                    : Long.parseLong(contentRange.substring(contentRange.lastIndexOf('/') + 1));
+            return Optional.of(new PictureRange(bytes.asByteBuffer(), offset, totalSize));
+        } catch (NoSuchKeyException e) {
+            return Optional.empty();
+        } catch (S3Exception e) {
+            if (e.statusCode() != 416) {
+                throw new IOException("Ranged download failed for " + key, e);
+            }
+        } catch (SdkException e) {
+            throw new IOException("Ranged download failed for " + key, e);
+        }
+        try {
+            long totalSize = s3.headObject(b -> b.bucket(bucket).key(key)).contentLength();
+            return Optional.of(new PictureRange(ByteBuffer.allocate(0), totalSize, totalSize));
+        } catch (NoSuchKeyException e) {
+            return Optional.empty();
+        } catch (SdkException e) {
+            throw new IOException("Ranged download failed for " + key, e);
+        }
+    }
+
+    private void multipartUpload(String key, InputStream content) throws IOException {
+        String uploadId;
+        try {
+            uploadId = s3.createMultipartUpload(b -> b.bucket(bucket).key(key)).uploadId();
+        } catch (SdkException e) {
+            throw new IOException("Multipart upload could not start for " + key, e);
+        }
+
+        Semaphore inFlight = new Semaphore(uploadConcurrency);
+        List<Future<CompletedPart>> uploads = new ArrayList<>();
+        try {
+            int partNumber = 1;
+            byte[] part;
+            while ((part = content.readNBytes(partSize)).length > 0) {
+                inFlight.acquire();
+                uploads.add(partUploader.submit(uploadPart(key, uploadId, partNumber++, part, inFlight)));
+            }
+            List<CompletedPart> parts = new ArrayList<>(uploads.size());
+            for (Future<CompletedPart> upload : uploads) {
+                parts.add(upload.get());
+            }
+            s3.completeMultipartUpload(b -> b.bucket(bucket).key(key).uploadId(uploadId)
+                    .multipartUpload(m -> m.parts(parts)));
+            log.debug("Multipart upload of {} completed in {} parts", key, parts.size());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            abort(key, uploadId, uploads);
+            throw new InterruptedIOException("Multipart upload interrupted for " + key);
+        } catch (ExecutionException | SdkException | IOException e) {
+            abort(key, uploadId, uploads);
+            throw new IOException("Multipart upload failed for " + key,
+                    e instanceof ExecutionException ? e.getCause() : e);
+        }
+    }
+
+    private Callable<CompletedPart> uploadPart(String key, String uploadId, int partNumber, byte[] part,
+                                               Semaphore inFlight) {
+        return () -> {
+            try {
+                String eTag = s3.uploadPart(b -> b.bucket(bucket).key(key).uploadId(uploadId)
+                        .partNumber(partNumber).contentLength((long) part.length), body(part)).eTag();
+                return CompletedPart.builder().partNumber(partNumber).eTag(eTag).build();
+            } finally {
+                inFlight.release();
+            }
+        };
+    }
+
+    private void abort(String key, String uploadId, List<Future<CompletedPart>> uploads) {
+        uploads.forEach(upload -> upload.cancel(true));
+        try {
+            s3.abortMultipartUpload(b -> b.bucket(bucket).key(key).uploadId(uploadId));
+        } catch (SdkException e) {
+            log.warn("Multipart upload {} of {} could not be aborted: {}", uploadId, key, e.getMessage());
+        }
+    }
+
+    /**
+     * Wraps bytes in a request body without copying them, the body being
+     * replayable for retries.
+     */
+    private static RequestBody body(byte[] bytes) {
+        return RequestBody.fromContentProvider(() -> new ByteArrayInputStream(bytes), bytes.length,
+                "application/octet-stream");
+    }
+
+    private String key(Long rentalId, String filename) {
+        return prefix + rentalId + "/" + filename;
+    }
+}
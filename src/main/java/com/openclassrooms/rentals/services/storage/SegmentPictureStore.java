@@ -0,0 +1,339 @@
+package com.openclassrooms.rentals.services.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * {@link PictureStore} packing pictures into large append-only segment files.
+ * <p>
+ * Instead of one file per picture, every picture is appended as a record to the
+ * active segment file under {@code pages.storage.segments.dir}. Each record is
+ * laid out as:
+ * </p>
+ * <pre>
+ * | magic (4) | key length (2) | data length (4) | key (UTF-8) | data |
+ * </pre>
+ * <p>
+ * Segments are memory-mapped once, so reads are served as slices of the
+ * mapping without any system call. The offset index is kept in memory and is
+ * rebuilt by scanning the segments at startup; a later record for the same key
+ * supersedes the earlier ones.
+ * </p>
+ * <p>
+ * Deleting a picture appends a tombstone: a record with its own magic number
+ * and no data, which supersedes the earlier records of the key like any other
+ * record, and reads as a missing picture. Tombstones stay in the index until
+ * the compaction of the oldest segment drops them.
+ * </p>
+ * <p>
+ * Replacing or deleting a picture leaves a dead record behind. A background job copies the
+ * live records of sealed segments whose live ratio dropped below
+ * {@code pages.storage.segments.compactionThreshold} to the active segment and
+ * deletes the old segment file.
+ * </p>
+ */
+@Component
+@ConditionalOnProperty(name = "pages.storage.type", havingValue = "segments")
+@Slf4j
+public class SegmentPictureStore implements PictureStore {
+
+    private static final int MAGIC = 0x50494331;
+    private static final int TOMBSTONE_MAGIC = 0x50494330;
+    private static final int HEADER_BYTES = Integer.BYTES + Short.BYTES + Integer.BYTES;
+    private static final String SEGMENT_SUFFIX = ".seg";
+
+    private final Path directory;
+    private final int maxSegmentBytes;
+    private final double compactionThreshold;
+
+    private final ConcurrentHashMap<String, Location> index = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListMap<Integer, Segment> segments = new ConcurrentSkipListMap<>();
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private volatile Segment active;
+
+    public SegmentPictureStore(@Value("${pages.storage.segments.dir:${pages.uploadDir}/segments}") String directory,
+                               @Value("${pages.storage.segments.maxSegmentBytes:268435456}") int maxSegmentBytes,
+                               @Value("${pages.storage.segments.compactionThreshold:0.5}") double compactionThreshold) {
+        this.directory = Path.of(directory);
+        this.maxSegmentBytes = maxSegmentBytes;
+        this.compactionThreshold = compactionThreshold;
+    }
+
+    @PostConstruct
+    public void init() {
+        try {
+            Files.createDirectories(directory);
+            List<Path> files;
+            try (Stream<Path> listing = Files.list(directory)) {
+                files = listing.filter(p -> p.getFileName().toString().endsWith(SEGMENT_SUFFIX)).sorted().toList();
+            }
+            for (Path file : files) {
+                Segment segment = open(segmentId(file));
+                segment.writePosition = scan(segment, this::recover);
+                active = segment;
+            }
+            if (active == null) {
+                active = open(1);
+            }
+            log.info("Segment store ouvert: {} segments, {} images", segments.size(), index.size());
+        } catch (IOException e) {
+            throw new RuntimeException("Could not initialize segment storage", e);
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        for (Segment segment : segments.values()) {
+            segment.map.force();
+            closeQuietly(segment);
+        }
+    }
+
+    @Override
+    public void write(Long rentalId, String filename, InputStream content, long size) throws IOException {
+        if (size > maxSegmentBytes) {
+            throw new IOException("Picture too large for the segment store: " + size + " bytes");
+        }
+        ReadableByteChannel source = Channels.newChannel(content);
+        writeLock.lock();
+        try {
+            append(key(rentalId, filename), false, (int) size, target -> {
+                while (target.hasRemaining()) {
+                    if (source.read(target) < 0) {
+                        throw new IOException("Picture content shorter than its declared size");
+                    }
+                }
+            });
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public void delete(Long rentalId, String filename) throws IOException {
+        String key = key(rentalId, filename);
+        writeLock.lock();
+        try {
+            Location location = index.get(key);
+            if (location != null && !location.tombstone()) {
+                append(key, true, 0, target -> {
+                });
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public Optional<ByteBuffer> read(Long rentalId, String filename) {
+        Location location = index.get(key(rentalId, filename));
+        if (location == null || location.tombstone()) {
+            return Optional.empty();
+        }
+        return Optional.of(location.segment().map.slice(location.dataOffset(), location.length()).asReadOnlyBuffer());
+    }
+
+    @Override
+    public boolean servesFromMemory() {
+        return true;
+    }
+
+    /**
+     * Rewrites the sealed segments carrying too many dead records.
+     */
+    @Scheduled(fixedDelayString = "${pages.storage.segments.compactionIntervalMs:300000}")
+    public void compact() {
+        for (Segment segment : segments.values()) {
+            if (segment == active || segment.writePosition == 0) {
+                continue;
+            }
+            double liveRatio = (double) segment.liveBytes.get() / segment.writePosition;
+            if (liveRatio < compactionThreshold) {
+                try {
+                    compact(segment);
+                } catch (IOException e) {
+                    log.error("Erreur compaction segment {}: {}", segment.id, e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void compact(Segment segment) throws IOException {
+        long before = segment.writePosition;
+        scan(segment, (key, location) -> {
+            writeLock.lock();
+            try {
+                if (!location.equals(index.get(key))) {
+                    return;
+                }
+                if (location.tombstone() && segments.firstKey() == segment.id) {
+                    // No older segment is left to hold a record of the key: the tombstone has nothing to hide
+                    index.remove(key, location);
+                    segment.liveBytes.addAndGet(-location.recordBytes());
+                } else {
+                    ByteBuffer data = segment.map.slice(location.dataOffset(), location.length());
+                    append(key, location.tombstone(), location.length(), target -> target.put(data));
+                }
+            } finally {
+                writeLock.unlock();
+            }
+        });
+        segments.remove(segment.id);
+        closeQuietly(segment);
+        Files.deleteIfExists(segment.path);
+        log.info("Segment {} compacté, {} octets récupérés", segment.id, before - segment.liveBytes.get());
+    }
+
+    /**
+     * Appends a record, or a tombstone, to the active segment, rolling over to a
+     * new segment when it is full. Must be called with the write lock held.
+     */
+    private void append(String key, boolean tombstone, int size, RecordFiller filler) throws IOException {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        if (keyBytes.length > 0xFFFF) {
+            throw new IOException("Picture name too long for the segment store: " + key);
+        }
+        int recordBytes = HEADER_BYTES + keyBytes.length + size;
+        if (recordBytes > maxSegmentBytes) {
+            throw new IOException("Record too large for the segment store: " + recordBytes + " bytes");
+        }
+        Segment segment = active;
+        if (segment.writePosition + recordBytes > segment.map.capacity()) {
+            segment.map.force();
+            segment = open(segment.id + 1);
+            active = segment;
+        }
+        int recordOffset = segment.writePosition;
+        int dataOffset = recordOffset + HEADER_BYTES + keyBytes.length;
+        filler.fill(segment.map.slice(dataOffset, size));
+        segment.map.put(recordOffset + HEADER_BYTES, keyBytes);
+        segment.map.putShort(recordOffset + Integer.BYTES, (short) keyBytes.length);
+        segment.map.putInt(recordOffset + Integer.BYTES + Short.BYTES, size);
+        segment.map.putInt(recordOffset, tombstone ? TOMBSTONE_MAGIC : MAGIC);
+        segment.writePosition += recordBytes;
+        recover(key, new Location(segment, dataOffset, size, recordBytes, tombstone));
+    }
+
+    /**
+     * Publishes a record in the index and updates the live byte counts. A
+     * tombstone counts as live: compaction copies it forward, for the records it
+     * supersedes in older segments to stay dead after a restart, and only drops it
+     * from the oldest segment.
+     */
+    private void recover(String key, Location location) {
+        location.segment().liveBytes.addAndGet(location.recordBytes());
+        Location previous = index.put(key, location);
+        if (previous != null) {
+            previous.segment().liveBytes.addAndGet(-previous.recordBytes());
+        }
+    }
+
+    /**
+     * Walks the records of a segment.
+     *
+     * @return the offset following the last complete record
+     */
+    private int scan(Segment segment, RecordVisitor visitor) throws IOException {
+        MappedByteBuffer map = segment.map;
+        int position = 0;
+        while (position + HEADER_BYTES <= map.capacity()
+                && (map.getInt(position) == MAGIC || map.getInt(position) == TOMBSTONE_MAGIC)) {
+            boolean tombstone = map.getInt(position) == TOMBSTONE_MAGIC;
+            int keyLength = Short.toUnsignedInt(map.getShort(position + Integer.BYTES));
+            int dataLength = map.getInt(position + Integer.BYTES + Short.BYTES);
+            int dataOffset = position + HEADER_BYTES + keyLength;
+            if (dataLength < 0 || (long) dataOffset + dataLength > map.capacity()) {
+                log.warn("Enregistrement tronqué dans le segment {} à l'offset {}", segment.id, position);
+                break;
+            }
+            byte[] keyBytes = new byte[keyLength];
+            map.get(position + HEADER_BYTES, keyBytes);
+            int recordBytes = HEADER_BYTES + keyLength + dataLength;
+            visitor.visit(new String(keyBytes, StandardCharsets.UTF_8),
+                    new Location(segment, dataOffset, dataLength, recordBytes, tombstone));
+            position += recordBytes;
+        }
+        return position;
+    }
+
+    private Segment open(int id) throws IOException {
+        Path path = directory.resolve(String.format("%08d%s", id, SEGMENT_SUFFIX));
+        FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long capacity = Math.max(channel.size(), maxSegmentBytes);
+        Segment segment = new Segment(id, path, channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity));
+        segments.put(id, segment);
+        return segment;
+    }
+
+    private static void closeQuietly(Segment segment) {
+        try {
+            segment.channel.close();
+        } catch (IOException e) {
+            log.warn("Erreur fermeture segment {}: {}", segment.id, e.getMessage());
+        }
+    }
+
+    private static int segmentId(Path file) {
+        String name = file.getFileName().toString();
+        return Integer.parseInt(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    private static String key(Long rentalId, String filename) {
+        return rentalId + "/" + filename;
+    }
+
+    private static final class Segment {
+        private final int id;
+        private final Path path;
+        private final FileChannel channel;
+        private final MappedByteBuffer map;
+        private final AtomicLong liveBytes = new AtomicLong();
+        private volatile int writePosition;
+
+        private Segment(int id, Path path, FileChannel channel, MappedByteBuffer map) {
+            this.id = id;
+            this.path = path;
+            this.channel = channel;
+            this.map = map;
+        }
+    }
+
+    private record Location(Segment segment, int dataOffset, int length, int recordBytes, boolean tombstone) {
+    }
+
+    @FunctionalInterface
+    private interface RecordFiller {
+        void fill(ByteBuffer target) throws IOException;
+    }
+
+    @FunctionalInterface
+    private interface RecordVisitor {
+        void visit(String key, Location location) throws IOException;
+    }
+}
@@ -0,0 +1,15 @@
+package com.openclassrooms.rentals.services.storage;
+
+import java.nio.file.Path;
+
+/**
+ * A picture upload written to the staging area, waiting to be promoted to
+ * its final location once the owning rental has been committed.
+ *
+ * @param path the staged file
+ * @param filename the name the picture will be stored under, carrying its
+ *        content fingerprint
+ * @param size the picture size in bytes
+ */
+public record StagedPicture(Path path, String filename, long size) {
+}
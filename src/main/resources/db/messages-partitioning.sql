@@ -0,0 +1,35 @@
+-- Monthly RANGE partitioning of the messages table on created_at (MySQL 8, also runs on MariaDB 11.4).
+-- Run once, by hand, after the Flyway migrations of db/migration: partitioning is optional and is
+-- not part of them. With pages.messages.partitioning.enabled=true the application then adds the
+-- partitions of the coming months, and exports to compressed NDJSON then drops the partitions older
+-- than the retention period.
+--
+-- MySQL requires the partitioning column in every unique key, and does not support foreign keys on
+-- partitioned tables: the primary key becomes (id, created_at) and the foreign keys to users and
+-- rentals are dropped. The existence of the user and the rental is checked by the application when a
+-- message is created.
+
+-- Drop the foreign keys, whatever their generated names.
+SET @drop_fks := (SELECT GROUP_CONCAT(CONCAT('DROP FOREIGN KEY `', CONSTRAINT_NAME, '`'))
+                  FROM information_schema.TABLE_CONSTRAINTS
+                  WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = 'messages' AND CONSTRAINT_TYPE = 'FOREIGN KEY');
+SET @sql := IF(@drop_fks IS NULL, 'DO 0', CONCAT('ALTER TABLE messages ', @drop_fks));
+PREPARE stmt FROM @sql;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+
+UPDATE messages SET created_at = COALESCE(updated_at, CURRENT_TIMESTAMP) WHERE created_at IS NULL;
+
+ALTER TABLE messages
+    MODIFY created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    DROP PRIMARY KEY,
+    ADD PRIMARY KEY (id, created_at);
+
+-- Everything before the current month goes to phistory, later rows to pmax until the application
+-- splits it into monthly partitions.
+SET @sql := CONCAT('ALTER TABLE messages PARTITION BY RANGE (UNIX_TIMESTAMP(created_at)) (',
+                   'PARTITION phistory VALUES LESS THAN (UNIX_TIMESTAMP(''', DATE_FORMAT(NOW(), '%Y-%m-01'), ''')), ',
+                   'PARTITION pmax VALUES LESS THAN MAXVALUE)');
+PREPARE stmt FROM @sql;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
@@ -0,0 +1,40 @@
+-- Schema of the first version of the application: users, their rentals and the messages
+-- sent about the rentals. A database created before the migrations existed already has it,
+-- and is baselined at this version (see spring.flyway.baseline-version).
+
+CREATE TABLE users (
+    id         BIGINT       NOT NULL AUTO_INCREMENT PRIMARY KEY,
+    email      VARCHAR(255) NULL,
+    name       VARCHAR(255) NULL,
+    password   VARCHAR(255) NULL,
+    created_at TIMESTAMP    NULL,
+    updated_at TIMESTAMP    NULL,
+    CONSTRAINT uk_users_email UNIQUE (email)
+);
+
+CREATE TABLE rentals (
+    id          BIGINT         NOT NULL AUTO_INCREMENT PRIMARY KEY,
+    name        VARCHAR(255)   NULL,
+    surface     DECIMAL(10, 2) NULL,
+    price       DECIMAL(10, 2) NOT NULL,
+    picture     VARCHAR(255)   NULL,
+    description VARCHAR(2000)  NULL,
+    owner_id    BIGINT         NOT NULL,
+    created_at  TIMESTAMP      NULL,
+    updated_at  TIMESTAMP      NULL,
+    CONSTRAINT fk_rentals_owner FOREIGN KEY (owner_id) REFERENCES users (id)
+);
+
+-- Rentals of an owner, also backing the foreign key.
+CREATE INDEX idx_rentals_owner ON rentals (owner_id);
+
+CREATE TABLE messages (
+    id         BIGINT        NOT NULL AUTO_INCREMENT PRIMARY KEY,
+    rental_id  BIGINT        NOT NULL,
+    user_id    BIGINT        NOT NULL,
+    message    VARCHAR(2000) NULL,
+    created_at TIMESTAMP     NULL,
+    updated_at TIMESTAMP     NULL,
+    CONSTRAINT fk_messages_rental FOREIGN KEY (rental_id) REFERENCES rentals (id),
+    CONSTRAINT fk_messages_user FOREIGN KEY (user_id) REFERENCES users (id)
+);
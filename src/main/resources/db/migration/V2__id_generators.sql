@@ -0,0 +1,14 @@
+-- Identifiers of users, rentals and messages are allocated by Hibernate in blocks of 50
+-- (allocationSize of their @TableGenerator), so that inserts can be sent as JDBC batches.
+-- Each row holds the last identifier handed out: a node reserving a block reads the value v,
+-- stores v + 50 and uses the identifiers v - 48 to v + 1.
+CREATE TABLE id_generators (
+    sequence_name VARCHAR(255) NOT NULL PRIMARY KEY,
+    next_val      BIGINT
+);
+
+-- Seeded after the existing rows, which keep their identifiers: the first block starts at MAX(id) + 1.
+-- Applied by Flyway before the application starts serving.
+INSERT INTO id_generators (sequence_name, next_val) SELECT 'users', COALESCE(MAX(id), 0) + 49 FROM users;
+INSERT INTO id_generators (sequence_name, next_val) SELECT 'rentals', COALESCE(MAX(id), 0) + 49 FROM rentals;
+INSERT INTO id_generators (sequence_name, next_val) SELECT 'messages', COALESCE(MAX(id), 0) + 49 FROM messages;
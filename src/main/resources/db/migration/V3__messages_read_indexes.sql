@@ -0,0 +1,9 @@
+-- Indexes of the paginated message reads (GET /api/rentals/{id}/messages and GET /api/messages?userId=).
+-- The pages are read newest first with keyset pagination on (created_at, id), so each index
+-- serves both the filter and the sort, without any filesort.
+
+-- Messages written before created_at was filled in would escape the keyset comparisons.
+UPDATE messages SET created_at = COALESCE(updated_at, CURRENT_TIMESTAMP) WHERE created_at IS NULL;
+
+CREATE INDEX idx_messages_rental_created ON messages (rental_id, created_at, id);
+CREATE INDEX idx_messages_user_created ON messages (user_id, created_at, id);
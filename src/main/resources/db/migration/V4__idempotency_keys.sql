@@ -0,0 +1,10 @@
+-- Responses kept for the retries of the requests carrying an Idempotency-Key,
+-- used with pages.idempotency.store=jdbc. Expired rows are purged by the application.
+CREATE TABLE idempotency_keys (
+    key_hash     CHAR(64)     NOT NULL PRIMARY KEY,
+    status       INT          NOT NULL,
+    content_type VARCHAR(255) NULL,
+    body         MEDIUMBLOB   NOT NULL,
+    expires_at   TIMESTAMP    NOT NULL,
+    INDEX idx_idempotency_keys_expires (expires_at)
+);
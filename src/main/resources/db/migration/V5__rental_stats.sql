@@ -0,0 +1,11 @@
+-- Per-rental counters, incremented in memory by the application and added to these rows
+-- every pages.rentalStats.flushIntervalMs with batched upserts.
+CREATE TABLE rental_stats (
+    rental_id BIGINT NOT NULL PRIMARY KEY,
+    messages  BIGINT NOT NULL DEFAULT 0,
+    views     BIGINT NOT NULL DEFAULT 0
+);
+
+-- Messages received before the counters existed.
+INSERT INTO rental_stats (rental_id, messages, views)
+SELECT rental_id, COUNT(*), 0 FROM messages GROUP BY rental_id;
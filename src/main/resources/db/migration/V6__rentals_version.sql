@@ -0,0 +1,3 @@
+-- Version of each rental, incremented by every update. Clients send it back in If-Match, and
+-- an update only applies to the version they read (optimistic locking).
+ALTER TABLE rentals ADD COLUMN version BIGINT NOT NULL DEFAULT 0;
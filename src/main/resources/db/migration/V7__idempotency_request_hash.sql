@@ -0,0 +1,4 @@
+-- SHA-256 of the request a stored response answers: a retry reusing the key with another
+-- request is rejected instead of getting this response. Rows stored before have none, and
+-- are never replayed; they expire with their TTL.
+ALTER TABLE idempotency_keys ADD COLUMN request_hash CHAR(64) NULL;
@@ -0,0 +1,80 @@
+package com.openclassrooms.rentals.controllers;
+
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.nio.ByteBuffer;
+import java.util.Optional;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import com.openclassrooms.rentals.Configurations.ByteBufferHttpMessageConverter;
+import com.openclassrooms.rentals.services.StorageService;
+import com.openclassrooms.rentals.services.storage.PictureRange;
+
+class FilesControllerTest {
+
+    private static final String URL = "/api/files/rentalpicture/42/house.jpg";
+    private static final byte[] PICTURE = "0123456789".getBytes();
+
+    private StorageService storage;
+    private MockMvc mvc;
+
+    @BeforeEach
+    void setUp() {
+        storage = mock(StorageService.class);
+        mvc = MockMvcBuilders.standaloneSetup(new FilesController(storage))
+                .setMessageConverters(new ByteBufferHttpMessageConverter())
+                .build();
+        when(storage.load(42L, "house.jpg")).thenReturn(Optional.of(ByteBuffer.wrap(PICTURE)));
+        when(storage.loadRange(eq(42L), eq("house.jpg"), anyLong(), anyLong())).thenAnswer(call ->
+                Optional.of(PictureRange.slice(ByteBuffer.wrap(PICTURE), call.getArgument(2), call.getArgument(3))));
+    }
+
+    @Test
+    void servesTheRequestedRange() throws Exception {
+        mvc.perform(get(URL).header(HttpHeaders.RANGE, "bytes=2-4"))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 2-4/10"))
+                .andExpect(content().bytes("234".getBytes()));
+    }
+
+    @Test
+    void answers416ForARangePastTheEnd() throws Exception {
+        mvc.perform(get(URL).header(HttpHeaders.RANGE, "bytes=50-"))
+                .andExpect(status().isRequestedRangeNotSatisfiable())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes */10"));
+    }
+
+    @Test
+    void ignoresARangeWhoseOffsetsOverflow() throws Exception {
+        mvc.perform(get(URL).header(HttpHeaders.RANGE, "bytes=99999999999999999999-"))
+                .andExpect(status().isOk())
+                .andExpect(content().bytes(PICTURE));
+        mvc.perform(get(URL).header(HttpHeaders.RANGE, "bytes=0-99999999999999999999"))
+                .andExpect(status().isOk())
+                .andExpect(content().bytes(PICTURE));
+
+        verify(storage, never()).loadRange(eq(42L), eq("house.jpg"), anyLong(), anyLong());
+    }
+
+    @Test
+    void ignoresAnUnsupportedRange() throws Exception {
+        mvc.perform(get(URL).header(HttpHeaders.RANGE, "bytes=-5"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ACCEPT_RANGES, "bytes"))
+                .andExpect(content().bytes(PICTURE));
+    }
+}
@@ -0,0 +1,89 @@
+package com.openclassrooms.rentals.controllers;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.multipart;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import com.openclassrooms.rentals.services.MessageService;
+import com.openclassrooms.rentals.services.RentalService;
+import com.openclassrooms.rentals.services.RentalService.UpdateResult;
+import com.openclassrooms.rentals.services.RentalService.UpdateStatus;
+import com.openclassrooms.rentals.services.StorageService;
+import com.openclassrooms.rentals.services.stats.RentalStatsService;
+
+class RentalsContollerTest {
+
+    private RentalService rentalService;
+    private MockMvc mvc;
+
+    @BeforeEach
+    void setUp() {
+        rentalService = mock(RentalService.class);
+        mvc = MockMvcBuilders.standaloneSetup(new RentalsContoller(rentalService, mock(StorageService.class),
+                mock(MessageService.class), mock(RentalStatsService.class))).build();
+        when(rentalService.update(eq(7L), any(), any(), any())).thenReturn(new UpdateResult(UpdateStatus.UPDATED, 4L));
+    }
+
+    @Test
+    void aStrongETagIsTheVersionToUpdate() throws Exception {
+        mvc.perform(update().header(HttpHeaders.IF_MATCH, "\"3\""))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"4\""));
+
+        verify(rentalService).update(eq(7L), any(), any(), eq(3L));
+    }
+
+    @Test
+    void aWeakETagNeverMatches() throws Exception {
+        mvc.perform(update().header(HttpHeaders.IF_MATCH, "W/\"3\""))
+                .andExpect(status().isPreconditionFailed());
+
+        verify(rentalService, never()).update(anyLong(), any(), any(), any());
+    }
+
+    @Test
+    void anUnreadableETagNeverMatches() throws Exception {
+        mvc.perform(update().header(HttpHeaders.IF_MATCH, "\"abc\""))
+                .andExpect(status().isPreconditionFailed());
+
+        verify(rentalService, never()).update(anyLong(), any(), any(), any());
+    }
+
+    @Test
+    void withoutIfMatchOrWithAStarAnyVersionIsUpdated() throws Exception {
+        mvc.perform(update()).andExpect(status().isOk());
+        mvc.perform(update().header(HttpHeaders.IF_MATCH, "*")).andExpect(status().isOk());
+
+        verify(rentalService, times(2)).update(eq(7L), any(), any(), isNull());
+    }
+
+    @Test
+    void aChangedRentalIsNotUpdated() throws Exception {
+        when(rentalService.update(eq(7L), any(), any(), eq(2L)))
+                .thenReturn(new UpdateResult(UpdateStatus.VERSION_MISMATCH, null));
+
+        mvc.perform(update().header(HttpHeaders.IF_MATCH, "\"2\""))
+                .andExpect(status().isPreconditionFailed());
+    }
+
+    private static MockHttpServletRequestBuilder update() {
+        return multipart(HttpMethod.PUT, "/api/rentals/7").param("name", "House").param("price", "500");
+    }
+}
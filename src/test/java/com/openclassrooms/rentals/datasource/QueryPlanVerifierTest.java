@@ -0,0 +1,49 @@
+package com.openclassrooms.rentals.datasource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatCode;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import com.openclassrooms.rentals.repositorys.RentalRepository;
+
+/**
+ * {@link QueryPlanVerifier} on an in-memory H2 database in MySQL mode, created by the Flyway
+ * migrations, as in the load test: the schema has the index of every repository query.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:query-plans;MODE=MySQL;DB_CLOSE_DELAY=-1",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "jwt.secret=query-plan-secret-query-plan-secret-query-plan-secret",
+        "pages.uploadDir=target/query-plans/uploads",
+        "pages.jfr.dir=target/query-plans/jfr",
+        "pages.db.verifyQueryPlans=true" })
+class QueryPlanVerifierTest {
+
+    @Autowired
+    private QueryPlanVerifier verifier;
+
+    @Autowired
+    private QueryPlanRecorder recorder;
+
+    @Autowired
+    private RentalRepository rentalRepo;
+
+    @Test
+    void noRepositoryQueryReadsAWholeTable() {
+        assertThatCode(verifier::verify).doesNotThrowAnyException();
+    }
+
+    @Test
+    void aFullScanIsRecognized() {
+        List<QueryPlanRecorder.Plan> plans = recorder.record(rentalRepo::findAll);
+
+        assertThat(plans).isNotEmpty().anyMatch(QueryPlanRecorder.Plan::fullScan);
+    }
+}
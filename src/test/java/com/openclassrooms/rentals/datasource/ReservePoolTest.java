@@ -0,0 +1,116 @@
+package com.openclassrooms.rentals.datasource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import javax.sql.DataSource;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+/**
+ * {@link ReservePool} over a Hikari pool of one connection to an in-memory H2 database, the
+ * size at which a nested connection taken from the same pool can never be had.
+ */
+class ReservePoolTest {
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private HikariDataSource primary;
+    private ReservePool reservePool;
+    private DataSource dataSource;
+
+    @BeforeEach
+    void setUp() {
+        primary = new HikariDataSource();
+        primary.setJdbcUrl("jdbc:h2:mem:reserve-pool;DB_CLOSE_DELAY=-1");
+        primary.setUsername("sa");
+        primary.setPoolName("primary");
+        primary.setMaximumPoolSize(1);
+        primary.setConnectionTimeout(500);
+        reservePool = new ReservePool(1);
+        dataSource = (DataSource) reservePool.postProcessAfterInitialization(primary, "dataSource");
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+        reservePool.destroy();
+        primary.close();
+    }
+
+    @Test
+    void aNestedConnectionComesFromTheReserve() throws SQLException {
+        try (Connection outer = dataSource.getConnection();
+             Connection nested = dataSource.getConnection()) {
+            assertThat(nested.isValid(1)).isTrue();
+            assertThat(primary.getHikariPoolMXBean().getActiveConnections()).isEqualTo(1);
+            assertThat(outer.isValid(1)).isTrue();
+        }
+    }
+
+    @Test
+    void theMainPoolServesTheNextOuterConnection() throws SQLException {
+        try (Connection outer = dataSource.getConnection()) {
+            dataSource.getConnection().close();
+        }
+        try (Connection outer = dataSource.getConnection()) {
+            assertThat(primary.getHikariPoolMXBean().getActiveConnections()).isEqualTo(1);
+        }
+        assertThat(primary.getHikariPoolMXBean().getActiveConnections()).isZero();
+    }
+
+    @Test
+    void closingTwiceReleasesOnce() throws SQLException {
+        try (Connection outer = dataSource.getConnection()) {
+            Connection nested = dataSource.getConnection();
+            nested.close();
+            nested.close();
+            try (Connection again = dataSource.getConnection()) {
+                assertThat(primary.getHikariPoolMXBean().getActiveConnections()).isEqualTo(1);
+            }
+        }
+    }
+
+    @Test
+    void requestsHoldingEveryConnectionStillGetTheirNestedOne() throws Exception {
+        CountDownLatch outerHeld = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Future<Boolean> request = executor.submit(() -> {
+            try (Connection outer = dataSource.getConnection()) {
+                outerHeld.countDown();
+                try (Connection nested = dataSource.getConnection()) {
+                    release.await(5, TimeUnit.SECONDS);
+                    return nested.isValid(1);
+                }
+            }
+        });
+        outerHeld.await(5, TimeUnit.SECONDS);
+
+        // The only connection of the main pool is held: another request waits, then times out.
+        assertThatThrownBy(() -> dataSource.getConnection().close())
+                .isInstanceOf(SQLTransientConnectionException.class);
+        release.countDown();
+        assertThat(request.get(5, TimeUnit.SECONDS)).isTrue();
+    }
+
+    @Test
+    void withoutAHikariPoolTheDataSourceIsLeftAsIs() {
+        DataSource plain = new DriverManagerDataSource("jdbc:h2:mem:plain");
+
+        assertThat(reservePool.postProcessAfterInitialization(plain, "dataSource")).isSameAs(plain);
+        assertThat(reservePool.postProcessAfterInitialization(primary, "otherDataSource")).isSameAs(primary);
+    }
+}
@@ -0,0 +1,302 @@
+package com.openclassrooms.rentals.filters;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.mock.web.MockPart;
+
+import com.openclassrooms.rentals.services.idempotency.IdempotencyStore;
+import com.openclassrooms.rentals.services.idempotency.InMemoryIdempotencyStore;
+import com.openclassrooms.rentals.services.idempotency.StoredResponse;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+import jakarta.servlet.http.HttpServletResponse;
+
+class IdempotencyFilterTest {
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final AtomicInteger executions = new AtomicInteger();
+
+    @AfterEach
+    void stop() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void aRetryGetsTheFirstResponseWithoutBeingProcessed() throws Exception {
+        IdempotencyFilter filter = filter(new InMemoryIdempotencyStore(100));
+        FilterChain chain = created("{\"id\":1}");
+
+        MockHttpServletResponse first = send(filter, message("key-1", "hello"), chain);
+        MockHttpServletResponse retry = send(filter, message("key-1", "hello"), chain);
+
+        assertThat(executions).hasValue(1);
+        assertThat(first.getStatus()).isEqualTo(201);
+        assertThat(first.getHeader(IdempotencyFilter.IDEMPOTENT_REPLAYED)).isNull();
+        assertThat(retry.getStatus()).isEqualTo(201);
+        assertThat(retry.getHeader(IdempotencyFilter.IDEMPOTENT_REPLAYED)).isEqualTo("true");
+        assertThat(retry.getContentAsString()).isEqualTo("{\"id\":1}");
+    }
+
+    @Test
+    void theProcessedRequestReadsTheBodyThatWasHashed() throws Exception {
+        IdempotencyFilter filter = filter(new InMemoryIdempotencyStore(100));
+        List<String> bodies = new ArrayList<>();
+
+        send(filter, message("key-1", "hello"), (request, response) -> {
+            bodies.add(new String(request.getInputStream().readAllBytes(), StandardCharsets.UTF_8));
+            ((HttpServletResponse) response).setStatus(201);
+        });
+
+        assertThat(bodies).containsExactly("{\"message\":\"hello\"}");
+    }
+
+    @Test
+    void reusingAKeyWithAnotherBodyIsRejected() throws Exception {
+        IdempotencyFilter filter = filter(new InMemoryIdempotencyStore(100));
+        FilterChain chain = created("{\"id\":1}");
+        send(filter, message("key-1", "hello"), chain);
+
+        MockHttpServletResponse other = send(filter, message("key-1", "goodbye"), chain);
+
+        assertThat(other.getStatus()).isEqualTo(422);
+        assertThat(executions).hasValue(1);
+    }
+
+    @Test
+    void multipartRequestsAreComparedOnTheirParts() throws Exception {
+        IdempotencyFilter filter = filter(new InMemoryIdempotencyStore(100));
+        FilterChain chain = created("{\"id\":7}");
+        send(filter, rental("key-1", "picture-1"), chain);
+
+        MockHttpServletResponse retry = send(filter, rental("key-1", "picture-1"), chain);
+        MockHttpServletResponse other = send(filter, rental("key-1", "picture-2"), chain);
+
+        assertThat(retry.getHeader(IdempotencyFilter.IDEMPOTENT_REPLAYED)).isEqualTo("true");
+        assertThat(other.getStatus()).isEqualTo(422);
+        assertThat(executions).hasValue(1);
+    }
+
+    @Test
+    void duplicatesWaitForTheRequestInProgress() throws Exception {
+        IdempotencyFilter filter = filter(new InMemoryIdempotencyStore(100));
+        CountDownLatch release = new CountDownLatch(1);
+        FilterChain chain = (request, response) -> {
+            executions.incrementAndGet();
+            await(release);
+            created((HttpServletResponse) response, "{\"id\":1}");
+        };
+
+        List<Future<MockHttpServletResponse>> responses = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            responses.add(executor.submit(() -> send(filter, message("key-1", "hello"), chain)));
+        }
+        Thread.sleep(200);
+        release.countDown();
+
+        for (Future<MockHttpServletResponse> response : responses) {
+            assertThat(response.get(5, TimeUnit.SECONDS).getStatus()).isEqualTo(201);
+        }
+        assertThat(executions).hasValue(1);
+    }
+
+    @Test
+    void afterAFailureOnlyOneDuplicateIsProcessed() throws Exception {
+        IdempotencyFilter filter = filter(new InMemoryIdempotencyStore(100));
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicBoolean failed = new AtomicBoolean();
+        FilterChain chain = (request, response) -> {
+            executions.incrementAndGet();
+            if (failed.compareAndSet(false, true)) {
+                started.countDown();
+                await(release);
+                ((HttpServletResponse) response).setStatus(503);
+            } else {
+                created((HttpServletResponse) response, "{\"id\":2}");
+            }
+        };
+
+        Future<MockHttpServletResponse> first = executor.submit(() -> send(filter, message("key-1", "hello"), chain));
+        await(started);
+        List<Future<MockHttpServletResponse>> duplicates = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            duplicates.add(executor.submit(() -> send(filter, message("key-1", "hello"), chain)));
+        }
+        Thread.sleep(200);
+        release.countDown();
+
+        assertThat(first.get(5, TimeUnit.SECONDS).getStatus()).isEqualTo(503);
+        int replays = 0;
+        for (Future<MockHttpServletResponse> duplicate : duplicates) {
+            MockHttpServletResponse response = duplicate.get(5, TimeUnit.SECONDS);
+            assertThat(response.getStatus()).isEqualTo(201);
+            if ("true".equals(response.getHeader(IdempotencyFilter.IDEMPOTENT_REPLAYED))) {
+                replays++;
+            }
+        }
+        assertThat(executions).hasValue(2);
+        assertThat(replays).isEqualTo(3);
+    }
+
+    @Test
+    void aResponseStoredAfterTheLookupIsReplayed() throws Exception {
+        InMemoryIdempotencyStore responses = new InMemoryIdempotencyStore(100);
+        AtomicBoolean missed = new AtomicBoolean();
+        // The first lookup misses, as if the first request completed right after it.
+        IdempotencyStore store = new IdempotencyStore() {
+            @Override
+            public Optional<StoredResponse> find(String key) {
+                return missed.compareAndSet(false, true) ? Optional.empty() : responses.find(key);
+            }
+
+            @Override
+            public void save(String key, StoredResponse response, Duration ttl) {
+                responses.save(key, response, ttl);
+            }
+        };
+        IdempotencyFilter filter = filter(store);
+        FilterChain chain = created("{\"id\":1}");
+        missed.set(true);
+        send(filter, message("key-1", "hello"), chain);
+        missed.set(false);
+
+        MockHttpServletResponse retry = send(filter, message("key-1", "hello"), chain);
+
+        assertThat(retry.getHeader(IdempotencyFilter.IDEMPOTENT_REPLAYED)).isEqualTo("true");
+        assertThat(executions).hasValue(1);
+    }
+
+    @Test
+    void aDuplicateGivesUpWhenTheFirstRequestTakesTooLong() throws Exception {
+        IdempotencyFilter filter = new IdempotencyFilter(new InMemoryIdempotencyStore(100), new SimpleMeterRegistry(),
+                List.of("/api/messages"), 60_000, 100, 65536);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        FilterChain chain = (request, response) -> {
+            executions.incrementAndGet();
+            started.countDown();
+            await(release);
+            created((HttpServletResponse) response, "{\"id\":1}");
+        };
+        Future<MockHttpServletResponse> first = executor.submit(() -> send(filter, message("key-1", "hello"), chain));
+        await(started);
+
+        MockHttpServletResponse duplicate = send(filter, message("key-1", "hello"), chain);
+        release.countDown();
+
+        assertThat(duplicate.getStatus()).isEqualTo(409);
+        assertThat(first.get(5, TimeUnit.SECONDS).getStatus()).isEqualTo(201);
+        assertThat(executions).hasValue(1);
+    }
+
+    @Test
+    void aBodyOverTheLimitIsRejectedWithoutBeingRead() throws Exception {
+        IdempotencyFilter filter = new IdempotencyFilter(new InMemoryIdempotencyStore(100), new SimpleMeterRegistry(),
+                List.of("/api/messages"), 60_000, 5_000, 16);
+        MockHttpServletRequest request = message("key-1", "a message longer than the limit");
+
+        MockHttpServletResponse response = send(filter, request, created("{\"id\":1}"));
+
+        assertThat(response.getStatus()).isEqualTo(413);
+        assertThat(request.getInputStream().available()).isPositive();
+        assertThat(executions).hasValue(0);
+    }
+
+    @Test
+    void aChunkedBodyIsOnlyReadUpToTheLimit() throws Exception {
+        IdempotencyFilter filter = new IdempotencyFilter(new InMemoryIdempotencyStore(100), new SimpleMeterRegistry(),
+                List.of("/api/messages"), 60_000, 5_000, 16);
+        MockHttpServletRequest message = message("key-1", "a message longer than the limit");
+        HttpServletRequest chunked = new HttpServletRequestWrapper(message) {
+            @Override
+            public int getContentLength() {
+                return -1;
+            }
+
+            @Override
+            public long getContentLengthLong() {
+                return -1;
+            }
+        };
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        filter.doFilter(chunked, response, created("{\"id\":1}"));
+
+        assertThat(response.getStatus()).isEqualTo(413);
+        assertThat(message.getContentAsByteArray().length - message.getInputStream().available()).isEqualTo(17);
+        assertThat(executions).hasValue(0);
+    }
+
+    private IdempotencyFilter filter(IdempotencyStore store) {
+        return new IdempotencyFilter(store, new SimpleMeterRegistry(), List.of("/api/messages", "/api/rentals"),
+                60_000, 5_000, 65536);
+    }
+
+    private FilterChain created(String body) {
+        return (request, response) -> {
+            executions.incrementAndGet();
+            created((HttpServletResponse) response, body);
+        };
+    }
+
+    private static void created(HttpServletResponse response, String body) throws java.io.IOException {
+        response.setStatus(201);
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.getWriter().write(body);
+    }
+
+    private static MockHttpServletRequest message(String key, String message) {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/messages");
+        request.addHeader(IdempotencyFilter.IDEMPOTENCY_KEY, key);
+        request.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        request.setContent(("{\"message\":\"" + message + "\"}").getBytes(StandardCharsets.UTF_8));
+        return request;
+    }
+
+    private static MockHttpServletRequest rental(String key, String picture) {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/rentals");
+        request.addHeader(IdempotencyFilter.IDEMPOTENCY_KEY, key);
+        request.setContentType(MediaType.MULTIPART_FORM_DATA_VALUE + "; boundary=test");
+        request.addPart(new MockPart("name", "House".getBytes(StandardCharsets.UTF_8)));
+        MockPart file = new MockPart("picture", "house.jpg", picture.getBytes(StandardCharsets.UTF_8));
+        file.getHeaders().setContentType(MediaType.IMAGE_JPEG);
+        request.addPart(file);
+        return request;
+    }
+
+    private static MockHttpServletResponse send(IdempotencyFilter filter, MockHttpServletRequest request,
+                                                FilterChain chain) throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request, response, chain);
+        return response;
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
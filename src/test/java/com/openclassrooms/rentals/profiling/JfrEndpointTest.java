@@ -0,0 +1,87 @@
+package com.openclassrooms.rentals.profiling;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.actuate.endpoint.web.WebEndpointResponse;
+import org.springframework.core.io.Resource;
+
+class JfrEndpointTest {
+
+    /** The magic number opening a JFR file. */
+    private static final byte[] FLR = { 'F', 'L', 'R', 0 };
+
+    @TempDir
+    Path directory;
+
+    private JfrEndpoint endpoint;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    @BeforeEach
+    void setUp() {
+        endpoint = new JfrEndpoint(directory, Duration.ofMinutes(1), 2);
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+        endpoint.closeAll();
+    }
+
+    @Test
+    void concurrentDownloadsGetFilesOfTheirOwn() throws Exception {
+        long id = endpoint.start("default", null).id();
+
+        List<Future<Resource>> downloads = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            downloads.add(executor.submit((Callable<Resource>) () -> endpoint.download(id).getBody()));
+        }
+        List<Resource> files = new ArrayList<>();
+        for (Future<Resource> download : downloads) {
+            files.add(download.get(30, TimeUnit.SECONDS));
+        }
+
+        assertThat(files).extracting(Resource::getFilename).doesNotHaveDuplicates();
+        for (Resource file : files) {
+            try (InputStream in = file.getInputStream()) {
+                assertThat(in.readNBytes(FLR.length)).isEqualTo(FLR);
+            }
+        }
+        assertThat(jfrFiles()).isEmpty();
+    }
+
+    @Test
+    void deletingARecordingDeletesTheFilesNotSent() throws Exception {
+        long id = endpoint.start("default", null).id();
+        endpoint.download(id);
+        assertThat(jfrFiles()).hasSize(1);
+
+        assertThat(endpoint.delete(id).getStatus()).isEqualTo(WebEndpointResponse.STATUS_NO_CONTENT);
+
+        assertThat(jfrFiles()).isEmpty();
+        assertThat(endpoint.download(id).getStatus()).isEqualTo(WebEndpointResponse.STATUS_NOT_FOUND);
+    }
+
+    private List<Path> jfrFiles() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(file -> file.toString().endsWith(".jfr")).toList();
+        }
+    }
+}
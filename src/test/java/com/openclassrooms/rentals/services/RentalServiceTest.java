@@ -0,0 +1,136 @@
+package com.openclassrooms.rentals.services;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.nio.file.Path;
+import java.util.Optional;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.openclassrooms.rentals.dto.RentalUpdateDto;
+import com.openclassrooms.rentals.repositorys.RentalRepository;
+import com.openclassrooms.rentals.services.RentalService.UpdateResult;
+import com.openclassrooms.rentals.services.RentalService.UpdateStatus;
+import com.openclassrooms.rentals.services.map.RentalMapper;
+import com.openclassrooms.rentals.services.storage.StagedPicture;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * {@link RentalService#update} replacing the picture of a rental, with a mocked repository and
+ * storage.
+ */
+class RentalServiceTest {
+
+    private static final String OLD_PICTURE = "/api/files/rentalpicture/7/old.0123456789ab.jpg";
+    private static final StagedPicture STAGED = new StagedPicture(Path.of("staged.part"), "new.ba9876543210.jpg", 3);
+    private static final String NEW_PICTURE = "/api/files/rentalpicture/7/new.ba9876543210.jpg";
+
+    private final MockMultipartFile picture = new MockMultipartFile("picture", "new.jpg", "image/jpeg", new byte[3]);
+    private RentalRepository rentalRepo;
+    private StorageService storageService;
+    private RentalService rentalService;
+
+    @BeforeEach
+    void setUp() {
+        rentalRepo = mock(RentalRepository.class);
+        storageService = mock(StorageService.class);
+        UserService userService = mock(UserService.class);
+        when(userService.getCurrentUserId()).thenReturn(Optional.of(1L));
+        when(storageService.stage(picture)).thenReturn(Optional.of(STAGED));
+        when(storageService.pictureUrl(7L, STAGED.filename())).thenReturn(NEW_PICTURE);
+        when(storageService.promote(7L, STAGED)).thenReturn(true);
+        when(rentalRepo.findPictureForUpdate(7L)).thenReturn(Optional.of(OLD_PICTURE));
+        rentalService = new RentalService(rentalRepo, userService, mock(RentalMapper.class), storageService,
+                new TransactionTemplate(mock(PlatformTransactionManager.class)), new SimpleMeterRegistry());
+    }
+
+    @Test
+    void theNewPictureIsPromotedBeforeTheUpdateAndTheReplacedOneDeletedAfter() {
+        when(rentalRepo.updateIfMatch(any(), eq(1L), eq(3L))).thenReturn(1);
+
+        UpdateResult result = rentalService.update(7L, changes(), picture, 3L);
+
+        assertThat(result).isEqualTo(new UpdateResult(UpdateStatus.UPDATED, 4L));
+        InOrder order = inOrder(storageService, rentalRepo);
+        order.verify(storageService).promote(7L, STAGED);
+        order.verify(rentalRepo).updateIfMatch(argThat(r -> NEW_PICTURE.equals(r.getPicture())), eq(1L), eq(3L));
+        order.verify(storageService).delete(OLD_PICTURE);
+    }
+
+    @Test
+    void aPictureThatCannotBePromotedLeavesTheCurrentOneInPlace() {
+        when(storageService.promote(7L, STAGED)).thenReturn(false);
+        when(rentalRepo.updateIfMatch(argThat(r -> r.getPicture() == null), eq(1L), eq(3L))).thenReturn(1);
+
+        UpdateResult result = rentalService.update(7L, changes(), picture, 3L);
+
+        assertThat(result).isEqualTo(new UpdateResult(UpdateStatus.UPDATED, 4L));
+        verify(rentalRepo, never()).findById(any());
+        verify(storageService, never()).delete(anyString());
+    }
+
+    @Test
+    void thePictureOfARefusedUpdateIsDeleted() {
+        when(rentalRepo.updateIfMatch(any(), eq(1L), eq(3L))).thenReturn(0);
+        when(rentalRepo.findOwnerId(7L)).thenReturn(Optional.of(1L));
+
+        UpdateResult result = rentalService.update(7L, changes(), picture, 3L);
+
+        assertThat(result).isEqualTo(new UpdateResult(UpdateStatus.VERSION_MISMATCH, null));
+        verify(storageService).delete(NEW_PICTURE);
+        verify(storageService, never()).delete(OLD_PICTURE);
+    }
+
+    @Test
+    void aRefusedUpdateKeepsThePictureTheRentalAlreadyHas() {
+        when(rentalRepo.findPictureForUpdate(7L)).thenReturn(Optional.of(NEW_PICTURE));
+        when(rentalRepo.updateIfMatch(any(), eq(1L), eq(3L))).thenReturn(0);
+        when(rentalRepo.findOwnerId(7L)).thenReturn(Optional.of(2L));
+
+        UpdateResult result = rentalService.update(7L, changes(), picture, 3L);
+
+        assertThat(result).isEqualTo(new UpdateResult(UpdateStatus.NOT_OWNER, null));
+        verify(storageService, never()).delete(anyString());
+    }
+
+    @Test
+    void theSamePictureUploadedAgainIsKept() {
+        when(rentalRepo.findPictureForUpdate(7L)).thenReturn(Optional.of(NEW_PICTURE));
+        when(rentalRepo.updateIfMatch(any(), eq(1L), eq(3L))).thenReturn(1);
+
+        rentalService.update(7L, changes(), picture, 3L);
+
+        verify(storageService, never()).delete(anyString());
+    }
+
+    @Test
+    void withoutANewPictureNothingIsDeleted() {
+        when(rentalRepo.updateIfMatch(any(), eq(1L), eq(3L))).thenReturn(1);
+
+        rentalService.update(7L, changes(), null, 3L);
+
+        verify(rentalRepo, never()).findPictureForUpdate(any());
+        verify(storageService, never()).delete(anyString());
+    }
+
+    private static RentalUpdateDto changes() {
+        RentalUpdateDto changes = new RentalUpdateDto();
+        changes.setName("House");
+        return changes;
+    }
+}
@@ -0,0 +1,172 @@
+package com.openclassrooms.rentals.services.ingestion;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ApplicationEventPublisher;
+
+import com.openclassrooms.rentals.models.MessageEntity;
+import com.openclassrooms.rentals.repositorys.MessageRepository;
+import com.openclassrooms.rentals.services.map.MessageMapper;
+import com.openclassrooms.rentals.services.notification.MessageSavedEvent;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * {@link MessageBatchWriter} with a mocked repository, which records the size of every batch.
+ */
+class MessageBatchWriterTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final List<Integer> batches = new CopyOnWriteArrayList<>();
+    private MessageRepository messageRepo;
+    private ApplicationEventPublisher eventPublisher;
+    private MessageBatchWriter writer;
+    private ExecutorService executor;
+
+    @BeforeEach
+    void setUp() {
+        messageRepo = mock(MessageRepository.class);
+        eventPublisher = mock(ApplicationEventPublisher.class);
+        doAnswer(invocation -> batches.add(invocation.<List<?>>getArgument(0).size()))
+                .when(messageRepo).insertBatch(anyList());
+        executor = Executors.newCachedThreadPool();
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        executor.shutdownNow();
+        if (writer != null) {
+            writer.stop();
+        }
+    }
+
+    @Test
+    void aFullBatchIsFlushedWithoutWaitingForTheInterval() throws Exception {
+        writer = writer(100, 3, TimeUnit.MINUTES.toMillis(1));
+        List<CompletableFuture<Void>> written = submit(3);
+
+        writer.start();
+
+        CompletableFuture.allOf(written.toArray(CompletableFuture[]::new)).get(5, TimeUnit.SECONDS);
+        assertThat(batches).containsExactly(3);
+        verify(eventPublisher, timeout(1000).times(3)).publishEvent(any(MessageSavedEvent.class));
+        assertThat(registry.get("pages.messages.ingestion").tag("result", "written").counter().count()).isEqualTo(3);
+    }
+
+    @Test
+    void aPartialBatchIsFlushedAfterTheInterval() throws Exception {
+        writer = writer(100, 500, 50);
+        writer.start();
+
+        long start = System.nanoTime();
+        List<CompletableFuture<Void>> written = submit(2);
+
+        CompletableFuture.allOf(written.toArray(CompletableFuture[]::new)).get(5, TimeUnit.SECONDS);
+        assertThat(System.nanoTime() - start).isGreaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(50));
+        assertThat(batches.stream().mapToInt(Integer::intValue).sum()).isEqualTo(2);
+    }
+
+    @Test
+    void messagesAreRefusedWhenTheQueueIsFull() {
+        writer = writer(2, 500, 50);
+
+        List<CompletableFuture<Void>> written = submit(3);
+
+        assertThat(written.get(0)).isNotNull();
+        assertThat(written.get(1)).isNotNull();
+        assertThat(written.get(2)).isNull();
+        assertThat(registry.get("pages.messages.ingestion").tag("result", "rejected").counter().count()).isEqualTo(1);
+        assertThat(registry.get("pages.messages.queue.size").gauge().value()).isEqualTo(2);
+    }
+
+    @Test
+    void stoppingWritesTheQueuedMessagesAndRefusesNewOnes() throws InterruptedException {
+        writer = writer(100, 3, TimeUnit.MINUTES.toMillis(1));
+        List<CompletableFuture<Void>> written = submit(7);
+        writer.start();
+
+        writer.stop();
+
+        assertThat(written).allMatch(future -> future.isDone() && !future.isCompletedExceptionally());
+        assertThat(batches.stream().mapToInt(Integer::intValue).sum()).isEqualTo(7);
+        assertThat(writer.submit(new MessageEntity())).isNull();
+    }
+
+    @Test
+    void messagesQueuedAfterTheWriterGaveUpAreFailed() throws InterruptedException {
+        writer = writer(100, 500, 50);
+        List<CompletableFuture<Void>> written = submit(2);
+
+        // Never started: the writer thread is not there to drain the queue
+        writer.stop();
+
+        assertThat(written).allMatch(CompletableFuture::isCompletedExceptionally);
+        verify(messageRepo, never()).insertBatch(anyList());
+        assertThat(registry.get("pages.messages.ingestion").tag("result", "failed").counter().count()).isEqualTo(2);
+    }
+
+    @Test
+    void everyMessageAcceptedWhileStoppingIsCompleted() throws Exception {
+        writer = writer(10_000, 50, 5);
+        writer.start();
+        CountDownLatch started = new CountDownLatch(4);
+        List<Future<List<CompletableFuture<Void>>>> submitters = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            submitters.add(executor.submit(() -> {
+                List<CompletableFuture<Void>> accepted = new ArrayList<>();
+                started.countDown();
+                for (int i = 0; i < 2_000; i++) {
+                    CompletableFuture<Void> written = writer.submit(new MessageEntity());
+                    if (written != null) {
+                        accepted.add(written);
+                    }
+                }
+                return accepted;
+            }));
+        }
+        started.await();
+
+        writer.stop();
+
+        int accepted = 0;
+        for (Future<List<CompletableFuture<Void>>> submitter : submitters) {
+            List<CompletableFuture<Void>> written = submitter.get(5, TimeUnit.SECONDS);
+            assertThat(written).allMatch(CompletableFuture::isDone);
+            accepted += written.size();
+        }
+        assertThat(batches.stream().mapToInt(Integer::intValue).sum()).isEqualTo(accepted);
+    }
+
+    private MessageBatchWriter writer(int queueCapacity, int batchSize, long flushIntervalMs) {
+        return new MessageBatchWriter(messageRepo, mock(MessageMapper.class), eventPublisher, registry,
+                queueCapacity, batchSize, flushIntervalMs);
+    }
+
+    private List<CompletableFuture<Void>> submit(int count) {
+        List<CompletableFuture<Void>> written = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            written.add(writer.submit(new MessageEntity()));
+        }
+        return written;
+    }
+}
@@ -0,0 +1,194 @@
+package com.openclassrooms.rentals.services.stats;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+import java.lang.reflect.Proxy;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import com.openclassrooms.rentals.dto.MessageDto;
+import com.openclassrooms.rentals.repositorys.RentalRepository;
+import com.openclassrooms.rentals.services.UserService;
+import com.openclassrooms.rentals.services.notification.MessageSavedEvent;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * {@link RentalStatsService} flushing to a {@link JdbcTemplate} that adds the upserted
+ * deltas to a map instead of the {@code rental_stats} table.
+ */
+class RentalStatsServiceTest {
+
+    private final Map<Long, long[]> stored = new ConcurrentHashMap<>();
+    private final AtomicBoolean failing = new AtomicBoolean();
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private RentalStatsService stats;
+
+    @BeforeEach
+    void setUp() {
+        JdbcTemplate jdbcTemplate = new JdbcTemplate() {
+            @Override
+            public <T> int[][] batchUpdate(String sql, Collection<T> batchArgs, int batchSize,
+                                           ParameterizedPreparedStatementSetter<T> pss) {
+                if (failing.get()) {
+                    throw new DataAccessResourceFailureException("Database unavailable");
+                }
+                for (T args : batchArgs) {
+                    long[] row = upsert(pss, args);
+                    stored.merge(row[0], new long[] {row[1], row[2]},
+                            (a, b) -> new long[] {a[0] + b[0], a[1] + b[1]});
+                }
+                return new int[0][];
+            }
+        };
+        stats = new RentalStatsService(jdbcTemplate, mock(PlatformTransactionManager.class),
+                mock(RentalRepository.class), mock(UserService.class), registry);
+    }
+
+    @AfterEach
+    void stop() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void countsAreAddedToTheStoredValues() {
+        stats.recordView(1L);
+        stats.recordView(1L);
+        stats.onMessageSaved(message(1L));
+        stats.recordView(2L);
+
+        stats.flush();
+        stats.recordView(1L);
+        stats.flush();
+
+        assertThat(stored.get(1L)).containsExactly(1, 3);
+        assertThat(stored.get(2L)).containsExactly(0, 1);
+    }
+
+    @Test
+    void idleRentalsAreRemovedAfterAFlush() {
+        stats.recordView(1L);
+        stats.recordView(2L);
+        stats.flush();
+        assertThat(counters()).isEqualTo(2);
+
+        stats.recordView(1L);
+        stats.flush();
+        assertThat(counters()).isEqualTo(1);
+
+        stats.flush();
+        assertThat(counters()).isZero();
+
+        stats.recordView(2L);
+        stats.flush();
+        assertThat(stored.get(2L)).containsExactly(0, 2);
+    }
+
+    @Test
+    void aFailedFlushKeepsTheCountsForTheNextOne() {
+        stats.recordView(1L);
+        stats.onMessageSaved(message(1L));
+        failing.set(true);
+        stats.flush();
+        stats.flush();
+        assertThat(stored).isEmpty();
+
+        failing.set(false);
+        stats.flush();
+
+        assertThat(stored.get(1L)).containsExactly(1, 1);
+    }
+
+    @Test
+    void noIncrementIsLostWhileFlushesRemoveCells() throws Exception {
+        int writers = 4;
+        int increments = 20_000;
+        int rentals = 8;
+        AtomicBoolean writing = new AtomicBoolean(true);
+        Future<?> flusher = executor.submit(() -> {
+            while (writing.get()) {
+                stats.flush();
+            }
+        });
+        List<Future<?>> futures = new ArrayList<>();
+        for (int w = 0; w < writers; w++) {
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < increments; i++) {
+                    long rentalId = i % rentals;
+                    if (i / rentals % 2 == 0) {
+                        stats.recordView(rentalId);
+                    } else {
+                        stats.onMessageSaved(message(rentalId));
+                    }
+                    if (i % 500 == 0) {
+                        Thread.yield();
+                    }
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get(30, TimeUnit.SECONDS);
+        }
+        writing.set(false);
+        flusher.get(30, TimeUnit.SECONDS);
+        stats.flush();
+        stats.flush();
+
+        long perRental = (long) writers * increments / rentals / 2;
+        for (long rentalId = 0; rentalId < rentals; rentalId++) {
+            assertThat(stored.get(rentalId)).containsExactly(perRental, perRental);
+        }
+        assertThat(counters()).isZero();
+    }
+
+    private double counters() {
+        return registry.get("pages.rental.stats.counters").gauge().value();
+    }
+
+    private static MessageSavedEvent message(long rentalId) {
+        MessageDto message = new MessageDto();
+        message.setRentalId(rentalId);
+        return new MessageSavedEvent(message);
+    }
+
+    /**
+     * @return the rental identifier, messages and views set by the statement setter
+     */
+    private static <T> long[] upsert(ParameterizedPreparedStatementSetter<T> pss, T args) {
+        long[] row = new long[3];
+        PreparedStatement statement = (PreparedStatement) Proxy.newProxyInstance(
+                PreparedStatement.class.getClassLoader(), new Class<?>[] {PreparedStatement.class},
+                (proxy, method, parameters) -> {
+                    if (method.getName().equals("setLong")) {
+                        row[(int) parameters[0] - 1] = (long) parameters[1];
+                    }
+                    return null;
+                });
+        try {
+            pss.setValues(statement, args);
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);
+        }
+        return row;
+    }
+}
@@ -0,0 +1,154 @@
+package com.openclassrooms.rentals.services.storage;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.junit.jupiter.api.Test;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+class PictureCacheTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    @Test
+    void evictsTheLeastRecentlyUsedPictures() {
+        PictureCache cache = new PictureCache(300, 100, registry);
+        cache.put(1L, "a.jpg", picture(100, 'a'));
+        cache.put(1L, "b.jpg", picture(100, 'b'));
+        cache.put(1L, "c.jpg", picture(100, 'c'));
+        cache.get(1L, "a.jpg");
+
+        cache.put(1L, "d.jpg", picture(100, 'd'));
+
+        assertThat(cache.get(1L, "a.jpg")).isPresent();
+        assertThat(cache.get(1L, "b.jpg")).isEmpty();
+        assertThat(cache.get(1L, "c.jpg")).isPresent();
+        assertThat(cache.get(1L, "d.jpg")).isPresent();
+        assertThat(cache.usedBytes()).isEqualTo(300);
+        assertThat(registry.get("pages.picture.cache.evictions").functionCounter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void neverKeepsPicturesOverTheEntryLimit() {
+        PictureCache cache = new PictureCache(1000, 100, registry);
+
+        ByteBuffer view = cache.put(1L, "big.jpg", picture(101, 'x'));
+
+        assertThat(view.remaining()).isEqualTo(101);
+        assertThat(cache.get(1L, "big.jpg")).isEmpty();
+        assertThat(cache.usedBytes()).isZero();
+    }
+
+    @Test
+    void replacingOrInvalidatingAPictureReleasesItsBytes() {
+        PictureCache cache = new PictureCache(1000, 500, registry);
+        cache.put(1L, "a.jpg", picture(100, 'a'));
+        cache.put(1L, "a.jpg", picture(40, 'b'));
+
+        assertThat(cache.usedBytes()).isEqualTo(40);
+        assertThat(cache.get(1L, "a.jpg")).hasValueSatisfying(content -> assertThat(content.get(0)).isEqualTo((byte) 'b'));
+
+        cache.invalidate(1L, "a.jpg");
+
+        assertThat(cache.usedBytes()).isZero();
+        assertThat(cache.get(1L, "a.jpg")).isEmpty();
+    }
+
+    @Test
+    void aPictureInvalidatedWhileReadIsNotCached() {
+        PictureCache cache = new PictureCache(1000, 500, registry);
+        long stamp = cache.stamp(1L, "a.jpg");
+        cache.invalidate(1L, "a.jpg");
+
+        ByteBuffer view = cache.put(1L, "a.jpg", picture(10, 'a'), stamp);
+
+        assertThat(view.remaining()).isEqualTo(10);
+        assertThat(cache.get(1L, "a.jpg")).isEmpty();
+        assertThat(cache.usedBytes()).isZero();
+
+        cache.put(1L, "a.jpg", picture(10, 'b'), cache.stamp(1L, "a.jpg"));
+
+        assertThat(cache.get(1L, "a.jpg")).hasValueSatisfying(content -> assertThat(content.get(0)).isEqualTo((byte) 'b'));
+    }
+
+    @Test
+    void hitsReturnIndependentReadOnlyViews() {
+        PictureCache cache = new PictureCache(1000, 500, registry);
+        cache.put(1L, "a.jpg", picture(10, 'a'));
+
+        ByteBuffer first = cache.get(1L, "a.jpg").orElseThrow();
+        first.position(5);
+        ByteBuffer second = cache.get(1L, "a.jpg").orElseThrow();
+
+        assertThat(first.isReadOnly()).isTrue();
+        assertThat(second.position()).isZero();
+        assertThat(cache.hitRatio()).isEqualTo(1.0);
+    }
+
+    @Test
+    void concurrentUseKeepsTheByteBudgetAndTheCounts() throws Exception {
+        int threads = 8;
+        int operations = 20_000;
+        PictureCache cache = new PictureCache(10_000, 1_000, registry);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Integer>> lookups = new ArrayList<>();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            for (int t = 0; t < threads; t++) {
+                lookups.add(executor.submit(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    start.await();
+                    int count = 0;
+                    for (int i = 0; i < operations; i++) {
+                        String filename = "p" + random.nextInt(50) + ".jpg";
+                        switch (random.nextInt(4)) {
+                            case 0 -> cache.put(1L, filename, picture(100 + random.nextInt(900), 'x'));
+                            case 1 -> cache.invalidate(1L, filename);
+                            default -> {
+                                cache.get(1L, filename).ifPresent(content ->
+                                        assertThat(content.get(content.limit() - 1)).isEqualTo((byte) 'x'));
+                                count++;
+                            }
+                        }
+                        assertThat(cache.usedBytes()).isBetween(0L, 10_000L);
+                    }
+                    return count;
+                }));
+            }
+            start.countDown();
+            long total = 0;
+            for (Future<Integer> lookup : lookups) {
+                total += lookup.get();
+            }
+
+            long hits = (long) registry.get("pages.picture.cache.requests").tag("result", "hit").functionCounter().count();
+            long misses = (long) registry.get("pages.picture.cache.requests").tag("result", "miss").functionCounter().count();
+            assertThat(hits + misses).isEqualTo(total);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        long cached = 0;
+        for (int i = 0; i < 50; i++) {
+            cached += cache.get(1L, "p" + i + ".jpg").map(ByteBuffer::capacity).orElse(0);
+        }
+        assertThat(cache.usedBytes()).isEqualTo(cached);
+    }
+
+    private static ByteBuffer picture(int size, char fill) {
+        ByteBuffer content = ByteBuffer.allocateDirect(size);
+        while (content.hasRemaining()) {
+            content.put((byte) fill);
+        }
+        return content.flip();
+    }
+}
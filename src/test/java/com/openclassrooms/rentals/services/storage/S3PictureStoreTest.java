@@ -0,0 +1,137 @@
+package com.openclassrooms.rentals.services.storage;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.openclassrooms.rentals.Configurations.S3StorageConfig;
+
+import software.amazon.awssdk.services.s3.S3Client;
+
+/**
+ * {@link S3PictureStore} against {@link S3StandIn}, through the client built by
+ * {@link S3StorageConfig} with its endpoint override.
+ */
+class S3PictureStoreTest {
+
+    private static final int PART_SIZE = 5 * 1024 * 1024;
+
+    private S3StandIn standIn;
+    private S3Client s3;
+    private S3PictureStore store;
+
+    @BeforeEach
+    void start() throws IOException {
+        standIn = new S3StandIn();
+        s3 = new S3StorageConfig().s3Client(standIn.endpoint().toString(), "us-east-1", "access", "secret", true);
+        store = new S3PictureStore(s3, "rentals", "pictures/", PART_SIZE, 2);
+    }
+
+    @AfterEach
+    void stop() {
+        store.close();
+        s3.close();
+        standIn.close();
+    }
+
+    @Test
+    void smallPicturesAreSentInOnePut() throws IOException {
+        byte[] picture = bytes(64 * 1024);
+
+        store.write(42L, "house.jpg", new ByteArrayInputStream(picture), picture.length);
+
+        assertThat(standIn.objects().get("/rentals/pictures/42/house.jpg")).isEqualTo(picture);
+        assertThat(standIn.requests(("POST"), "uploads")).isEmpty();
+        assertThat(store.read(42L, "house.jpg")).hasValueSatisfying(content -> assertThat(array(content)).isEqualTo(picture));
+        assertThat(store.read(42L, "missing.jpg")).isEmpty();
+    }
+
+    @Test
+    void largePicturesAreUploadedInParallelParts() throws IOException {
+        byte[] picture = bytes(3 * PART_SIZE + 1000);
+        standIn.delayParts(200);
+
+        store.write(42L, "large.jpg", new ByteArrayInputStream(picture), picture.length);
+
+        assertThat(standIn.objects().get("/rentals/pictures/42/large.jpg")).isEqualTo(picture);
+        assertThat(standIn.requests("PUT", "partNumber")).hasSize(4);
+        assertThat(standIn.maxPartsInFlight()).isEqualTo(2);
+        assertThat(standIn.openUploads()).isZero();
+    }
+
+    @Test
+    void aFailedPartAbortsTheUpload() {
+        byte[] picture = bytes(3 * PART_SIZE);
+        standIn.failPart(2);
+
+        assertThatThrownBy(() -> store.write(42L, "large.jpg", new ByteArrayInputStream(picture), picture.length))
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("Multipart upload failed");
+
+        assertThat(standIn.requests("DELETE", "uploadId")).hasSize(1);
+        assertThat(standIn.requests("POST", "uploadId")).isEmpty();
+        assertThat(standIn.openUploads()).isZero();
+        assertThat(standIn.objects()).isEmpty();
+    }
+
+    @Test
+    void rangedReadsOnlyTransferTheRequestedBytes() throws IOException {
+        byte[] picture = bytes(10_000);
+        store.write(42L, "house.jpg", new ByteArrayInputStream(picture), picture.length);
+
+        PictureRange range = store.readRange(42L, "house.jpg", 100, 50).orElseThrow();
+        assertThat(range.offset()).isEqualTo(100);
+        assertThat(range.totalSize()).isEqualTo(10_000);
+        assertThat(array(range.content())).isEqualTo(java.util.Arrays.copyOfRange(picture, 100, 150));
+
+        PictureRange tail = store.readRange(42L, "house.jpg", 9_990, Long.MAX_VALUE).orElseThrow();
+        assertThat(array(tail.content())).isEqualTo(java.util.Arrays.copyOfRange(picture, 9_990, 10_000));
+
+        assertThat(store.readRange(42L, "missing.jpg", 0, 10)).isEmpty();
+    }
+
+    @Test
+    void aRangePastTheEndGivesAnEmptyRangeAtTheSize() throws IOException {
+        byte[] picture = bytes(1_000);
+        store.write(42L, "house.jpg", new ByteArrayInputStream(picture), picture.length);
+
+        PictureRange range = store.readRange(42L, "house.jpg", 5_000, 10).orElseThrow();
+
+        assertThat(range.content().remaining()).isZero();
+        assertThat(range.offset()).isEqualTo(1_000);
+        assertThat(range.totalSize()).isEqualTo(1_000);
+        assertThat(standIn.requests()).anyMatch(request -> request.method().equals("HEAD"));
+    }
+
+    @Test
+    void deletedPicturesAreGone() throws IOException {
+        byte[] picture = bytes(1_000);
+        store.write(42L, "house.jpg", new ByteArrayInputStream(picture), picture.length);
+
+        store.delete(42L, "house.jpg");
+        store.delete(42L, "missing.jpg");
+
+        assertThat(standIn.objects()).isEmpty();
+        assertThat(store.read(42L, "house.jpg")).isEmpty();
+    }
+
+    private static byte[] bytes(int size) {
+        byte[] bytes = new byte[size];
+        new Random(size).nextBytes(bytes);
+        return bytes;
+    }
+
+    private static byte[] array(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,276 @@
+package com.openclassrooms.rentals.services.storage;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * In-process stand-in of an S3-compatible object store, serving the path-style requests of
+ * {@link S3PictureStore}: single and multipart uploads, whole and ranged reads, heads and deletes.
+ * Every request is recorded, the number of part uploads in flight is tracked, and the uploads
+ * of chosen part numbers can be made to fail.
+ */
+class S3StandIn implements AutoCloseable {
+
+    private static final Pattern RANGE = Pattern.compile("bytes=(\\d+)-(\\d*)");
+
+    /** A request received by the stand-in: its method, its path and its query. */
+    record Request(String method, String path, String query) {
+    }
+
+    private final HttpServer server;
+    private final Map<String, byte[]> objects = new ConcurrentHashMap<>();
+    private final Map<String, Map<Integer, byte[]>> uploads = new ConcurrentHashMap<>();
+    private final List<Request> requests = new CopyOnWriteArrayList<>();
+    private final List<Integer> failingParts = new CopyOnWriteArrayList<>();
+    private final AtomicInteger partsInFlight = new AtomicInteger();
+    private final AtomicInteger maxPartsInFlight = new AtomicInteger();
+    private volatile long partDelayMillis;
+
+    S3StandIn() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/", this::handle);
+        server.start();
+    }
+
+    URI endpoint() {
+        return URI.create("http://127.0.0.1:" + server.getAddress().getPort());
+    }
+
+    Map<String, byte[]> objects() {
+        return objects;
+    }
+
+    List<Request> requests() {
+        return requests;
+    }
+
+    int maxPartsInFlight() {
+        return maxPartsInFlight.get();
+    }
+
+    int openUploads() {
+        return uploads.size();
+    }
+
+    /** Makes the uploads of the given part number answer {@code 400}. */
+    void failPart(int partNumber) {
+        failingParts.add(partNumber);
+    }
+
+    /** Holds each part upload for a while, so that parallel uploads overlap. */
+    void delayParts(long millis) {
+        partDelayMillis = millis;
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            String method = exchange.getRequestMethod();
+            String key = exchange.getRequestURI().getPath();
+            Map<String, String> query = query(exchange.getRequestURI().getRawQuery());
+            requests.add(new Request(method, key, exchange.getRequestURI().getRawQuery()));
+            byte[] body = body(exchange);
+
+            if (method.equals("POST") && query.containsKey("uploads")) {
+                String uploadId = UUID.randomUUID().toString();
+                uploads.put(uploadId, new ConcurrentSkipListMap<>());
+                xml(exchange, 200, "<InitiateMultipartUploadResult><Bucket>b</Bucket><Key>" + key
+                        + "</Key><UploadId>" + uploadId + "</UploadId></InitiateMultipartUploadResult>");
+            } else if (method.equals("PUT") && query.containsKey("partNumber")) {
+                uploadPart(exchange, query, body);
+            } else if (method.equals("POST") && query.containsKey("uploadId")) {
+                Map<Integer, byte[]> parts = uploads.remove(query.get("uploadId"));
+                if (parts == null) {
+                    error(exchange, 404, "NoSuchUpload");
+                    return;
+                }
+                ByteArrayOutputStream object = new ByteArrayOutputStream();
+                parts.values().forEach(object::writeBytes);
+                objects.put(key, object.toByteArray());
+                xml(exchange, 200, "<CompleteMultipartUploadResult><Key>" + key
+                        + "</Key><ETag>\"complete\"</ETag></CompleteMultipartUploadResult>");
+            } else if (method.equals("DELETE") && query.containsKey("uploadId")) {
+                uploads.remove(query.get("uploadId"));
+                exchange.sendResponseHeaders(204, -1);
+            } else if (method.equals("DELETE")) {
+                objects.remove(key);
+                exchange.sendResponseHeaders(204, -1);
+            } else if (method.equals("PUT")) {
+                objects.put(key, body);
+                exchange.getResponseHeaders().set("ETag", "\"" + key.hashCode() + "\"");
+                exchange.sendResponseHeaders(200, -1);
+            } else if (method.equals("GET") || method.equals("HEAD")) {
+                read(exchange, key, method.equals("HEAD"));
+            } else {
+                error(exchange, 405, "MethodNotAllowed");
+            }
+        }
+    }
+
+    private void uploadPart(HttpExchange exchange, Map<String, String> query, byte[] body) throws IOException {
+        int partNumber = Integer.parseInt(query.get("partNumber"));
+        int inFlight = partsInFlight.incrementAndGet();
+        maxPartsInFlight.accumulateAndGet(inFlight, Math::max);
+        try {
+            Thread.sleep(partDelayMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            partsInFlight.decrementAndGet();
+        }
+        Map<Integer, byte[]> parts = uploads.get(query.get("uploadId"));
+        if (parts == null) {
+            error(exchange, 404, "NoSuchUpload");
+        } else if (failingParts.contains(partNumber)) {
+            error(exchange, 400, "InvalidPart");
+        } else {
+            parts.put(partNumber, body);
+            exchange.getResponseHeaders().set("ETag", "\"part-" + partNumber + "\"");
+            exchange.sendResponseHeaders(200, -1);
+        }
+    }
+
+    private void read(HttpExchange exchange, String key, boolean head) throws IOException {
+        byte[] object = objects.get(key);
+        if (object == null) {
+            if (head) {
+                exchange.sendResponseHeaders(404, -1);
+            } else {
+                error(exchange, 404, "NoSuchKey");
+            }
+            return;
+        }
+        String range = exchange.getRequestHeaders().getFirst("Range");
+        Matcher matcher = range == null ? null : RANGE.matcher(range);
+        if (head || matcher == null || !matcher.matches()) {
+            exchange.getResponseHeaders().set("Content-Type", "application/octet-stream");
+            if (head) {
+                exchange.getResponseHeaders().set("Content-Length", String.valueOf(object.length));
+                exchange.sendResponseHeaders(200, -1);
+            } else {
+                send(exchange, 200, object, 0, object.length);
+            }
+            return;
+        }
+        long start = Long.parseLong(matcher.group(1));
+        if (start >= object.length) {
+            exchange.getResponseHeaders().set("Content-Range", "bytes */" + object.length);
+            error(exchange, 416, "InvalidRange");
+            return;
+        }
+        long end = matcher.group(2).isEmpty()
+                ? object.length - 1
+                : Math.min(Long.parseLong(matcher.group(2)), object.length - 1);
+        exchange.getResponseHeaders().set("Content-Range", "bytes " + start + "-" + end + "/" + object.length);
+        send(exchange, 206, object, (int) start, (int) (end - start + 1));
+    }
+
+    private static void send(HttpExchange exchange, int status, byte[] bytes, int offset, int length)
+            throws IOException {
+        exchange.sendResponseHeaders(status, length == 0 ? -1 : length);
+        exchange.getResponseBody().write(bytes, offset, length);
+    }
+
+    private static void xml(HttpExchange exchange, int status, String xml) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/xml");
+        byte[] bytes = ("<?xml version=\"1.0\" encoding=\"UTF-8\"?>" + xml).getBytes(StandardCharsets.UTF_8);
+        send(exchange, status, bytes, 0, bytes.length);
+    }
+
+    private static void error(HttpExchange exchange, int status, String code) throws IOException {
+        xml(exchange, status, "<Error><Code>" + code + "</Code><Message>" + code + "</Message></Error>");
+    }
+
+    /**
+     * Reads the request body, decoding the {@code aws-chunked} encoding of the streaming
+     * signatures if the client used one.
+     */
+    private static byte[] body(HttpExchange exchange) throws IOException {
+        byte[] raw;
+        try (InputStream in = exchange.getRequestBody()) {
+            raw = in.readAllBytes();
+        }
+        String sha256 = exchange.getRequestHeaders().getFirst("x-amz-content-sha256");
+        String encoding = exchange.getRequestHeaders().getFirst("Content-Encoding");
+        boolean chunked = (sha256 != null && sha256.startsWith("STREAMING-"))
+                || (encoding != null && encoding.contains("aws-chunked"));
+        return chunked ? dechunk(raw) : raw;
+    }
+
+    private static byte[] dechunk(byte[] raw) {
+        ByteArrayOutputStream decoded = new ByteArrayOutputStream(raw.length);
+        int position = 0;
+        while (position < raw.length) {
+            int lineEnd = indexOfCrlf(raw, position);
+            String header = new String(raw, position, lineEnd - position, StandardCharsets.US_ASCII);
+            int size = Integer.parseInt(header.split(";")[0].trim(), 16);
+            position = lineEnd + 2;
+            if (size == 0) {
+                break;
+            }
+            decoded.write(raw, position, size);
+            position += size + 2;
+        }
+        return decoded.toByteArray();
+    }
+
+    private static int indexOfCrlf(byte[] bytes, int from) {
+        for (int i = from; i < bytes.length - 1; i++) {
+            if (bytes[i] == '\r' && bytes[i + 1] == '\n') {
+                return i;
+            }
+        }
+        return bytes.length;
+    }
+
+    private static Map<String, String> query(String rawQuery) {
+        Map<String, String> query = new HashMap<>();
+        if (rawQuery == null) {
+            return query;
+        }
+        for (String parameter : rawQuery.split("&")) {
+            int equals = parameter.indexOf('=');
+            String name = equals < 0 ? parameter : parameter.substring(0, equals);
+            String value = equals < 0 ? "" : URLDecoder.decode(parameter.substring(equals + 1), StandardCharsets.UTF_8);
+            query.put(name, value);
+        }
+        return query;
+    }
+
+    /** @return the requests of the given method whose query has the given parameter */
+    List<Request> requests(String method, String parameter) {
+        List<Request> matching = new ArrayList<>();
+        for (Request request : requests) {
+            if (request.method().equals(method) && request.query() != null
+                    && query(request.query()).containsKey(parameter)) {
+                matching.add(request);
+            }
+        }
+        return matching;
+    }
+}
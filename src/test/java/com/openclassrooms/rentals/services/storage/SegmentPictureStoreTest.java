@@ -0,0 +1,178 @@
+package com.openclassrooms.rentals.services.storage;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * {@link SegmentPictureStore} with segments of 4 KiB, which hold three pictures of 1200 bytes.
+ */
+class SegmentPictureStoreTest {
+
+    private static final int SEGMENT_BYTES = 4096;
+    private static final int PICTURE_BYTES = 1200;
+
+    @TempDir
+    Path directory;
+
+    private SegmentPictureStore store;
+
+    @BeforeEach
+    void open() {
+        store = reopen();
+    }
+
+    @AfterEach
+    void close() {
+        store.close();
+    }
+
+    @Test
+    void picturesAreReadBackAfterARestart() throws IOException {
+        write("a.jpg", 'a');
+        write("b.jpg", 'b');
+        write("c.jpg", 'c');
+        write("d.jpg", 'd');
+        write("a.jpg", 'A');
+
+        store.close();
+        store = reopen();
+
+        assertThat(segmentFiles()).hasSize(2);
+        assertPicture("a.jpg", 'A');
+        assertPicture("b.jpg", 'b');
+        assertPicture("c.jpg", 'c');
+        assertPicture("d.jpg", 'd');
+        assertThat(store.read(1L, "missing.jpg")).isEmpty();
+    }
+
+    @Test
+    void deletedPicturesStayDeletedAfterARestart() throws IOException {
+        write("a.jpg", 'a');
+        write("b.jpg", 'b');
+
+        store.delete(1L, "a.jpg");
+        store.delete(1L, "missing.jpg");
+
+        assertThat(store.read(1L, "a.jpg")).isEmpty();
+        store.close();
+        store = reopen();
+        assertThat(store.read(1L, "a.jpg")).isEmpty();
+        assertPicture("b.jpg", 'b');
+    }
+
+    @Test
+    void compactionCopiesTheLivePicturesAndDeletesTheSegment() throws IOException {
+        write("a.jpg", 'a');
+        write("b.jpg", 'b');
+        write("c.jpg", 'c');
+        write("d.jpg", 'd');
+        write("a.jpg", 'A');
+        store.delete(1L, "b.jpg");
+        assertThat(segmentFiles()).hasSize(2);
+
+        store.compact();
+
+        assertThat(segmentFiles()).containsExactly("00000002.seg");
+        assertPicture("a.jpg", 'A');
+        assertThat(store.read(1L, "b.jpg")).isEmpty();
+        assertPicture("c.jpg", 'c');
+        assertPicture("d.jpg", 'd');
+
+        store.close();
+        store = reopen();
+        assertPicture("a.jpg", 'A');
+        assertThat(store.read(1L, "b.jpg")).isEmpty();
+        assertPicture("c.jpg", 'c');
+        assertPicture("d.jpg", 'd');
+    }
+
+    @Test
+    void aTombstoneIsCarriedForwardWhileAnOlderSegmentHoldsThePicture() throws IOException {
+        write("x.jpg", 'x');
+        write("y.jpg", 'y');
+        write("z.jpg", 'z');
+        write("u.jpg", 'u');
+        store.delete(1L, "x.jpg");
+        write("v.jpg", 'v');
+        write("w.jpg", 'w');
+        write("u.jpg", 'U');
+        write("v.jpg", 'V');
+        write("w.jpg", 'W');
+
+        // Segment 2 only holds the tombstone of x, whose picture is still in segment 1
+        store.compact();
+
+        assertThat(segmentFiles()).containsExactly("00000001.seg", "00000003.seg");
+        store.close();
+        store = reopen();
+        assertThat(store.read(1L, "x.jpg")).isEmpty();
+        assertPicture("y.jpg", 'y');
+        assertPicture("u.jpg", 'U');
+        assertPicture("w.jpg", 'W');
+    }
+
+    @Test
+    void aRecordWrittenWithoutItsMagicNumberIsOverwritten() throws IOException {
+        write("a.jpg", 'a');
+        write("b.jpg", 'b');
+        store.close();
+        // A record is published by its magic number, written last: without it, the write was cut short
+        int secondRecord = PICTURE_BYTES + 10 + "1/a.jpg".length();
+        try (FileChannel segment = FileChannel.open(directory.resolve("00000001.seg"), StandardOpenOption.WRITE)) {
+            segment.write(ByteBuffer.allocate(Integer.BYTES), secondRecord);
+        }
+
+        store = reopen();
+        assertPicture("a.jpg", 'a');
+        assertThat(store.read(1L, "b.jpg")).isEmpty();
+
+        write("c.jpg", 'c');
+        store.close();
+        store = reopen();
+        assertPicture("a.jpg", 'a');
+        assertPicture("c.jpg", 'c');
+        assertThat(segmentFiles()).hasSize(1);
+    }
+
+    private SegmentPictureStore reopen() {
+        SegmentPictureStore opened = new SegmentPictureStore(directory.toString(), SEGMENT_BYTES, 0.5);
+        opened.init();
+        return opened;
+    }
+
+    private void write(String filename, char fill) throws IOException {
+        byte[] picture = new byte[PICTURE_BYTES];
+        Arrays.fill(picture, (byte) fill);
+        store.write(1L, filename, new ByteArrayInputStream(picture), picture.length);
+    }
+
+    private void assertPicture(String filename, char fill) {
+        assertThat(store.read(1L, filename)).hasValueSatisfying(content -> {
+            assertThat(content.remaining()).isEqualTo(PICTURE_BYTES);
+            while (content.hasRemaining()) {
+                assertThat(content.get()).isEqualTo((byte) fill);
+            }
+        });
+    }
+
+    private List<String> segmentFiles() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.map(file -> file.getFileName().toString()).sorted().toList();
+        }
+    }
+}